@@ -1,24 +1,186 @@
 import cli.ConsoleApp;
+import cluster.ClusterRouter;
+import cluster.PartitionMap;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.stream.Stream;
+import net.LinkServer;
+import service.BackupService;
 import service.CleanupService;
+import service.QueryService;
+import service.ReclamationService;
 import service.ShortenerService;
+import service.TraceRecorder;
+import service.TraceReplayer;
 import storage.FileLinkRepository;
+import storage.H2LinkRepository;
+import storage.LinkArchive;
 import storage.LinkRepository;
+import storage.StorageCompression;
 import util.Config;
 
 public class Main {
-  public static void main(String[] args) {
-    Config config = Config.load(Path.of("config/app.properties"));
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0 && args[0].equals("replay")) {
+      replay(args);
+      return;
+    }
+    Config config = Config.load(Path.of(args.length > 0 ? args[0] : "config/app.properties"));
 
-    LinkRepository repo = new FileLinkRepository(Path.of(config.storageFile()));
-    ShortenerService shortenerService = new ShortenerService(repo, config);
+    LinkRepository repo = createRepository(config);
+
+    ClusterRouter router = null;
+    if (!config.clusterNodes().isEmpty()) {
+      if (config.serverPort() <= 0) {
+        throw new IllegalArgumentException("Для работы в кластере нужно задать serverPort");
+      }
+      router = new ClusterRouter(config.clusterNodeId(), repo);
+    }
+    ShortenerService shortenerService =
+        router == null
+            ? new ShortenerService(repo, config)
+            : new ShortenerService(repo, config, Clock.systemUTC(), router::isLocal);
+    if (!config.traceFile().isEmpty()) {
+      TraceRecorder recorder = new TraceRecorder(Path.of(config.traceFile()));
+      shortenerService.setTraceRecorder(recorder);
+      System.out.println("Операции записываются в трассу " + recorder.file());
+    }
     CleanupService cleanupService = new CleanupService(repo, config);
+    BackupService backupService = new BackupService(repo, config);
+    ReclamationService reclamationService =
+        new ReclamationService(repo, new LinkArchive(Path.of(config.archiveFile())), config);
 
     cleanupService.start();
+    reclamationService.start();
+
+    LinkServer server = null;
+    if (config.serverPort() > 0) {
+      server =
+          new LinkServer(shortenerService, config.serverPort(), config.serverWorkers(), router);
+      server.start();
+      System.out.println("Бинарный протокол доступен на порту " + server.port());
+    }
+    if (router != null) {
+      router.applyPartitionMap(PartitionMap.parse(config.clusterNodes()));
+      router
+          .announce()
+          .exceptionally(
+              e -> {
+                System.out.println("Уведомление: не все узлы приняли карту: " + e.getMessage());
+                return null;
+              });
+      System.out.println("Узел кластера " + router.selfId() + ": " + config.clusterNodes());
+    }
 
-    ConsoleApp app = new ConsoleApp(shortenerService);
+    if (config.queryHostIndex()) {
+      if (repo instanceof FileLinkRepository fileRepo) {
+        fileRepo.enableHostIndex();
+      } else {
+        System.out.println(
+            "Уведомление: индекс хостов поддерживает только хранилище file,"
+                + " запросы по host сканируют все ссылки");
+      }
+    }
+    ConsoleApp app =
+        new ConsoleApp(shortenerService, backupService, reclamationService, new QueryService(repo));
     app.run();
 
+    if (server != null) {
+      server.close();
+    }
+    if (router != null) {
+      router.close();
+    }
+    TraceRecorder recorder = shortenerService.setTraceRecorder(null);
+    if (recorder != null) {
+      recorder.close();
+    }
     cleanupService.stop();
+    reclamationService.stop();
+    backupService.stop();
+
+    if (repo instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+
+  // replay <трасса> [--fast] [--into <путь>] [конфиг] — проиграть трассу. Без --into трасса
+  // идёт во временное хранилище того же типа, что в конфиге, и рабочие данные не меняются
+  private static void replay(String[] args) throws Exception {
+    String usage = "Использование: replay <трасса> [--fast] [--into <путь>] [конфиг]";
+    if (args.length < 2) {
+      throw new IllegalArgumentException(usage);
+    }
+    boolean fast = false;
+    Path into = null;
+    String configPath = "config/app.properties";
+    for (int i = 2; i < args.length; i++) {
+      if (args[i].equals("--fast")) {
+        fast = true;
+      } else if (args[i].equals("--into")) {
+        if (++i == args.length) {
+          throw new IllegalArgumentException(usage);
+        }
+        into = Path.of(args[i]);
+      } else {
+        configPath = args[i];
+      }
+    }
+    Config config = Config.load(Path.of(configPath));
+    Path tempDir = null;
+    if (into == null) {
+      tempDir = Files.createTempDirectory("replay");
+      into = tempDir.resolve(isFileBackend(config) ? "links.json" : "links");
+      System.out.println("Трасса проигрывается во временное хранилище " + tempDir);
+    }
+    LinkRepository repo = createRepository(config, into);
+    try {
+      new TraceReplayer(repo, config).replay(Path.of(args[1]), !fast).print(System.out);
+    } finally {
+      if (repo instanceof AutoCloseable closeable) {
+        closeable.close();
+      }
+      if (tempDir != null) {
+        deleteRecursively(tempDir);
+      }
+    }
+  }
+
+  private static void deleteRecursively(Path dir) throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(p);
+      }
+    }
+  }
+
+  private static LinkRepository createRepository(Config config) {
+    return createRepository(
+        config, Path.of(isFileBackend(config) ? config.storageFile() : config.databaseFile()));
+  }
+
+  private static boolean isFileBackend(Config config) {
+    return config.storageBackend().equalsIgnoreCase("file");
+  }
+
+  // storage — файл ссылок или база H2, в зависимости от типа хранилища в конфиге
+  private static LinkRepository createRepository(Config config, Path storage) {
+    return switch (config.storageBackend().toLowerCase(Locale.ROOT)) {
+      case "file" ->
+          new FileLinkRepository(
+              storage,
+              StorageCompression.fromName(config.storageCompression()),
+              config.storageCompressionLevel(),
+              config.warmStart(),
+              config.storageShared());
+      case "h2" -> new H2LinkRepository(storage);
+      default ->
+          throw new IllegalArgumentException(
+              "Неизвестный тип хранилища: " + config.storageBackend());
+    };
   }
 }
@@ -1,15 +1,35 @@
 package cli;
 
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import model.Link;
+import service.BackupService;
+import service.QueryService;
+import service.ReclamationService;
 import service.ShortenerService;
+import service.TraceRecorder;
+import storage.LinkArchive;
 
 public class ConsoleApp {
+  private static final int FIND_LIMIT = 50;
+
   private final ShortenerService service;
+  private final BackupService backupService;
+  private final ReclamationService reclamationService;
+  private final QueryService queryService;
 
-  public ConsoleApp(ShortenerService service) {
+  public ConsoleApp(
+      ShortenerService service,
+      BackupService backupService,
+      ReclamationService reclamationService,
+      QueryService queryService) {
     this.service = service;
+    this.backupService = backupService;
+    this.reclamationService = reclamationService;
+    this.queryService = queryService;
   }
 
   public void run() {
@@ -35,12 +55,18 @@ public class ConsoleApp {
           }
           case "create" -> handleCreate(parts);
           case "open" -> handleOpen(parts);
+          case "find" -> handleFind(parts);
           case "list" -> handleList();
           case "delete" -> handleDelete(parts);
           case "limit" -> handleLimit(parts);
           case "whoami" -> handleWhoAmI();
           case "user" -> handleUser(parts);
           case "newuser" -> handleNewUser();
+          case "backup" -> handleBackup(parts);
+          case "archive" -> handleArchive(parts);
+          case "reclaim" -> handleReclaim();
+          case "trace" -> handleTrace(parts);
+          case "query" -> handleQuery(parts);
           default -> System.out.println("Неизвестная команда. Введите 'help' для справки.");
         }
       } catch (Exception e) {
@@ -51,16 +77,26 @@ public class ConsoleApp {
 
   private void handleCreate(String[] parts) {
     if (parts.length < 2) {
-      System.out.println("Не указан URL. Введите: create <url> [лимит]");
+      System.out.println("Не указан URL. Введите: create <url> [лимит] [--alias <псевдоним>]");
       return;
     }
     String url = parts[1];
     Integer limit = null;
-    if (parts.length >= 3) {
-      limit = Integer.parseInt(parts[2]);
+    String alias = null;
+    for (int i = 2; i < parts.length; i++) {
+      if (parts[i].equals("--alias")) {
+        if (i + 1 >= parts.length) {
+          System.out.println(
+              "Не указан псевдоним. Введите: create <url> [лимит] --alias <псевдоним>");
+          return;
+        }
+        alias = parts[++i];
+      } else {
+        limit = Integer.parseInt(parts[i]);
+      }
     }
 
-    Link link = service.create(url, limit);
+    Link link = service.create(url, limit, alias);
 
     System.out.println("Короткая ссылка создана!");
     System.out.println("Ваш UUID: " + service.getCurrentUserUuid());
@@ -78,6 +114,24 @@ public class ConsoleApp {
     service.open(parts[1]);
   }
 
+  private void handleFind(String[] parts) {
+    if (parts.length < 2) {
+      System.out.println("Не указан префикс. Введите: find <префикс>");
+      return;
+    }
+    List<Link> links = service.findByPrefix(parts[1], FIND_LIMIT);
+    if (links.isEmpty()) {
+      System.out.println("Ссылки с таким префиксом не найдены.");
+      return;
+    }
+    for (Link l : links) {
+      System.out.println(l.code() + " -> " + l.originalUrl());
+    }
+    if (links.size() == FIND_LIMIT) {
+      System.out.println("Показаны первые " + FIND_LIMIT + " результатов, уточните префикс.");
+    }
+  }
+
   private void handleList() {
     List<Link> links = service.listMine();
     if (links.isEmpty()) {
@@ -100,7 +154,11 @@ public class ConsoleApp {
 
   private void handleDelete(String[] parts) {
     if (parts.length < 2) {
-      System.out.println("Не указан код ссылки. Введите: delete <код>");
+      System.out.println("Не указан код ссылки. Введите: delete <код> или delete --all");
+      return;
+    }
+    if (parts[1].equals("--all")) {
+      System.out.println("Удалено ссылок: " + service.deleteAllMine());
       return;
     }
     service.deleteMine(parts[1]);
@@ -136,18 +194,159 @@ public class ConsoleApp {
     System.out.println("Создан новый пользователь. Текущий UUID: " + service.getCurrentUserUuid());
   }
 
+  private void handleBackup(String[] parts) {
+    if (parts.length < 2) {
+      System.out.println("Не указан путь. Введите: backup <путь>");
+      return;
+    }
+    backupService
+        .backup(Path.of(parts[1]))
+        .whenComplete(
+            (res, err) -> {
+              if (err != null) {
+                Throwable cause = err.getCause() != null ? err.getCause() : err;
+                System.out.println("ОШИБКА резервного копирования: " + cause.getMessage());
+              } else {
+                System.out.println(
+                    "Резервная копия сохранена: "
+                        + res.file()
+                        + " (ссылок: "
+                        + res.linkCount()
+                        + ", байт: "
+                        + res.bytes()
+                        + ")");
+              }
+            });
+    System.out.println("Снимок данных сделан, резервная копия записывается в фоне.");
+  }
+
+  private void handleArchive(String[] parts) {
+    if (parts.length >= 2) {
+      LinkArchive.Entry e =
+          reclamationService
+              .archive()
+              .findByCode(parts[1])
+              .orElseThrow(() -> new IllegalArgumentException("Ссылка в архиве не найдена"));
+      printArchived(e);
+      return;
+    }
+    if (service.getCurrentUserUuid() == null) {
+      System.out.println("У вас пока нет ссылок в архиве.");
+      return;
+    }
+    List<LinkArchive.Entry> entries =
+        reclamationService.archive().findByOwner(service.getCurrentUserUuid());
+    if (entries.isEmpty()) {
+      System.out.println("У вас пока нет ссылок в архиве.");
+      return;
+    }
+    for (LinkArchive.Entry e : entries) {
+      printArchived(e);
+    }
+  }
+
+  private void printArchived(LinkArchive.Entry e) {
+    Link l = e.link();
+    System.out.println(
+        l.code()
+            + " -> "
+            + l.originalUrl()
+            + " | переходы: "
+            + l.clicksDone()
+            + "/"
+            + l.maxClicks()
+            + " | причина: "
+            + e.reason()
+            + " | в архиве с: "
+            + e.archivedAt());
+  }
+
+  private void handleReclaim() {
+    Map<String, Integer> archived = reclamationService.reclaimNow();
+    if (archived.isEmpty()) {
+      System.out.println("Ссылок для переноса в архив нет.");
+      return;
+    }
+    System.out.println("Перенесено в архив: " + archived);
+  }
+
+  private void handleTrace(String[] parts) {
+    if (parts.length < 2) {
+      System.out.println("Не указан путь. Введите: trace <путь> или trace stop");
+      return;
+    }
+    TraceRecorder next = parts[1].equals("stop") ? null : new TraceRecorder(Path.of(parts[1]));
+    TraceRecorder previous = service.setTraceRecorder(next);
+    if (previous != null) {
+      previous.close();
+      System.out.println(
+          "Трасса " + previous.file() + " сохранена, операций: " + previous.recorded());
+    }
+    if (next != null) {
+      System.out.println("Операции записываются в трассу " + next.file());
+    }
+  }
+
+  private void handleQuery(String[] parts) {
+    QueryService.Result r = queryService.query(Arrays.asList(parts).subList(1, parts.length));
+    if (!r.groups().isEmpty()) {
+      for (Map.Entry<String, Integer> g : r.groups()) {
+        System.out.println(g.getKey() + ": " + g.getValue());
+      }
+      if (r.truncated()) {
+        System.out.println("Показаны первые " + r.groups().size() + " групп, увеличьте limit.");
+      }
+    } else {
+      for (Link l : r.links()) {
+        System.out.println(
+            l.code()
+                + " -> "
+                + l.originalUrl()
+                + " | владелец: "
+                + l.ownerUuid()
+                + " | переходы: "
+                + l.clicksDone()
+                + "/"
+                + l.maxClicks()
+                + " | истекает: "
+                + l.expiresAt());
+      }
+      if (r.truncated()) {
+        System.out.println(
+            "Показаны " + r.links().size() + " самых новых совпадений, уточните запрос или limit.");
+      }
+    }
+    System.out.println(
+        "Совпадений: "
+            + r.matched()
+            + ", время: "
+            + r.took().toMillis()
+            + " мс"
+            + (r.usedHostIndex() ? ", по индексу хостов" : ""));
+  }
+
   private void printHelp() {
     System.out.println(
         """
                         Команды:
-                          create <url> [лимит]        - создать короткую ссылку
+                          create <url> [лимит] [--alias <псевдоним>]
+                                                      - создать короткую ссылку
                           open <код>                  - перейти по ссылке
+                          find <префикс>              - найти ссылки по началу кода
                           list                        - список ваших ссылок
                           delete <код>                - удалить ссылку
+                          delete --all                - удалить все свои ссылки
                           limit <код> <новый_лимит>   - изменить лимит переходов
                           whoami                      - показать текущий UUID
                           user <uuid>                 - переключиться на пользователя
                           newuser                     - создать нового пользователя
+                          backup <путь>               - резервная копия без остановки сервиса
+                          archive [код]               - ваши ссылки в архиве (или одна по коду)
+                          reclaim                     - перенести отработавшие ссылки в архив
+                          trace <путь> | trace stop   - начать или закончить запись трассы
+                          query [условия] [group <поле> [having count>=N]] [count] [limit N]
+                                                      - запрос по всем ссылкам, например:
+                                                        query host=mail.ru clicks>=5 count
                           help                        - меню
                           exit                        - выход
                         """);
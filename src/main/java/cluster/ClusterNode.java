@@ -0,0 +1,24 @@
+package cluster;
+
+public record ClusterNode(String id, String host, int port) {
+
+  public static ClusterNode parse(String spec) {
+    String s = spec.trim();
+    int at = s.indexOf('@');
+    int colon = s.lastIndexOf(':');
+    if (at <= 0 || colon <= at + 1 || colon == s.length() - 1) {
+      throw new IllegalArgumentException(
+          "Узел кластера должен задаваться как id@host:port: " + spec);
+    }
+    try {
+      return new ClusterNode(
+          s.substring(0, at), s.substring(at + 1, colon), Integer.parseInt(s.substring(colon + 1)));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Некорректный порт узла кластера: " + spec);
+    }
+  }
+
+  public String toSpec() {
+    return id + "@" + host + ":" + port;
+  }
+}
@@ -0,0 +1,270 @@
+package cluster;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import model.Link;
+import net.LinkClient;
+import storage.LinkRepository;
+
+public class ClusterRouter implements AutoCloseable {
+  // Пока соседи передают ссылки новому владельцу, промахи по ним ищутся у прежнего
+  private static final Duration HANDOFF_WINDOW = Duration.ofMinutes(5);
+  private static final long TRANSFER_TIMEOUT_SECONDS = 10;
+  private static final int MIGRATE_DELETE_BATCH = 256;
+  private static final int MIGRATE_RESEND_ROUNDS = 3;
+
+  private final String selfId;
+  private final LinkRepository repo;
+  private final Map<String, LinkClient> peers = new ConcurrentHashMap<>();
+  private final ExecutorService rebalancer;
+
+  private volatile PartitionMap current;
+  private volatile PartitionMap previous;
+  private volatile Instant previousUntil = Instant.MIN;
+
+  public ClusterRouter(String selfId, LinkRepository repo) {
+    if (selfId == null || selfId.isBlank()) {
+      throw new IllegalArgumentException("Не задан id узла кластера");
+    }
+    this.selfId = selfId;
+    this.repo = repo;
+    this.rebalancer =
+        Executors.newSingleThreadExecutor(
+            r -> {
+              Thread t = new Thread(r, "cluster-rebalancer");
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  public String selfId() {
+    return selfId;
+  }
+
+  public PartitionMap partitionMap() {
+    return current;
+  }
+
+  public boolean isLocal(String code) {
+    return remoteOwnerOf(code) == null;
+  }
+
+  // Владелец кода, если это не текущий узел; null — обслуживаем сами
+  public ClusterNode remoteOwnerOf(String code) {
+    PartitionMap map = current;
+    if (map == null) {
+      return null;
+    }
+    ClusterNode owner = map.ownerOf(code);
+    return owner.id().equals(selfId) ? null : owner;
+  }
+
+  // Куда отправить запрос к существующей ссылке: владельцу или, во время передачи, прежнему узлу
+  public ClusterNode route(String code) {
+    ClusterNode owner = remoteOwnerOf(code);
+    if (owner != null) {
+      // Пока перебалансировка не передала ссылку новому владельцу, её обслуживает этот узел
+      return repo.findByCode(code).isPresent() ? null : owner;
+    }
+    return previousOwnerOf(code);
+  }
+
+  // Куда отправить запрос, пересланный соседом. Владелец ещё не полученную ссылку ищет у
+  // прежнего узла, а тот отвечает сам, поэтому запрос проходит не больше двух пересылок
+  public ClusterNode routeForwarded(String code) {
+    return remoteOwnerOf(code) == null ? previousOwnerOf(code) : null;
+  }
+
+  private ClusterNode previousOwnerOf(String code) {
+    PartitionMap prev = previous;
+    if (prev == null || Instant.now().isAfter(previousUntil)) {
+      return null;
+    }
+    ClusterNode before = prev.ownerOf(code);
+    if (before.id().equals(selfId) || repo.findByCode(code).isPresent()) {
+      return null;
+    }
+    return before;
+  }
+
+  public LinkClient client(ClusterNode node) {
+    return peers.compute(
+        node.id(),
+        (id, c) -> c != null && c.isOpen() ? c : new LinkClient(node.host(), node.port()));
+  }
+
+  // Служебные кадры (IMPORT, PARTITION_MAP) принимаются только с адресов узлов текущей карты
+  public boolean isPeer(InetAddress address) {
+    PartitionMap map = current;
+    return map != null && map.hasAddress(address);
+  }
+
+  // Карту, пришедшую по сети, присылает узел текущей карты или вступающий узел. Вступающий
+  // может только добавить себя: узлы текущей карты и их адреса должны остаться прежними
+  public CompletableFuture<Integer> acceptPartitionMap(PartitionMap map, InetAddress sender) {
+    PartitionMap now = current;
+    if (now == null) {
+      throw new SecurityException("Карта разделов ещё не задана, служебный запрос отклонён");
+    }
+    if (!now.hasAddress(sender)) {
+      List<ClusterNode> added = new ArrayList<>(map.nodes());
+      added.removeAll(now.nodes());
+      if (!map.nodes().containsAll(now.nodes()) || !PartitionMap.resolve(added).contains(sender)) {
+        throw new SecurityException("Карту разделов может прислать только узел кластера");
+      }
+    }
+    return applyPartitionMap(map);
+  }
+
+  public CompletableFuture<Integer> applyPartitionMap(PartitionMap map) {
+    if (map.node(selfId).isEmpty()) {
+      throw new IllegalArgumentException("Узел " + selfId + " отсутствует в карте разделов");
+    }
+    synchronized (this) {
+      if (map.equals(current)) {
+        return CompletableFuture.completedFuture(0);
+      }
+      // Узел, впервые получивший карту, прежней не знает: при вступлении в кластер его коды
+      // принадлежали тем, кому они достаются в той же карте без него
+      previous = current != null ? current : map.without(selfId).orElse(null);
+      previousUntil = Instant.now().plus(HANDOFF_WINDOW);
+      current = map;
+    }
+    return CompletableFuture.supplyAsync(() -> migrate(map), rebalancer);
+  }
+
+  // Сообщает текущую карту всем соседям, например при подключении нового узла
+  public CompletableFuture<Void> announce() {
+    PartitionMap map = current;
+    if (map == null) {
+      throw new IllegalStateException("Карта разделов ещё не задана");
+    }
+    List<CompletableFuture<Void>> acks = new ArrayList<>();
+    for (ClusterNode node : map.nodes()) {
+      if (node.id().equals(selfId)) {
+        continue;
+      }
+      try {
+        acks.add(client(node).pushPartitionMap(map.toSpec()));
+      } catch (IllegalStateException e) {
+        // Узел ещё не запущен: получит карту из своей конфигурации и сам объявит её
+        System.out.println("Уведомление: узел " + node.id() + " недоступен: " + e.getMessage());
+      }
+    }
+    return CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0]));
+  }
+
+  @Override
+  public void close() {
+    rebalancer.shutdownNow();
+    for (LinkClient c : peers.values()) {
+      c.close();
+    }
+    peers.clear();
+  }
+
+  private int migrate(PartitionMap map) {
+    int moved = 0;
+    // Код -> версия, отправленная новому владельцу. Удаляется только она: если ссылку успели
+    // изменить после выгрузки, новому владельцу уходит свежая версия
+    Map<String, Link> exported = new HashMap<>();
+    for (Link link : repo.snapshot()) {
+      if (current != map) {
+        // Пришла более новая карта: её перебалансировка продолжит с того, что осталось
+        break;
+      }
+      ClusterNode owner = map.ownerOf(link.code());
+      if (owner.id().equals(selfId)) {
+        continue;
+      }
+      if (Thread.currentThread().isInterrupted()) {
+        break;
+      }
+      if (!transfer(owner, link)) {
+        continue;
+      }
+      exported.put(link.code(), link);
+      if (exported.size() == MIGRATE_DELETE_BATCH) {
+        moved += handOff(map, exported);
+      }
+    }
+    moved += handOff(map, exported);
+    if (moved > 0) {
+      System.out.println("Уведомление: перебалансировка передала соседям " + moved + " ссылок");
+    }
+    return moved;
+  }
+
+  // Удаляет переданные ссылки, не изменившиеся с момента выгрузки. Изменённые отправляются
+  // заново (IMPORT не откатывает счётчик переходов), удалённые здесь удаляются у нового владельца
+  private int handOff(PartitionMap map, Map<String, Link> exported) {
+    int moved = 0;
+    for (int round = 0; round < MIGRATE_RESEND_ROUNDS && !exported.isEmpty(); round++) {
+      List<Link> removed =
+          repo.deleteIf(new ArrayList<>(exported.keySet()), l -> l.equals(exported.get(l.code())));
+      for (Link l : removed) {
+        exported.remove(l.code());
+      }
+      moved += removed.size();
+      for (Iterator<Map.Entry<String, Link>> it = exported.entrySet().iterator(); it.hasNext(); ) {
+        Map.Entry<String, Link> e = it.next();
+        ClusterNode owner = map.ownerOf(e.getKey());
+        Optional<Link> now = repo.findByCode(e.getKey());
+        if (now.isEmpty()) {
+          it.remove();
+          try {
+            client(owner).delete(e.getValue().ownerUuid(), e.getKey());
+          } catch (IllegalStateException ex) {
+            // Удаление у нового владельца — по возможности: ссылка истечёт и там
+          }
+        } else if (Thread.currentThread().isInterrupted() || !transfer(owner, now.get())) {
+          it.remove();
+        } else {
+          e.setValue(now.get());
+        }
+      }
+    }
+    if (!exported.isEmpty()) {
+      System.out.println(
+          "Уведомление: "
+              + exported.size()
+              + " ссылок менялись во время передачи и остаются на узле до следующей"
+              + " перебалансировки");
+      exported.clear();
+    }
+    return moved;
+  }
+
+  private boolean transfer(ClusterNode owner, Link link) {
+    try {
+      client(owner).importLink(link).get(TRANSFER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException | TimeoutException | IllegalStateException e) {
+      System.out.println(
+          "ОШИБКА перебалансировки: не удалось передать "
+              + link.code()
+              + " узлу "
+              + owner.id()
+              + ": "
+              + e.getMessage());
+      return false;
+    }
+  }
+}
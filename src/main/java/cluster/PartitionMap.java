@@ -0,0 +1,132 @@
+package cluster;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public final class PartitionMap {
+  private static final int VIRTUAL_NODES = 64;
+
+  private final List<ClusterNode> nodes;
+  private final int[] ringHashes;
+  private final ClusterNode[] ringNodes;
+  private volatile Set<InetAddress> addresses;
+
+  public PartitionMap(List<ClusterNode> nodes) {
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("Карта разделов должна содержать хотя бы один узел");
+    }
+    Set<String> ids = new HashSet<>();
+    for (ClusterNode n : nodes) {
+      if (!ids.add(n.id())) {
+        throw new IllegalArgumentException("Повторяющийся id узла кластера: " + n.id());
+      }
+    }
+
+    this.nodes = nodes.stream().sorted(Comparator.comparing(ClusterNode::id)).toList();
+
+    long[] points = new long[this.nodes.size() * VIRTUAL_NODES];
+    int k = 0;
+    for (int i = 0; i < this.nodes.size(); i++) {
+      for (int v = 0; v < VIRTUAL_NODES; v++) {
+        int h = hash(this.nodes.get(i).id() + "#" + v);
+        // Старшие 32 бита — позиция на кольце, младшие — индекс узла
+        points[k++] = ((long) h << 32) | i;
+      }
+    }
+    Arrays.sort(points);
+
+    this.ringHashes = new int[points.length];
+    this.ringNodes = new ClusterNode[points.length];
+    for (int i = 0; i < points.length; i++) {
+      ringHashes[i] = (int) (points[i] >> 32);
+      ringNodes[i] = this.nodes.get((int) points[i]);
+    }
+  }
+
+  public static PartitionMap parse(String spec) {
+    List<ClusterNode> nodes = new ArrayList<>();
+    for (String part : spec.split(",")) {
+      if (!part.isBlank()) {
+        nodes.add(ClusterNode.parse(part));
+      }
+    }
+    return new PartitionMap(nodes);
+  }
+
+  public ClusterNode ownerOf(String code) {
+    int i = Arrays.binarySearch(ringHashes, hash(code));
+    if (i < 0) {
+      i = -i - 1;
+    }
+    return ringNodes[i == ringNodes.length ? 0 : i];
+  }
+
+  public Optional<ClusterNode> node(String id) {
+    return nodes.stream().filter(n -> n.id().equals(id)).findFirst();
+  }
+
+  // Та же карта без узла; пусто, если других узлов нет
+  public Optional<PartitionMap> without(String id) {
+    List<ClusterNode> rest = nodes.stream().filter(n -> !n.id().equals(id)).toList();
+    return rest.isEmpty() ? Optional.empty() : Optional.of(new PartitionMap(rest));
+  }
+
+  // Адрес принадлежит одному из узлов карты. Имена узлов разрешаются один раз на карту
+  public boolean hasAddress(InetAddress address) {
+    Set<InetAddress> resolved = addresses;
+    if (resolved == null) {
+      resolved = resolve(nodes);
+      addresses = resolved;
+    }
+    return resolved.contains(address);
+  }
+
+  static Set<InetAddress> resolve(Collection<ClusterNode> nodes) {
+    Set<InetAddress> resolved = new HashSet<>();
+    for (ClusterNode n : nodes) {
+      try {
+        resolved.addAll(Arrays.asList(InetAddress.getAllByName(n.host())));
+      } catch (UnknownHostException e) {
+        // Узел с неразрешимым именем не может быть и отправителем
+      }
+    }
+    return resolved;
+  }
+
+  public List<ClusterNode> nodes() {
+    return nodes;
+  }
+
+  public String toSpec() {
+    return nodes.stream().map(ClusterNode::toSpec).collect(Collectors.joining(","));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof PartitionMap other && nodes.equals(other.nodes);
+  }
+
+  @Override
+  public int hashCode() {
+    return nodes.hashCode();
+  }
+
+  static int hash(String s) {
+    int h = s.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
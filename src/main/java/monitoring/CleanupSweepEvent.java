@@ -0,0 +1,23 @@
+package monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("shortlink.CleanupSweep")
+@Label("Cleanup Sweep")
+@Category({"Shortlink", "Service"})
+@Description("Проход CleanupService по просроченным ссылкам")
+@StackTrace(false)
+@Threshold("0 ms")
+public class CleanupSweepEvent extends Event {
+  @Label("Scanned")
+  public int scanned;
+
+  @Label("Deleted")
+  public int deleted;
+}
@@ -0,0 +1,26 @@
+package monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("shortlink.LinkCreate")
+@Label("Link Create")
+@Category({"Shortlink", "Service"})
+@Description("Создание короткой ссылки в ShortenerService")
+@StackTrace(false)
+@Threshold("1 ms")
+public class LinkCreateEvent extends Event {
+  @Label("Code")
+  public String code;
+
+  @Label("Alias")
+  public boolean alias;
+
+  @Label("Outcome")
+  public String outcome;
+}
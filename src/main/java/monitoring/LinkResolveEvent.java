@@ -0,0 +1,23 @@
+package monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("shortlink.LinkResolve")
+@Label("Link Resolve")
+@Category({"Shortlink", "Service"})
+@Description("Переход по короткой ссылке: поиск, проверка TTL и лимита, учёт перехода")
+@StackTrace(false)
+@Threshold("1 ms")
+public class LinkResolveEvent extends Event {
+  @Label("Code")
+  public String code;
+
+  @Label("Outcome")
+  public String outcome;
+}
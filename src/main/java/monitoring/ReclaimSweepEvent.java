@@ -0,0 +1,26 @@
+package monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("shortlink.ReclaimSweep")
+@Label("Reclaim Sweep")
+@Category({"Shortlink", "Service"})
+@Description("Проход ReclamationService: перенос отработавших ссылок в архив")
+@StackTrace(false)
+@Threshold("0 ms")
+public class ReclaimSweepEvent extends Event {
+  @Label("Scanned")
+  public int scanned;
+
+  @Label("Archived")
+  public int archived;
+
+  @Label("Batches")
+  public int batches;
+}
@@ -0,0 +1,31 @@
+package monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("shortlink.StorageLoad")
+@Label("Storage Load")
+@Category({"Shortlink", "Storage"})
+@Description("Загрузка файла хранилища в память")
+@StackTrace(false)
+@Threshold("0 ms")
+public class StorageLoadEvent extends Event {
+  @Label("File")
+  public String file;
+
+  @Label("Link Count")
+  public long linkCount;
+
+  @Label("Bytes Read")
+  @DataAmount
+  public long bytesRead;
+
+  @Label("Warm Start")
+  public boolean warmStart;
+}
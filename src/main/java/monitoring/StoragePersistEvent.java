@@ -0,0 +1,28 @@
+package monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("shortlink.StoragePersist")
+@Label("Storage Persist")
+@Category({"Shortlink", "Storage"})
+@Description("Полная перезапись файла хранилища")
+@StackTrace(false)
+@Threshold("5 ms")
+public class StoragePersistEvent extends Event {
+  @Label("File")
+  public String file;
+
+  @Label("Link Count")
+  public int linkCount;
+
+  @Label("Bytes Written")
+  @DataAmount
+  public long bytesWritten;
+}
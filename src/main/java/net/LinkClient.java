@@ -0,0 +1,310 @@
+package net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import model.Link;
+import service.OperationRejectedException;
+
+public class LinkClient implements AutoCloseable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  public record CreatedLink(String code, String shortUrl, Instant expiresAt) {}
+
+  private record Pending(
+      Function<ByteBuffer, Object> decoder, CompletableFuture<Object> future, boolean raw) {}
+
+  private final SocketChannel channel;
+  private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+  private final AtomicLong ids = new AtomicLong();
+  private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final Thread reader;
+
+  private volatile boolean closed;
+  // Выставляется до failAll: запрос, зарегистрированный позже, завершает себя сам
+  private volatile boolean readerDone;
+
+  public LinkClient(String host, int port) {
+    try {
+      this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+      channel.socket().setTcpNoDelay(true);
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось подключиться к " + host + ":" + port, e);
+    }
+    this.reader = new Thread(this::readLoop, "link-client-reader");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  public CompletableFuture<CreatedLink> create(
+      String ownerUuid, String url, int maxClicks, String alias) {
+    byte[] owner = Protocol.utf8(ownerUuid);
+    byte[] target = Protocol.utf8(url);
+    byte[] name = Protocol.utf8(alias == null ? "" : alias);
+    int size = Protocol.sizeOf(owner) + Protocol.sizeOf(target) + 4 + Protocol.sizeOf(name);
+
+    return send(
+        Protocol.CREATE,
+        size,
+        buf -> {
+          Protocol.putString(buf, owner);
+          Protocol.putString(buf, target);
+          buf.putInt(maxClicks);
+          Protocol.putString(buf, name);
+        },
+        LinkClient::readCreated);
+  }
+
+  public CompletableFuture<String> resolve(String code) {
+    byte[] c = Protocol.utf8(code);
+    return send(
+        Protocol.RESOLVE,
+        Protocol.sizeOf(c),
+        buf -> Protocol.putString(buf, c),
+        Protocol::getString);
+  }
+
+  public CompletableFuture<Void> delete(String ownerUuid, String code) {
+    byte[] owner = Protocol.utf8(ownerUuid);
+    byte[] c = Protocol.utf8(code);
+    return send(
+        Protocol.DELETE,
+        Protocol.sizeOf(owner) + Protocol.sizeOf(c),
+        buf -> {
+          Protocol.putString(buf, owner);
+          Protocol.putString(buf, c);
+        },
+        buf -> null);
+  }
+
+  public CompletableFuture<List<CreatedLink>> batchCreate(
+      String ownerUuid, List<String> urls, int maxClicks) {
+    if (urls.size() > Protocol.MAX_BATCH) {
+      throw new IllegalArgumentException("Размер пакета не должен превышать " + Protocol.MAX_BATCH);
+    }
+    byte[] owner = Protocol.utf8(ownerUuid);
+    List<byte[]> targets = new ArrayList<>(urls.size());
+    int size = Protocol.sizeOf(owner) + 8;
+    for (String url : urls) {
+      byte[] t = Protocol.utf8(url);
+      targets.add(t);
+      size += Protocol.sizeOf(t);
+    }
+
+    return send(
+        Protocol.BATCH_CREATE,
+        size,
+        buf -> {
+          Protocol.putString(buf, owner);
+          buf.putInt(maxClicks);
+          buf.putInt(targets.size());
+          for (byte[] t : targets) {
+            Protocol.putString(buf, t);
+          }
+        },
+        buf -> {
+          int n = buf.getInt();
+          List<CreatedLink> res = new ArrayList<>(n);
+          for (int i = 0; i < n; i++) {
+            res.add(readCreated(buf));
+          }
+          return res;
+        });
+  }
+
+  public CompletableFuture<Void> importLink(Link link) {
+    byte[] code = Protocol.utf8(link.code());
+    byte[] owner = Protocol.utf8(link.ownerUuid());
+    byte[] url = Protocol.utf8(link.originalUrl());
+    byte[] shortUrl = Protocol.utf8(link.shortUrl());
+    int size =
+        Protocol.sizeOf(code)
+            + Protocol.sizeOf(owner)
+            + Protocol.sizeOf(url)
+            + Protocol.sizeOf(shortUrl)
+            + 8
+            + 2 * Protocol.INSTANT_SIZE;
+
+    return send(
+        Protocol.IMPORT,
+        size,
+        buf -> {
+          Protocol.putString(buf, code);
+          Protocol.putString(buf, owner);
+          Protocol.putString(buf, url);
+          Protocol.putString(buf, shortUrl);
+          buf.putInt(link.maxClicks());
+          buf.putInt(link.clicksDone());
+          Protocol.putInstant(buf, link.createdAt());
+          Protocol.putInstant(buf, link.expiresAt());
+        },
+        buf -> null);
+  }
+
+  public CompletableFuture<Void> pushPartitionMap(String spec) {
+    byte[] s = Protocol.utf8(spec);
+    return send(
+        Protocol.PARTITION_MAP, Protocol.sizeOf(s), buf -> Protocol.putString(buf, s), buf -> null);
+  }
+
+  public boolean isOpen() {
+    return !closed && channel.isOpen() && reader.isAlive();
+  }
+
+  // Отправляет готовый запрос и возвращает ответ целиком: [статус][id][данные]
+  CompletableFuture<ByteBuffer> relay(byte type, byte[] payload) {
+    return sendFrame(type, payload.length, buf -> buf.put(payload), null, true);
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      channel.close();
+      reader.join();
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось закрыть соединение", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private interface PayloadWriter {
+    void write(ByteBuffer buf);
+  }
+
+  private <T> CompletableFuture<T> send(
+      byte type, int payloadSize, PayloadWriter payload, Function<ByteBuffer, T> decoder) {
+    return sendFrame(type, payloadSize, payload, decoder, false);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> CompletableFuture<T> sendFrame(
+      byte type,
+      int payloadSize,
+      PayloadWriter payload,
+      Function<ByteBuffer, T> decoder,
+      boolean raw) {
+    int len = Protocol.HEADER_SIZE + payloadSize;
+    Protocol.checkFrameLength(len);
+
+    long id = ids.incrementAndGet();
+    CompletableFuture<Object> future = new CompletableFuture<>();
+    pending.put(id, new Pending((Function<ByteBuffer, Object>) decoder, future, raw));
+    if (readerDone && pending.remove(id) != null) {
+      future.completeExceptionally(new IllegalStateException("Соединение закрыто"));
+      return (CompletableFuture<T>) future;
+    }
+
+    synchronized (out) {
+      ByteBuffer buf =
+          Protocol.LENGTH_SIZE + len <= out.capacity()
+              ? out.clear()
+              : ByteBuffer.allocateDirect(Protocol.LENGTH_SIZE + len);
+      buf.putInt(len);
+      buf.put(type);
+      buf.putLong(id);
+      payload.write(buf);
+      buf.flip();
+      try {
+        while (buf.hasRemaining()) {
+          channel.write(buf);
+        }
+      } catch (IOException e) {
+        pending.remove(id);
+        future.completeExceptionally(new IllegalStateException("Соединение разорвано", e));
+      }
+    }
+    return (CompletableFuture<T>) future;
+  }
+
+  private void readLoop() {
+    ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    try {
+      while (channel.read(in) >= 0) {
+        in.flip();
+        int needed = 0;
+        while (in.remaining() >= Protocol.LENGTH_SIZE) {
+          int len = in.getInt(in.position());
+          Protocol.checkFrameLength(len);
+          if (in.remaining() < Protocol.LENGTH_SIZE + len) {
+            needed = Protocol.LENGTH_SIZE + len;
+            break;
+          }
+          in.position(in.position() + Protocol.LENGTH_SIZE);
+          ByteBuffer frame = in.slice();
+          frame.limit(len);
+          in.position(in.position() + len);
+          complete(frame);
+        }
+        in.compact();
+
+        if (needed > in.capacity()) {
+          ByteBuffer bigger = ByteBuffer.allocateDirect(needed);
+          in.flip();
+          bigger.put(in);
+          in = bigger;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      readerDone = true;
+      if (!closed) {
+        failAll(e);
+      }
+    }
+    readerDone = true;
+    failAll(null);
+  }
+
+  private void complete(ByteBuffer frame) {
+    byte status = frame.get();
+    long id = frame.getLong();
+    Pending p = pending.remove(id);
+    if (p == null) {
+      return;
+    }
+    if (p.raw()) {
+      ByteBuffer copy = ByteBuffer.allocate(frame.limit());
+      copy.put(frame.duplicate().position(0));
+      p.future().complete(copy.flip());
+      return;
+    }
+    if (status == Protocol.OK) {
+      p.future().complete(p.decoder().apply(frame));
+      return;
+    }
+    String message = Protocol.getString(frame);
+    RuntimeException error =
+        switch (status) {
+          case Protocol.BAD_REQUEST -> new IllegalArgumentException(message);
+          case Protocol.FORBIDDEN -> new SecurityException(message);
+          case Protocol.REJECTED -> new OperationRejectedException(message);
+          default -> new RuntimeException(message);
+        };
+    p.future().completeExceptionally(error);
+  }
+
+  private void failAll(Exception cause) {
+    for (Long id : pending.keySet()) {
+      Pending p = pending.remove(id);
+      if (p != null) {
+        p.future().completeExceptionally(new IllegalStateException("Соединение закрыто", cause));
+      }
+    }
+  }
+
+  private static CreatedLink readCreated(ByteBuffer buf) {
+    String code = Protocol.getString(buf);
+    String shortUrl = Protocol.getString(buf);
+    return new CreatedLink(code, shortUrl, Instant.ofEpochMilli(buf.getLong()));
+  }
+}
@@ -0,0 +1,549 @@
+package net;
+
+import cluster.ClusterNode;
+import cluster.ClusterRouter;
+import cluster.PartitionMap;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import model.Link;
+import service.OperationRejectedException;
+import service.ShortenerService;
+
+public class LinkServer implements AutoCloseable {
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_GATHER = 64;
+  // Неотвеченных запросов на соединение: дальше кадры не разбираются и чтение приостановлено,
+  // поэтому очередь исполнителей и очереди ответов ограничены числом соединений
+  private static final int MAX_OUTSTANDING = 256;
+
+  private static final long RELAY_TIMEOUT_SECONDS = 10;
+
+  private final ShortenerService service;
+  private final ClusterRouter router;
+  private final Selector selector;
+  private final ServerSocketChannel server;
+  private final ExecutorService workers;
+  private final BufferPool pool = new BufferPool();
+  private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+  private volatile boolean running;
+  private Thread loop;
+
+  public LinkServer(ShortenerService service, int port, int workerThreads) {
+    this(service, port, workerThreads, null);
+  }
+
+  public LinkServer(ShortenerService service, int port, int workerThreads, ClusterRouter router) {
+    this.service = service;
+    this.router = router;
+    try {
+      this.selector = Selector.open();
+      this.server = ServerSocketChannel.open();
+      server.bind(new InetSocketAddress(port));
+      server.configureBlocking(false);
+      server.register(selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось открыть порт " + port, e);
+    }
+
+    AtomicInteger n = new AtomicInteger();
+    this.workers =
+        Executors.newFixedThreadPool(
+            workerThreads,
+            r -> {
+              Thread t = new Thread(r, "link-server-worker-" + n.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  public void start() {
+    running = true;
+    loop = new Thread(this::runLoop, "link-server");
+    loop.setDaemon(true);
+    loop.start();
+  }
+
+  public int port() {
+    try {
+      return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    } catch (IOException e) {
+      throw new IllegalStateException("Сервер закрыт", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (!selector.isOpen()) {
+      return;
+    }
+    running = false;
+    selector.wakeup();
+    try {
+      if (loop != null) {
+        loop.join(TimeUnit.SECONDS.toMillis(5));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    workers.shutdownNow();
+    for (SelectionKey key : selector.keys()) {
+      closeQuietly(key);
+    }
+    try {
+      selector.close();
+      server.close();
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось остановить сервер", e);
+    }
+  }
+
+  private void runLoop() {
+    while (running) {
+      try {
+        selector.select();
+      } catch (IOException e) {
+        System.out.println("ОШИБКА сервера: " + e.getMessage());
+        return;
+      }
+
+      Connection pending;
+      while ((pending = pendingWrites.poll()) != null) {
+        flush(pending);
+      }
+
+      Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+      while (it.hasNext()) {
+        SelectionKey key = it.next();
+        it.remove();
+        if (!key.isValid()) {
+          continue;
+        }
+        if (key.isAcceptable()) {
+          accept();
+          continue;
+        }
+        Connection conn = (Connection) key.attachment();
+        if (key.isReadable()) {
+          read(conn);
+        }
+        if (key.isValid() && key.isWritable()) {
+          flush(conn);
+        }
+      }
+    }
+  }
+
+  private void accept() {
+    try {
+      SocketChannel ch = server.accept();
+      if (ch == null) {
+        return;
+      }
+      ch.configureBlocking(false);
+      ch.socket().setTcpNoDelay(true);
+      SelectionKey key = ch.register(selector, SelectionKey.OP_READ);
+      key.attach(new Connection(ch, key));
+    } catch (IOException e) {
+      System.out.println("ОШИБКА сервера: не удалось принять соединение: " + e.getMessage());
+    }
+  }
+
+  private void read(Connection conn) {
+    try {
+      if (conn.channel.read(conn.in) < 0) {
+        closeQuietly(conn.key);
+        return;
+      }
+      drain(conn);
+    } catch (IOException | IllegalStateException e) {
+      closeQuietly(conn.key);
+    }
+  }
+
+  // Разбирает принятые кадры, пока у соединения не наберётся MAX_OUTSTANDING неотвеченных
+  // запросов; остаток ждёт в буфере, пока flush не отправит часть ответов
+  private void drain(Connection conn) {
+    ByteBuffer in = conn.in;
+    in.flip();
+    int needed = 0;
+    while (in.remaining() >= Protocol.LENGTH_SIZE) {
+      if (conn.outstanding.get() >= MAX_OUTSTANDING) {
+        conn.paused = true;
+        break;
+      }
+      int len = in.getInt(in.position());
+      Protocol.checkFrameLength(len);
+      if (in.remaining() < Protocol.LENGTH_SIZE + len) {
+        needed = Protocol.LENGTH_SIZE + len;
+        break;
+      }
+      in.position(in.position() + Protocol.LENGTH_SIZE);
+      byte[] frame = new byte[len];
+      in.get(frame);
+      dispatch(conn, frame);
+    }
+    in.compact();
+
+    if (needed > in.capacity()) {
+      ByteBuffer bigger = ByteBuffer.allocateDirect(needed);
+      in.flip();
+      bigger.put(in);
+      conn.in = bigger;
+    }
+    updateInterest(conn);
+  }
+
+  private void updateInterest(Connection conn) {
+    if (conn.key.isValid()) {
+      conn.key.interestOps(
+          (conn.paused ? 0 : SelectionKey.OP_READ)
+              | (conn.writeBlocked ? SelectionKey.OP_WRITE : 0));
+    }
+  }
+
+  private void dispatch(Connection conn, byte[] frame) {
+    conn.outstanding.incrementAndGet();
+    try {
+      workers.execute(
+          () -> {
+            ByteBuffer response = handle(conn, frame);
+            if (response != null) {
+              send(conn, response);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      closeQuietly(conn.key);
+    }
+  }
+
+  // null означает, что ответ придёт асинхронно от соседнего узла
+  private ByteBuffer handle(Connection conn, byte[] frame) {
+    ByteBuffer req = ByteBuffer.wrap(frame);
+    byte raw = req.get();
+    long id = req.getLong();
+    boolean forwarded = (raw & Protocol.FORWARDED) != 0;
+    byte type = (byte) (raw & ~Protocol.FORWARDED);
+    try {
+      if (router != null) {
+        ClusterNode target = routeTarget(type, req.duplicate(), forwarded);
+        if (target != null) {
+          relay(conn, id, type, req, target);
+          return null;
+        }
+      }
+      return switch (type) {
+        case Protocol.CREATE -> handleCreate(id, req);
+        case Protocol.RESOLVE -> handleResolve(id, req);
+        case Protocol.DELETE -> handleDelete(id, req);
+        case Protocol.BATCH_CREATE -> handleBatchCreate(id, req);
+        case Protocol.IMPORT -> handleImport(conn, id, req);
+        case Protocol.PARTITION_MAP -> handlePartitionMap(conn, id, req);
+        default -> throw new IllegalArgumentException("Неизвестный тип запроса: " + type);
+      };
+    } catch (BufferUnderflowException e) {
+      return error(id, Protocol.BAD_REQUEST, "Некорректный кадр запроса");
+    } catch (IllegalArgumentException e) {
+      return error(id, Protocol.BAD_REQUEST, e.getMessage());
+    } catch (SecurityException e) {
+      return error(id, Protocol.FORBIDDEN, e.getMessage());
+    } catch (OperationRejectedException e) {
+      return error(id, Protocol.REJECTED, e.getMessage());
+    } catch (RuntimeException e) {
+      return error(id, Protocol.ERROR, String.valueOf(e.getMessage()));
+    }
+  }
+
+  // Новые коды генерируются среди локальных, поэтому пересылаются только псевдонимы и обращения.
+  // Пересланный запрос идёт дальше только к прежнему владельцу ссылки во время передачи
+  private ClusterNode routeTarget(byte type, ByteBuffer req, boolean forwarded) {
+    return switch (type) {
+      case Protocol.RESOLVE -> routeExisting(Protocol.getString(req), forwarded);
+      case Protocol.DELETE -> {
+        Protocol.getString(req);
+        yield routeExisting(Protocol.getString(req), forwarded);
+      }
+      case Protocol.CREATE -> {
+        if (forwarded) {
+          yield null;
+        }
+        Protocol.getString(req);
+        Protocol.getString(req);
+        req.getInt();
+        String alias = Protocol.getString(req);
+        yield alias.isEmpty() ? null : router.remoteOwnerOf(alias);
+      }
+      default -> null;
+    };
+  }
+
+  private ClusterNode routeExisting(String code, boolean forwarded) {
+    return forwarded ? router.routeForwarded(code) : router.route(code);
+  }
+
+  private void relay(Connection conn, long id, byte type, ByteBuffer req, ClusterNode target) {
+    byte[] payload = new byte[req.remaining()];
+    req.get(payload);
+    router
+        .client(target)
+        .relay((byte) (type | Protocol.FORWARDED), payload)
+        .orTimeout(RELAY_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        .whenComplete(
+            (reply, e) -> {
+              if (e != null) {
+                send(
+                    conn,
+                    error(
+                        id,
+                        Protocol.ERROR,
+                        "Узел " + target.id() + " недоступен: " + e.getMessage()));
+                return;
+              }
+              byte status = reply.get();
+              reply.position(Protocol.HEADER_SIZE);
+              send(conn, response(id, status, reply.remaining()).put(reply).flip());
+            });
+  }
+
+  private ByteBuffer handleCreate(long id, ByteBuffer req) {
+    String owner = Protocol.getString(req);
+    String url = Protocol.getString(req);
+    int maxClicks = req.getInt();
+    String alias = Protocol.getString(req);
+
+    Link link =
+        service.createForOwner(
+            owner, url, maxClicks == 0 ? null : maxClicks, alias.isEmpty() ? null : alias);
+    return created(id, List.of(link), false);
+  }
+
+  private ByteBuffer handleResolve(long id, ByteBuffer req) {
+    Link link = service.resolve(Protocol.getString(req));
+
+    byte[] url = Protocol.utf8(link.originalUrl());
+    ByteBuffer buf = response(id, Protocol.OK, Protocol.sizeOf(url));
+    Protocol.putString(buf, url);
+    return buf.flip();
+  }
+
+  private ByteBuffer handleDelete(long id, ByteBuffer req) {
+    String owner = Protocol.getString(req);
+    String code = Protocol.getString(req);
+    service.deleteForOwner(owner, code);
+    return response(id, Protocol.OK, 0).flip();
+  }
+
+  private ByteBuffer handleBatchCreate(long id, ByteBuffer req) {
+    String owner = Protocol.getString(req);
+    int maxClicks = req.getInt();
+    int count = req.getInt();
+    if (count < 0 || count > Protocol.MAX_BATCH) {
+      throw new IllegalArgumentException(
+          "Размер пакета должен быть от 0 до " + Protocol.MAX_BATCH + ": " + count);
+    }
+    List<String> urls = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      urls.add(Protocol.getString(req));
+    }
+
+    List<Link> links = service.createAllForOwner(owner, urls, maxClicks == 0 ? null : maxClicks);
+    return created(id, links, true);
+  }
+
+  private ByteBuffer handleImport(Connection conn, long id, ByteBuffer req) {
+    if (router == null) {
+      throw new IllegalStateException("Узел работает вне кластера");
+    }
+    if (!router.isPeer(conn.remote)) {
+      throw new SecurityException("Перенос ссылок принимается только от узлов кластера");
+    }
+    Link link =
+        new Link(
+            Protocol.getString(req),
+            Protocol.getString(req),
+            Protocol.getString(req),
+            Protocol.getString(req),
+            req.getInt(),
+            req.getInt(),
+            Protocol.getInstant(req),
+            Protocol.getInstant(req));
+    service.importLink(link);
+    return response(id, Protocol.OK, 0).flip();
+  }
+
+  private ByteBuffer handlePartitionMap(Connection conn, long id, ByteBuffer req) {
+    if (router == null) {
+      throw new IllegalStateException("Узел работает вне кластера");
+    }
+    router.acceptPartitionMap(PartitionMap.parse(Protocol.getString(req)), conn.remote);
+    return response(id, Protocol.OK, 0).flip();
+  }
+
+  private ByteBuffer created(long id, List<Link> links, boolean batch) {
+    List<byte[]> strings = new ArrayList<>(links.size() * 2);
+    int size = batch ? 4 : 0;
+    for (Link l : links) {
+      byte[] code = Protocol.utf8(l.code());
+      byte[] shortUrl = Protocol.utf8(l.shortUrl());
+      strings.add(code);
+      strings.add(shortUrl);
+      size += Protocol.sizeOf(code) + Protocol.sizeOf(shortUrl) + 8;
+    }
+
+    ByteBuffer buf = response(id, Protocol.OK, size);
+    if (batch) {
+      buf.putInt(links.size());
+    }
+    for (int i = 0; i < links.size(); i++) {
+      Protocol.putString(buf, strings.get(2 * i));
+      Protocol.putString(buf, strings.get(2 * i + 1));
+      buf.putLong(links.get(i).expiresAt().toEpochMilli());
+    }
+    return buf.flip();
+  }
+
+  private ByteBuffer error(long id, byte status, String message) {
+    byte[] msg = Protocol.utf8(message == null ? "" : message);
+    ByteBuffer buf = response(id, status, Protocol.sizeOf(msg));
+    Protocol.putString(buf, msg);
+    return buf.flip();
+  }
+
+  private ByteBuffer response(long id, byte status, int payloadSize) {
+    int len = Protocol.HEADER_SIZE + payloadSize;
+    ByteBuffer buf = pool.acquire(Protocol.LENGTH_SIZE + len);
+    buf.putInt(len);
+    buf.put(status);
+    buf.putLong(id);
+    return buf;
+  }
+
+  private void send(Connection conn, ByteBuffer response) {
+    conn.out.add(response);
+    if (conn.flushScheduled.compareAndSet(false, true)) {
+      pendingWrites.add(conn);
+      selector.wakeup();
+    }
+  }
+
+  private void flush(Connection conn) {
+    conn.flushScheduled.set(false);
+    if (!conn.key.isValid()) {
+      return;
+    }
+    try {
+      ByteBuffer[] batch = new ByteBuffer[MAX_GATHER];
+      while (true) {
+        int n = 0;
+        for (ByteBuffer b : conn.out) {
+          batch[n++] = b;
+          if (n == MAX_GATHER) {
+            break;
+          }
+        }
+        if (n == 0) {
+          conn.writeBlocked = false;
+          break;
+        }
+
+        conn.channel.write(batch, 0, n);
+
+        int done = 0;
+        while (done < n && !batch[done].hasRemaining()) {
+          pool.release(conn.out.poll());
+          conn.outstanding.decrementAndGet();
+          done++;
+        }
+        if (done < n) {
+          // Буфер сокета заполнен: допишем, когда канал снова станет доступен для записи
+          conn.writeBlocked = true;
+          break;
+        }
+      }
+      if (conn.paused && conn.outstanding.get() < MAX_OUTSTANDING) {
+        conn.paused = false;
+        drain(conn);
+      } else {
+        updateInterest(conn);
+      }
+    } catch (IOException | IllegalStateException e) {
+      closeQuietly(conn.key);
+    }
+  }
+
+  private void closeQuietly(SelectionKey key) {
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch (IOException ignored) {
+      // соединение уже закрыто
+    }
+  }
+
+  private static final class Connection {
+    final SocketChannel channel;
+    final SelectionKey key;
+    final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+    final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Запросы, ответ на которые ещё не записан в сокет целиком
+    final AtomicInteger outstanding = new AtomicInteger();
+    final InetAddress remote;
+    // Меняются только в потоке селектора
+    boolean paused;
+    boolean writeBlocked;
+    ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    Connection(SocketChannel channel, SelectionKey key) throws IOException {
+      this.channel = channel;
+      this.key = key;
+      this.remote = ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+    }
+  }
+
+  private static final class BufferPool {
+    private static final int SLOT_SIZE = 4096;
+    private static final int MAX_POOLED = 1024;
+
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    // Крупные ответы (пакетное создание) редки: куча дешевле нового direct-буфера на каждый,
+    // а копирование при записи идёт через кэшированный временный буфер канала
+    ByteBuffer acquire(int size) {
+      if (size > SLOT_SIZE) {
+        return ByteBuffer.allocate(size);
+      }
+      ByteBuffer buf = free.poll();
+      if (buf == null) {
+        return ByteBuffer.allocateDirect(SLOT_SIZE);
+      }
+      pooled.decrementAndGet();
+      return buf.clear();
+    }
+
+    void release(ByteBuffer buf) {
+      if (buf != null && buf.capacity() == SLOT_SIZE && pooled.get() < MAX_POOLED) {
+        pooled.incrementAndGet();
+        free.add(buf);
+      }
+    }
+  }
+}
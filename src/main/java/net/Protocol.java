@@ -0,0 +1,73 @@
+package net;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+final class Protocol {
+  // Кадр в обе стороны: [int длина остатка][byte тип или статус][long id запроса][данные].
+  // Строки: [int длина в байтах][UTF-8].
+  static final int LENGTH_SIZE = 4;
+  static final int HEADER_SIZE = 1 + 8;
+  static final int MAX_FRAME_SIZE = 1 << 20;
+  static final int MAX_BATCH = 1000;
+  static final int INSTANT_SIZE = 8 + 4;
+
+  static final byte CREATE = 1;
+  static final byte RESOLVE = 2;
+  static final byte DELETE = 3;
+  static final byte BATCH_CREATE = 4;
+  static final byte IMPORT = 5;
+  static final byte PARTITION_MAP = 6;
+
+  // Бит в типе запроса: кадр уже переслан другим узлом кластера и обрабатывается локально
+  static final byte FORWARDED = 0x40;
+
+  static final byte OK = 0;
+  static final byte BAD_REQUEST = 1;
+  static final byte FORBIDDEN = 2;
+  static final byte REJECTED = 3;
+  static final byte ERROR = 4;
+
+  private Protocol() {}
+
+  static byte[] utf8(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  static int sizeOf(byte[] utf8) {
+    return 4 + utf8.length;
+  }
+
+  static void putString(ByteBuffer buf, byte[] utf8) {
+    buf.putInt(utf8.length);
+    buf.put(utf8);
+  }
+
+  static String getString(ByteBuffer buf) {
+    int len = buf.getInt();
+    if (len < 0 || len > buf.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    byte[] bytes = new byte[len];
+    buf.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static void putInstant(ByteBuffer buf, Instant t) {
+    buf.putLong(t.getEpochSecond());
+    buf.putInt(t.getNano());
+  }
+
+  static Instant getInstant(ByteBuffer buf) {
+    long seconds = buf.getLong();
+    return Instant.ofEpochSecond(seconds, buf.getInt());
+  }
+
+  static void checkFrameLength(int len) {
+    if (len < HEADER_SIZE || len > MAX_FRAME_SIZE) {
+      throw new IllegalStateException("Некорректная длина кадра: " + len);
+    }
+  }
+}
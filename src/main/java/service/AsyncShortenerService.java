@@ -0,0 +1,176 @@
+package service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import model.Link;
+import util.Config;
+
+// Асинхронный фасад над ShortenerService для встраивания в серверы: операции выполняются
+// в отдельном исполнителе, число одновременных операций ограничено, а результат
+// завершается TimeoutException, если операция не уложилась в asyncTimeout.
+public class AsyncShortenerService implements AutoCloseable {
+  private final ShortenerService core;
+  private final ExecutorService executor;
+  private final int maxInFlight;
+  private final Semaphore permits;
+  private final Duration timeout;
+
+  public AsyncShortenerService(ShortenerService core, Config config) {
+    this(
+        core,
+        createExecutor(config.asyncExecutor(), config.asyncThreads()),
+        config.asyncMaxInFlight(),
+        config.asyncTimeout());
+  }
+
+  AsyncShortenerService(
+      ShortenerService core, ExecutorService executor, int maxInFlight, Duration timeout) {
+    if (maxInFlight <= 0) {
+      throw new IllegalArgumentException("asyncMaxInFlight должен быть больше нуля");
+    }
+    if (timeout.isNegative() || timeout.isZero()) {
+      throw new IllegalArgumentException("asyncTimeoutMillis должен быть больше нуля");
+    }
+    this.core = core;
+    this.executor = executor;
+    this.maxInFlight = maxInFlight;
+    this.permits = new Semaphore(maxInFlight);
+    this.timeout = timeout;
+  }
+
+  public CompletableFuture<Link> create(
+      String ownerUuid, String originalUrl, Integer maxClicks, String alias) {
+    return submit(() -> core.createForOwner(ownerUuid, originalUrl, maxClicks, alias));
+  }
+
+  public CompletableFuture<Link> resolve(String code) {
+    return submit(() -> core.resolve(code));
+  }
+
+  public CompletableFuture<List<Link>> list(String ownerUuid) {
+    return submit(() -> core.listForOwner(ownerUuid));
+  }
+
+  public CompletableFuture<Void> delete(String ownerUuid, String code) {
+    return submit(
+        () -> {
+          core.deleteForOwner(ownerUuid, code);
+          return null;
+        });
+  }
+
+  // Сколько операций сейчас ждут в очереди или выполняются
+  public int inFlight() {
+    return maxInFlight - permits.availablePermits();
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private <T> CompletableFuture<T> submit(Supplier<T> work) {
+    if (!permits.tryAcquire()) {
+      return CompletableFuture.failedFuture(
+          new OperationRejectedException("Слишком много одновременных операций, повторите позже"));
+    }
+    CompletableFuture<T> result = new CompletableFuture<>();
+    AtomicBoolean started = new AtomicBoolean();
+    Future<?> task;
+    try {
+      task =
+          executor.submit(
+              () -> {
+                if (!started.compareAndSet(false, true)) {
+                  return;
+                }
+                // Слот освобождается до завершения результата: тот, кто дождался его,
+                // уже видит операцию завершённой в inFlight(). Ошибка (Error) тоже возвращает
+                // слот и доходит до вызывающего, иначе будущее так и не завершилось бы
+                T value;
+                try {
+                  value = work.get();
+                } catch (Throwable e) {
+                  permits.release();
+                  result.completeExceptionally(e);
+                  return;
+                }
+                permits.release();
+                result.complete(value);
+              });
+    } catch (RejectedExecutionException e) {
+      permits.release();
+      return CompletableFuture.failedFuture(
+          new OperationRejectedException("Асинхронный сервис остановлен", e));
+    }
+    // Операция, не начавшаяся до таймаута или отмены, снимается с очереди и освобождает слот.
+    // Начатую не прерываем: interrupt закрывает FileChannel хранилища, поэтому слот
+    // освободится, когда она завершится сама.
+    result
+        .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+        .whenComplete(
+            (value, error) -> {
+              if (error != null && started.compareAndSet(false, true)) {
+                permits.release();
+                task.cancel(false);
+              }
+            });
+    return result;
+  }
+
+  static ExecutorService createExecutor(String kind, int threads) {
+    return switch (kind.toLowerCase(Locale.ROOT)) {
+      case "bounded" -> boundedExecutor(threads);
+      case "virtual" -> virtualExecutor(threads);
+      default -> throw new IllegalArgumentException("Неизвестный тип исполнителя: " + kind);
+    };
+  }
+
+  private static ExecutorService boundedExecutor(int threads) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("asyncThreads должен быть больше нуля");
+    }
+    AtomicInteger n = new AtomicInteger();
+    return Executors.newFixedThreadPool(
+        threads,
+        r -> {
+          Thread t = new Thread(r, "shortener-async-" + n.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+  }
+
+  // Проект собирается под Java 17, поэтому виртуальные потоки подключаются через reflection,
+  // если приложение запущено на JVM 21+; иначе используется обычный пул
+  private static ExecutorService virtualExecutor(int threads) {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      System.out.println(
+          "Уведомление: виртуальные потоки недоступны в этой JVM, используется пул из "
+              + threads
+              + " потоков");
+      return boundedExecutor(threads);
+    }
+  }
+}
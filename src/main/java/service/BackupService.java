@@ -0,0 +1,85 @@
+package service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import storage.LinkJsonFormat;
+import storage.LinkRepository;
+import storage.LinkSnapshot;
+import storage.StorageCompression;
+import util.Config;
+
+public class BackupService {
+  private final LinkRepository repo;
+  private final StorageCompression compression;
+  private final int compressionLevel;
+  private final LinkJsonFormat format = new LinkJsonFormat();
+  private final ExecutorService writer;
+
+  public record BackupResult(Path file, int linkCount, long bytes, Instant takenAt) {}
+
+  public BackupService(LinkRepository repo, Config config) {
+    this.repo = repo;
+    this.compression = StorageCompression.fromName(config.storageCompression());
+    this.compressionLevel = config.storageCompressionLevel();
+    this.writer =
+        Executors.newSingleThreadExecutor(
+            r -> {
+              Thread t = new Thread(r, "backup-writer");
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  public CompletableFuture<BackupResult> backup(Path target) {
+    if (target == null) {
+      throw new IllegalArgumentException("Не указан путь для резервной копии");
+    }
+    LinkSnapshot snapshot = repo.snapshot();
+    Instant takenAt = Instant.now();
+    return CompletableFuture.supplyAsync(() -> write(target, snapshot, takenAt), writer);
+  }
+
+  public void stop() {
+    writer.shutdown();
+  }
+
+  private BackupResult write(Path target, LinkSnapshot snapshot, Instant takenAt) {
+    Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      if (target.getParent() != null) {
+        Files.createDirectories(target.getParent());
+      }
+      try {
+        try (OutputStream out =
+            compression.wrap(
+                new BufferedOutputStream(Files.newOutputStream(tmp)), compressionLevel)) {
+          format.write(out, snapshot);
+        }
+        try {
+          Files.move(
+              tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } catch (IOException | RuntimeException e) {
+        // Недописанная копия не должна остаться рядом с целевым файлом
+        Files.deleteIfExists(tmp);
+        throw e;
+      }
+      return new BackupResult(target, snapshot.size(), Files.size(target), takenAt);
+
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Не удалось сохранить резервную копию: " + target.toAbsolutePath(), e);
+    }
+  }
+}
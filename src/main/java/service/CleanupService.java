@@ -1,10 +1,12 @@
 package service;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import model.Link;
+import monitoring.CleanupSweepEvent;
 import storage.LinkRepository;
 import util.Config;
 
@@ -31,13 +33,19 @@ public class CleanupService {
   }
 
   private void cleanupExpired() {
-    Instant now = Instant.now();
-    for (Link l : repo.findAll()) {
-      if (now.isAfter(l.expiresAt())) {
-        repo.deleteByCode(l.code());
-        System.out.println(
-            "Уведомление: срок действия ссылки (" + l.code() + ") истёк, ссылка удалена.");
-      }
+    CleanupSweepEvent event = new CleanupSweepEvent();
+    event.begin();
+    if (event.isEnabled()) {
+      event.scanned = repo.count();
     }
+
+    List<Link> removed = repo.deleteExpired(Instant.now());
+    for (Link l : removed) {
+      System.out.println(
+          "Уведомление: срок действия ссылки (" + l.code() + ") истёк, ссылка удалена.");
+    }
+
+    event.deleted = removed.size();
+    event.commit();
   }
 }
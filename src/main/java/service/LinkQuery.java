@@ -0,0 +1,316 @@
+package service;
+
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import model.Link;
+import util.UrlValidator;
+
+// Разобранный запрос команды query. Условия пишутся без пробелов внутри и должны выполняться
+// все: host=mail.ru clicks>=5 expiresAt<now+1h url~promo. После условий — необязательные
+// group <поле> [having count<оп>N], count и limit N.
+public final class LinkQuery {
+
+  public static final int DEFAULT_LIMIT = 50;
+
+  // Длинные операторы проверяются раньше их префиксов
+  private static final String[] OPERATORS = {"!=", ">=", "<=", "^=", "=", ">", "<", "~"};
+
+  public enum Field {
+    CODE("code"),
+    OWNER("owner"),
+    URL("url"),
+    HOST("host"),
+    SHORT_URL("shortUrl"),
+    MAX_CLICKS("maxClicks"),
+    CLICKS("clicks"),
+    REMAINING("remaining"),
+    CREATED_AT("createdAt"),
+    EXPIRES_AT("expiresAt");
+
+    private final String title;
+
+    Field(String title) {
+      this.title = title;
+    }
+
+    public String title() {
+      return title;
+    }
+
+    // String, Integer или Instant; null, если значения нет
+    Object value(Link l) {
+      return switch (this) {
+        case CODE -> l.code();
+        case OWNER -> l.ownerUuid();
+        case URL -> l.originalUrl();
+        case HOST -> UrlValidator.hostOf(l.originalUrl());
+        case SHORT_URL -> l.shortUrl();
+        case MAX_CLICKS -> l.maxClicks();
+        case CLICKS -> l.clicksDone();
+        case REMAINING -> Math.max(0, l.maxClicks() - l.clicksDone());
+        case CREATED_AT -> l.createdAt();
+        case EXPIRES_AT -> l.expiresAt();
+      };
+    }
+
+    // Ключ группы; даты группируются по дням UTC
+    String groupKey(Link l) {
+      Object v = value(l);
+      if (v == null) {
+        return "-";
+      }
+      return v instanceof Instant t
+          ? LocalDate.ofInstant(t, ZoneOffset.UTC).toString()
+          : v.toString();
+    }
+
+    static Field byName(String name) {
+      for (Field f : values()) {
+        if (f.title.equalsIgnoreCase(name)) {
+          return f;
+        }
+      }
+      throw new IllegalArgumentException(
+          "Неизвестное поле запроса: "
+              + name
+              + " (поля: "
+              + String.join(", ", fieldTitles())
+              + ")");
+    }
+  }
+
+  private final Predicate<Link> filter;
+  private final String host;
+  private final Field groupBy;
+  private final IntPredicate having;
+  private final boolean countOnly;
+  private final int limit;
+
+  private LinkQuery(
+      Predicate<Link> filter,
+      String host,
+      Field groupBy,
+      IntPredicate having,
+      boolean countOnly,
+      int limit) {
+    this.filter = filter;
+    this.host = host;
+    this.groupBy = groupBy;
+    this.having = having;
+    this.countOnly = countOnly;
+    this.limit = limit;
+  }
+
+  public static LinkQuery parse(List<String> tokens, Instant now) {
+    Predicate<Link> filter = l -> true;
+    String host = null;
+    Field groupBy = null;
+    IntPredicate having = n -> true;
+    boolean countOnly = false;
+    int limit = DEFAULT_LIMIT;
+
+    for (int i = 0; i < tokens.size(); i++) {
+      String token = tokens.get(i);
+      switch (token.toLowerCase(Locale.ROOT)) {
+        case "count" -> countOnly = true;
+        case "group" -> groupBy = Field.byName(argument(tokens, ++i, "group <поле>"));
+        case "having" -> having = parseHaving(argument(tokens, ++i, "having count>=N"));
+        case "limit" -> limit = parseLimit(argument(tokens, ++i, "limit N"));
+        default -> {
+          Condition c = Condition.parse(token, now);
+          filter = filter.and(c.predicate());
+          if (c.field() == Field.HOST && c.op().equals("=")) {
+            host = (String) c.target();
+          }
+        }
+      }
+    }
+    if (groupBy == null && tokens.stream().anyMatch(t -> t.equalsIgnoreCase("having"))) {
+      throw new IllegalArgumentException("having допускается только вместе с group");
+    }
+    return new LinkQuery(filter, host, groupBy, having, countOnly, limit);
+  }
+
+  public boolean matches(Link l) {
+    return filter.test(l);
+  }
+
+  // Хост из условия host=..., по которому можно взять ссылки из индекса; null — нет условия
+  public String host() {
+    return host;
+  }
+
+  public Field groupBy() {
+    return groupBy;
+  }
+
+  public boolean keepGroup(int count) {
+    return having.test(count);
+  }
+
+  public boolean countOnly() {
+    return countOnly;
+  }
+
+  public int limit() {
+    return limit;
+  }
+
+  private record Condition(Field field, String op, Object target, Predicate<Link> predicate) {
+
+    static Condition parse(String token, Instant now) {
+      int at = 0;
+      while (at < token.length() && Character.isLetter(token.charAt(at))) {
+        at++;
+      }
+      String op = operatorAt(token, at);
+      if (at == 0 || op == null || at + op.length() == token.length()) {
+        throw new IllegalArgumentException("Некорректное условие: " + token);
+      }
+      Field field = Field.byName(token.substring(0, at));
+      String raw = token.substring(at + op.length());
+      Object target =
+          switch (field) {
+            case MAX_CLICKS, CLICKS, REMAINING -> parseInt(raw, token);
+            case CREATED_AT, EXPIRES_AT -> parseTime(raw, now);
+            case HOST -> raw.toLowerCase(Locale.ROOT);
+            default -> raw;
+          };
+      if ((op.equals("^=") || op.equals("~")) && !(target instanceof String)) {
+        throw new IllegalArgumentException("Оператор " + op + " применим только к строкам");
+      }
+      return new Condition(field, op, target, predicate(field, op, target));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate<Link> predicate(Field field, String op, Object target) {
+      return switch (op) {
+        case "^=" -> {
+          String prefix = (String) target;
+          yield l -> field.value(l) instanceof String s && s.startsWith(prefix);
+        }
+        case "~" -> {
+          String part = ((String) target).toLowerCase(Locale.ROOT);
+          yield l ->
+              field.value(l) instanceof String s && s.toLowerCase(Locale.ROOT).contains(part);
+        }
+        default -> {
+          IntPredicate holds = comparison(op);
+          yield l -> {
+            Object v = field.value(l);
+            return v != null && holds.test(((Comparable) v).compareTo(target));
+          };
+        }
+      };
+    }
+  }
+
+  private static String operatorAt(String token, int at) {
+    for (String op : OPERATORS) {
+      if (token.startsWith(op, at)) {
+        return op;
+      }
+    }
+    return null;
+  }
+
+  // Проверка результата compareTo для оператора сравнения
+  private static IntPredicate comparison(String op) {
+    return switch (op) {
+      case "=" -> c -> c == 0;
+      case "!=" -> c -> c != 0;
+      case ">" -> c -> c > 0;
+      case ">=" -> c -> c >= 0;
+      case "<" -> c -> c < 0;
+      case "<=" -> c -> c <= 0;
+      default -> throw new IllegalArgumentException("Неизвестный оператор: " + op);
+    };
+  }
+
+  private static IntPredicate parseHaving(String token) {
+    String op = token.toLowerCase(Locale.ROOT).startsWith("count") ? operatorAt(token, 5) : null;
+    if (op == null || op.equals("^=") || op.equals("~")) {
+      throw new IllegalArgumentException("Ожидалось having count<оператор>N, получено: " + token);
+    }
+    int n = parseInt(token.substring(5 + op.length()), token);
+    IntPredicate holds = comparison(op);
+    return count -> holds.test(Integer.compare(count, n));
+  }
+
+  private static int parseLimit(String raw) {
+    int n = parseInt(raw, "limit " + raw);
+    if (n <= 0) {
+      throw new IllegalArgumentException("limit должен быть больше нуля");
+    }
+    return n;
+  }
+
+  private static String argument(List<String> tokens, int i, String usage) {
+    if (i >= tokens.size()) {
+      throw new IllegalArgumentException("Не хватает аргумента: " + usage);
+    }
+    return tokens.get(i);
+  }
+
+  private static int parseInt(String raw, String token) {
+    try {
+      return Integer.parseInt(raw);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Ожидалось целое число: " + token);
+    }
+  }
+
+  // now, now+1h, now-7d, 2025-01-31 (полночь UTC) или 2025-01-31T10:00:00Z
+  static Instant parseTime(String raw, Instant now) {
+    if (raw.startsWith("now")) {
+      if (raw.length() == 3) {
+        return now;
+      }
+      return now.plus(parseOffset(raw.substring(3), raw));
+    }
+    try {
+      return raw.length() == 10
+          ? LocalDate.parse(raw).atStartOfDay(ZoneOffset.UTC).toInstant()
+          : Instant.parse(raw);
+    } catch (DateTimeException e) {
+      throw new IllegalArgumentException("Некорректная дата: " + raw);
+    }
+  }
+
+  private static Duration parseOffset(String offset, String raw) {
+    char sign = offset.charAt(0);
+    char unit = offset.charAt(offset.length() - 1);
+    if ((sign != '+' && sign != '-') || offset.length() < 3) {
+      throw new IllegalArgumentException("Некорректная дата: " + raw);
+    }
+    long n = parseInt(offset.substring(1, offset.length() - 1), raw);
+    Duration d =
+        switch (unit) {
+          case 'd' -> Duration.ofDays(n);
+          case 'h' -> Duration.ofHours(n);
+          case 'm' -> Duration.ofMinutes(n);
+          case 's' -> Duration.ofSeconds(n);
+          default ->
+              throw new IllegalArgumentException(
+                  "Единица времени должна быть d, h, m или s: " + raw);
+        };
+    return sign == '-' ? d.negated() : d;
+  }
+
+  // Для сообщений об ошибках и справки
+  static List<String> fieldTitles() {
+    List<String> titles = new ArrayList<>();
+    for (Field f : Field.values()) {
+      titles.add(f.title());
+    }
+    return titles;
+  }
+}
@@ -0,0 +1,15 @@
+package service;
+
+// Сервис отказал в операции, но сам исправен: лимит частоты, переполненная очередь,
+// исчерпанная или истёкшая ссылка. По бинарному протоколу передаётся ответом REJECTED,
+// а прочие IllegalStateException (сбой хранилища и т. п.) — ответом ERROR
+public class OperationRejectedException extends IllegalStateException {
+
+  public OperationRejectedException(String message) {
+    super(message);
+  }
+
+  public OperationRejectedException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,166 @@
+package service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import model.Link;
+import storage.LinkRepository;
+
+// Выполняет запросы query: параллельно сканирует согласованный снимок хранилища в пуле
+// fork-join, не останавливая сервис. Запрос по host=... берёт ссылки из индекса хостов,
+// если хранилище его ведёт.
+public class QueryService {
+
+  // Меньшие диапазоны сканируются одним потоком: дробить дальше дороже, чем проверять
+  private static final int SPLIT_THRESHOLD = 8192;
+
+  // Код различает ссылки, созданные в одно время, поэтому порядок и страница однозначны
+  private static final Comparator<Link> NEWEST_FIRST =
+      Comparator.comparing(Link::createdAt).reversed().thenComparing(Link::code);
+
+  public record Result(
+      int matched,
+      List<Link> links,
+      List<Map.Entry<String, Integer>> groups,
+      boolean truncated,
+      boolean usedHostIndex,
+      Duration took) {}
+
+  private final LinkRepository repo;
+  private final ForkJoinPool pool;
+  private final Clock clock;
+  private final int splitThreshold;
+
+  public QueryService(LinkRepository repo) {
+    this(repo, ForkJoinPool.commonPool(), Clock.systemUTC(), SPLIT_THRESHOLD);
+  }
+
+  QueryService(LinkRepository repo, ForkJoinPool pool, Clock clock, int splitThreshold) {
+    this.repo = repo;
+    this.pool = pool;
+    this.clock = clock;
+    this.splitThreshold = splitThreshold;
+  }
+
+  public Result query(List<String> tokens) {
+    return execute(LinkQuery.parse(tokens, Instant.now(clock)));
+  }
+
+  public Result execute(LinkQuery query) {
+    long start = System.nanoTime();
+    Optional<List<Link>> indexed =
+        query.host() == null ? Optional.empty() : repo.findByHost(query.host());
+    Spliterator<Link> links =
+        indexed.isPresent() ? indexed.get().spliterator() : repo.spliterator();
+
+    Partial p = pool.invoke(new Scan(links, query));
+
+    List<Link> page = List.of();
+    List<Map.Entry<String, Integer>> groups = List.of();
+    boolean truncated = false;
+    int matched = p.matched;
+    if (query.groupBy() != null) {
+      List<Map.Entry<String, Integer>> kept = new ArrayList<>();
+      for (Map.Entry<String, Integer> e : p.groups.entrySet()) {
+        if (query.keepGroup(e.getValue())) {
+          kept.add(Map.entry(e.getKey(), e.getValue()));
+        }
+      }
+      kept.sort(
+          Map.Entry.<String, Integer>comparingByValue()
+              .reversed()
+              .thenComparing(Map.Entry.comparingByKey()));
+      truncated = kept.size() > query.limit();
+      groups = truncated ? List.copyOf(kept.subList(0, query.limit())) : List.copyOf(kept);
+    } else if (!query.countOnly()) {
+      List<Link> hits = new ArrayList<>(p.newest);
+      hits.sort(NEWEST_FIRST);
+      truncated = matched > query.limit();
+      page = List.copyOf(hits);
+    }
+    return new Result(
+        matched,
+        page,
+        groups,
+        truncated,
+        indexed.isPresent(),
+        Duration.ofNanos(System.nanoTime() - start));
+  }
+
+  // Итог сканирования части снимка; части сливаются при join. Для списка каждая часть
+  // держит не больше limit самых новых совпадений: в куче первой лежит самая старая из них
+  private static final class Partial {
+    private final int limit;
+    int matched;
+    final PriorityQueue<Link> newest = new PriorityQueue<>(NEWEST_FIRST.reversed());
+    final Map<String, Integer> groups = new HashMap<>();
+
+    Partial(int limit) {
+      this.limit = limit;
+    }
+
+    void offer(Link l) {
+      if (newest.size() < limit) {
+        newest.add(l);
+      } else if (NEWEST_FIRST.compare(l, newest.peek()) < 0) {
+        newest.poll();
+        newest.add(l);
+      }
+    }
+
+    Partial merge(Partial other) {
+      matched += other.matched;
+      other.newest.forEach(this::offer);
+      other.groups.forEach((k, v) -> groups.merge(k, v, Integer::sum));
+      return this;
+    }
+  }
+
+  // Делит снимок через trySplit, пока части крупнее порога, как это делают параллельные стримы
+  private final class Scan extends RecursiveTask<Partial> {
+    private final Spliterator<Link> links;
+    private final LinkQuery query;
+
+    Scan(Spliterator<Link> links, LinkQuery query) {
+      this.links = links;
+      this.query = query;
+    }
+
+    @Override
+    protected Partial compute() {
+      Spliterator<Link> prefix;
+      if (links.estimateSize() > splitThreshold && (prefix = links.trySplit()) != null) {
+        Scan left = new Scan(prefix, query);
+        left.fork();
+        Partial right = compute();
+        return left.join().merge(right);
+      }
+      LinkQuery.Field groupBy = query.groupBy();
+      boolean collect = groupBy == null && !query.countOnly();
+      Partial p = new Partial(collect ? query.limit() : 0);
+      links.forEachRemaining(
+          l -> {
+            if (!query.matches(l)) {
+              return;
+            }
+            p.matched++;
+            if (groupBy != null) {
+              p.groups.merge(groupBy.groupKey(l), 1, Integer::sum);
+            } else if (collect) {
+              p.offer(l);
+            }
+          });
+      return p;
+    }
+  }
+}
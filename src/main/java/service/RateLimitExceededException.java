@@ -0,0 +1,14 @@
+package service;
+
+// Отказ по лимиту частоты: без стека вызовов, чтобы поток отказов обходился дёшево
+public class RateLimitExceededException extends OperationRejectedException {
+
+  public RateLimitExceededException(String message) {
+    super(message);
+  }
+
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+}
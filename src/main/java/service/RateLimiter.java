@@ -0,0 +1,138 @@
+package service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Token bucket на ключ (владелец или код). Состояние ведра — одно AtomicLong: старшие
+// 40 бит — время последнего пополнения в мс, младшие 24 — запас в тысячных долях токена.
+// Отказ ничего не пишет, поэтому поток отказов не мешает остальным ключам.
+public final class RateLimiter {
+  private static final int TOKEN_BITS = 24;
+  private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+  private static final long MILLI = 1000;
+  private static final int MAX_BURST = (int) (TOKEN_MASK / MILLI);
+
+  private static final int STRIPES = 16;
+  private static final int SWEEP_EVERY = 1024;
+
+  private final double permitsPerSecond;
+  private final long capacity;
+  private final long idleMillis;
+  private final LongSupplier nanoTime;
+  private final long originNanos;
+
+  @SuppressWarnings("unchecked")
+  private final ConcurrentHashMap<String, AtomicLong>[] stripes = new ConcurrentHashMap[STRIPES];
+
+  // Счётчик вызовов на полосу: общий счётчик на каждый вызов был бы точкой конкуренции
+  private final AtomicInteger[] stripeCalls = new AtomicInteger[STRIPES];
+  private final AtomicInteger nextSweep = new AtomicInteger();
+  private final LongAdder rejected = new LongAdder();
+
+  public RateLimiter(double permitsPerSecond, int burst) {
+    this(permitsPerSecond, burst, System::nanoTime);
+  }
+
+  RateLimiter(double permitsPerSecond, int burst, LongSupplier nanoTime) {
+    if (!(permitsPerSecond > 0)) {
+      throw new IllegalArgumentException("Частота должна быть больше нуля: " + permitsPerSecond);
+    }
+    if (burst < 1 || burst > MAX_BURST) {
+      throw new IllegalArgumentException("Запас должен быть от 1 до " + MAX_BURST + ": " + burst);
+    }
+    this.permitsPerSecond = permitsPerSecond;
+    this.capacity = burst * MILLI;
+    // Ведро, простоявшее дольше полного пополнения, неотличимо от нового и удаляется
+    this.idleMillis = (long) Math.ceil(burst * 1000.0 / permitsPerSecond);
+    this.nanoTime = nanoTime;
+    this.originNanos = nanoTime.getAsLong();
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new ConcurrentHashMap<>();
+      stripeCalls[i] = new AtomicInteger();
+    }
+  }
+
+  // Лимит из конфига: частота 0 отключает ограничение
+  static RateLimiter fromConfig(double permitsPerSecond, int burst, LongSupplier nanoTime) {
+    return permitsPerSecond > 0 ? new RateLimiter(permitsPerSecond, burst, nanoTime) : null;
+  }
+
+  public boolean tryAcquire(String key) {
+    long now = nowMillis();
+    int index = stripeIndex(key);
+    maybeSweep(index, now);
+
+    ConcurrentHashMap<String, AtomicLong> stripe = stripes[index];
+    AtomicLong bucket = stripe.get(key);
+    if (bucket == null) {
+      AtomicLong fresh = new AtomicLong(pack(now, capacity - MILLI));
+      bucket = stripe.putIfAbsent(key, fresh);
+      if (bucket == null) {
+        return true;
+      }
+    }
+
+    while (true) {
+      long state = bucket.get();
+      long last = state >>> TOKEN_BITS;
+      long tokens = state & TOKEN_MASK;
+      // Пополнение считается от начала отсчёта, а не от прошлого вызова: дробная часть не
+      // теряется при каждом пополнении, а переносится в следующее
+      long added = credit(now) - credit(last);
+      if (added > 0) {
+        tokens = Math.min(capacity, tokens + added);
+        last = now;
+      }
+      if (tokens < MILLI) {
+        rejected.increment();
+        return false;
+      }
+      if (bucket.compareAndSet(state, pack(last, tokens - MILLI))) {
+        return true;
+      }
+    }
+  }
+
+  public long rejectedCount() {
+    return rejected.sum();
+  }
+
+  public int bucketCount() {
+    int n = 0;
+    for (ConcurrentHashMap<String, AtomicLong> s : stripes) {
+      n += s.size();
+    }
+    return n;
+  }
+
+  // Раз в SWEEP_EVERY вызовов на полосу обходит очередную полосу и удаляет простаивающие вёдра
+  private void maybeSweep(int index, long now) {
+    if (stripeCalls[index].incrementAndGet() % SWEEP_EVERY != 0) {
+      return;
+    }
+    ConcurrentHashMap<String, AtomicLong> stripe =
+        stripes[Math.floorMod(nextSweep.getAndIncrement(), STRIPES)];
+    stripe.entrySet().removeIf(e -> now - (e.getValue().get() >>> TOKEN_BITS) >= idleMillis);
+  }
+
+  private static int stripeIndex(String key) {
+    int h = key.hashCode();
+    return (h ^ (h >>> 16)) & (STRIPES - 1);
+  }
+
+  // Тысячные доли токена, накопленные к моменту millis
+  private long credit(long millis) {
+    return (long) (millis * permitsPerSecond);
+  }
+
+  private long nowMillis() {
+    return (nanoTime.getAsLong() - originNanos) / 1_000_000;
+  }
+
+  private static long pack(long millis, long tokens) {
+    return (millis << TOKEN_BITS) | tokens;
+  }
+}
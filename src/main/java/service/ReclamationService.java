@@ -0,0 +1,178 @@
+package service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import model.Link;
+import monitoring.ReclaimSweepEvent;
+import storage.LinkArchive;
+import storage.LinkRepository;
+import storage.LinkSnapshot;
+import util.Config;
+
+// Освобождает хранилище от ссылок, которые уже не откроются или давно не нужны: находит их
+// по правилам политики, пакетами переносит в архив и удаляет из хранилища
+public class ReclamationService {
+
+  // Правило политики; первое сработавшее задаёт причину переноса в архив
+  public record Rule(String reason, BiPredicate<Link, Instant> matches) {}
+
+  private final LinkRepository repo;
+  private final LinkArchive archive;
+  private final List<Rule> rules;
+  private final int batchSize;
+  private final Duration interval;
+  private final Clock clock;
+  private ScheduledExecutorService scheduler;
+
+  public ReclamationService(LinkRepository repo, LinkArchive archive, Config config) {
+    this(repo, archive, config, Clock.systemUTC());
+  }
+
+  public ReclamationService(LinkRepository repo, LinkArchive archive, Config config, Clock clock) {
+    this(
+        repo,
+        archive,
+        rulesFrom(config),
+        config.reclaimBatchSize(),
+        config.reclaimInterval(),
+        clock);
+  }
+
+  public ReclamationService(
+      LinkRepository repo,
+      LinkArchive archive,
+      List<Rule> rules,
+      int batchSize,
+      Duration interval,
+      Clock clock) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("reclaimBatchSize должен быть больше нуля");
+    }
+    this.repo = repo;
+    this.archive = archive;
+    this.rules = List.copyOf(rules);
+    this.batchSize = batchSize;
+    this.interval = interval;
+    this.clock = clock;
+  }
+
+  // exhausted — лимит переходов исчерпан; idle — по ссылке ни разу не переходили за
+  // reclaimIdleDays дней с момента создания
+  public static List<Rule> rulesFrom(Config config) {
+    List<Rule> rules = new ArrayList<>();
+    if (config.reclaimExhausted()) {
+      rules.add(new Rule("exhausted", (l, now) -> l.clicksDone() >= l.maxClicks()));
+    }
+    if (config.reclaimIdleDays() > 0) {
+      Duration idle = Duration.ofDays(config.reclaimIdleDays());
+      rules.add(
+          new Rule(
+              "idle", (l, now) -> l.clicksDone() == 0 && !now.isBefore(l.createdAt().plus(idle))));
+    }
+    return rules;
+  }
+
+  public LinkArchive archive() {
+    return archive;
+  }
+
+  public void start() {
+    if (rules.isEmpty()) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    long periodSec = Math.max(1, interval.toSeconds());
+    scheduler.scheduleAtFixedRate(this::sweep, periodSec, periodSec, TimeUnit.SECONDS);
+  }
+
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  // Один проход политики; возвращает число перенесённых в архив ссылок по причинам
+  public Map<String, Integer> reclaimNow() {
+    ReclaimSweepEvent event = new ReclaimSweepEvent();
+    event.begin();
+    Instant now = Instant.now(clock);
+    Map<String, Integer> archived = new LinkedHashMap<>();
+
+    LinkSnapshot all = repo.snapshot();
+    List<Link> batch = new ArrayList<>(batchSize);
+    for (Link l : all) {
+      if (reasonFor(l, now) == null) {
+        continue;
+      }
+      batch.add(l);
+      if (batch.size() == batchSize) {
+        event.archived += flush(batch, now, archived);
+        event.batches++;
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      event.archived += flush(batch, now, archived);
+      event.batches++;
+    }
+
+    event.scanned = all.size();
+    event.commit();
+    return archived;
+  }
+
+  private void sweep() {
+    try {
+      Map<String, Integer> archived = reclaimNow();
+      int total = archived.values().stream().mapToInt(Integer::intValue).sum();
+      if (total > 0) {
+        System.out.println("Уведомление: в архив перенесено ссылок: " + total + " " + archived);
+      }
+    } catch (RuntimeException e) {
+      // Исключение остановило бы расписание: следующий проход повторит попытку
+      System.out.println("ОШИБКА переноса ссылок в архив: " + e.getMessage());
+    }
+  }
+
+  private int flush(List<Link> candidates, Instant now, Map<String, Integer> archived) {
+    // Снимок мог устареть: ссылку удалили или владелец поднял лимит переходов. Правила
+    // проверяются заново под блокировкой хранилища. Сначала пакет надёжно записывается в
+    // архив, и только потом удаляется из хранилища: сбой записи отменяет удаление
+    List<String> codes = new ArrayList<>(candidates.size());
+    for (Link candidate : candidates) {
+      codes.add(candidate.code());
+    }
+    List<LinkArchive.Entry> entries = new ArrayList<>(candidates.size());
+    repo.deleteIf(
+        codes,
+        l -> reasonFor(l, now) != null,
+        removed -> {
+          for (Link l : removed) {
+            entries.add(new LinkArchive.Entry(l, reasonFor(l, now), now));
+          }
+          archive.append(entries);
+        });
+    for (LinkArchive.Entry e : entries) {
+      archived.merge(e.reason(), 1, Integer::sum);
+    }
+    return entries.size();
+  }
+
+  private String reasonFor(Link link, Instant now) {
+    for (Rule rule : rules) {
+      if (rule.matches().test(link, now)) {
+        return rule.reason();
+      }
+    }
+    return null;
+  }
+}
@@ -7,10 +7,20 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Clock;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import model.Link;
+import monitoring.LinkCreateEvent;
+import monitoring.LinkResolveEvent;
 import storage.LinkRepository;
+import util.AliasValidator;
 import util.CodeGenerator;
 import util.Config;
 import util.UrlValidator;
@@ -19,17 +29,43 @@ public class ShortenerService {
   private final LinkRepository repo;
   private final Config config;
   private final Clock clock;
+  private final Predicate<String> localCode;
+  private final RateLimiter createLimiter;
+  private final RateLimiter resolveLimiter;
 
   private String currentUserUuid;
+  private volatile TraceRecorder recorder;
 
   public ShortenerService(LinkRepository repo, Config config) {
     this(repo, config, Clock.systemUTC());
   }
 
   public ShortenerService(LinkRepository repo, Config config, Clock clock) {
+    this(repo, config, clock, code -> true);
+  }
+
+  // localCode отбирает коды, которые хранит этот узел (в кластере остальные принадлежат соседям)
+  public ShortenerService(
+      LinkRepository repo, Config config, Clock clock, Predicate<String> localCode) {
+    this(repo, config, clock, localCode, System::nanoTime);
+  }
+
+  // limiterNanoTime — время ограничителей частоты; при проигрывании трассы оно идёт по записи
+  ShortenerService(
+      LinkRepository repo,
+      Config config,
+      Clock clock,
+      Predicate<String> localCode,
+      LongSupplier limiterNanoTime) {
     this.repo = repo;
     this.config = config;
     this.clock = clock;
+    this.localCode = localCode;
+    this.createLimiter =
+        RateLimiter.fromConfig(config.createRatePerSecond(), config.createBurst(), limiterNanoTime);
+    this.resolveLimiter =
+        RateLimiter.fromConfig(
+            config.resolveRatePerSecond(), config.resolveBurst(), limiterNanoTime);
     this.currentUserUuid = loadUserUuidIfExists();
   }
 
@@ -37,32 +73,268 @@ public class ShortenerService {
     return currentUserUuid;
   }
 
+  public long createRejections() {
+    return createLimiter == null ? 0 : createLimiter.rejectedCount();
+  }
+
+  public long resolveRejections() {
+    return resolveLimiter == null ? 0 : resolveLimiter.rejectedCount();
+  }
+
+  // Включает запись трассы операций (null — выключает); возвращает прежний рекордер,
+  // чтобы вызывающий закрыл его
+  public TraceRecorder setTraceRecorder(TraceRecorder recorder) {
+    TraceRecorder previous = this.recorder;
+    this.recorder = recorder;
+    return previous;
+  }
+
   public Link create(String originalUrl, Integer maxClicks) {
+    return create(originalUrl, maxClicks, null);
+  }
+
+  public Link create(String originalUrl, Integer maxClicks, String alias) {
     UrlValidator.validate(originalUrl);
 
     if (currentUserUuid == null) {
       currentUserUuid = UUID.randomUUID().toString();
       saveUserUuid(currentUserUuid);
     }
+    return createForOwner(currentUserUuid, originalUrl, maxClicks, alias);
+  }
+
+  public Link createForOwner(
+      String ownerUuid, String originalUrl, Integer maxClicks, String alias) {
+    return traced(
+        TraceEvent.Op.CREATE,
+        ownerUuid,
+        originalUrl,
+        alias,
+        maxClicks,
+        () -> doCreateForOwner(ownerUuid, originalUrl, maxClicks, alias),
+        Link::code);
+  }
+
+  private Link doCreateForOwner(
+      String ownerUuid, String originalUrl, Integer maxClicks, String alias) {
+    if (createLimiter != null && ownerUuid != null && !createLimiter.tryAcquire(ownerUuid)) {
+      throw new RateLimitExceededException(
+          "Слишком много ссылок за короткое время, повторите позже");
+    }
+    LinkCreateEvent event = new LinkCreateEvent();
+    event.begin();
+    event.alias = alias != null;
+    try {
+      Link existing = alias == null ? findReusable(ownerUuid, originalUrl) : null;
+      if (existing != null) {
+        event.code = existing.code();
+        event.outcome = "reused";
+        return existing;
+      }
+      Link link = createLink(ownerUuid, originalUrl, maxClicks, alias);
+      event.code = link.code();
+      event.outcome = "created";
+      return link;
+    } catch (RuntimeException e) {
+      event.outcome = e.getMessage();
+      throw e;
+    } finally {
+      event.commit();
+    }
+  }
+
+  // В режиме dedupPerOwner повторный URL того же владельца возвращает его живую ссылку
+  private Link findReusable(String ownerUuid, String originalUrl) {
+    if (!config.dedupPerOwner()) {
+      return null;
+    }
+    Instant now = Instant.now(clock);
+    for (Link l : repo.findByOwnerAndUrl(ownerUuid, originalUrl)) {
+      if (!now.isAfter(l.expiresAt()) && l.clicksDone() < l.maxClicks()) {
+        return l;
+      }
+    }
+    return null;
+  }
+
+  private Link createLink(String ownerUuid, String originalUrl, Integer maxClicks, String alias) {
+    requireUuid(ownerUuid);
+    UrlValidator.validate(originalUrl);
+    if (alias != null) {
+      AliasValidator.validate(alias);
+      if (!localCode.test(alias)) {
+        throw new IllegalArgumentException(
+            "Псевдоним обслуживается другим узлом кластера: " + alias);
+      }
+    }
 
     int limit = (maxClicks == null) ? config.defaultMaxClicks() : maxClicks;
     if (limit <= 0) {
       throw new IllegalArgumentException("Лимит переходов должен быть больше нуля");
     }
 
-    String code = generateUniqueCode();
+    // Проверка занятости и запись — одна операция хранилища, иначе два одновременных
+    // создания с одним кодом прошли бы проверку, и второе перезаписало бы первую ссылку
+    if (alias != null) {
+      Link link = newLink(alias, ownerUuid, originalUrl, limit);
+      if (!repo.saveIfAbsent(link)) {
+        throw new IllegalArgumentException("Псевдоним уже занят: " + alias);
+      }
+      return link;
+    }
+    // В кластере из N узлов локальным оказывается примерно каждый N-й код
+    for (int i = 0; i < 200; i++) {
+      String code = CodeGenerator.randomCode(6);
+      if (localCode.test(code)) {
+        Link link = newLink(code, ownerUuid, originalUrl, limit);
+        if (repo.saveIfAbsent(link)) {
+          return link;
+        }
+      }
+    }
+    throw new IllegalStateException("Не удалось сгенерировать уникальный код");
+  }
+
+  // Пакет ссылок одного владельца: URL проверяются и получают коды по одной, а в хранилище
+  // пакет попадает одной записью. Коды, занятые к моменту записи, генерируются заново
+  public List<Link> createAllForOwner(
+      String ownerUuid, List<String> originalUrls, Integer maxClicks) {
+    TraceRecorder rec = recorder;
+    long at = clock.millis();
+    long start = System.nanoTime();
+    List<Link> links = doCreateAllForOwner(ownerUuid, originalUrls, maxClicks);
+    // Неудачный пакет ничего не сохраняет, поэтому в трассу попадают только созданные ссылки,
+    // каждая как отдельное создание
+    if (rec != null && !links.isEmpty()) {
+      long latency = (System.nanoTime() - start) / links.size();
+      for (int i = 0; i < links.size(); i++) {
+        rec.record(
+            new TraceEvent(
+                TraceEvent.Op.CREATE,
+                at,
+                ownerUuid,
+                originalUrls.get(i),
+                null,
+                maxClicks,
+                latency,
+                true,
+                links.get(i).code()));
+      }
+    }
+    return links;
+  }
+
+  private List<Link> doCreateAllForOwner(
+      String ownerUuid, List<String> originalUrls, Integer maxClicks) {
+    requireUuid(ownerUuid);
+    int limit = (maxClicks == null) ? config.defaultMaxClicks() : maxClicks;
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Лимит переходов должен быть больше нуля");
+    }
+    for (String url : originalUrls) {
+      UrlValidator.validate(url);
+    }
+    if (createLimiter != null) {
+      for (int i = 0; i < originalUrls.size(); i++) {
+        if (!createLimiter.tryAcquire(ownerUuid)) {
+          throw new RateLimitExceededException(
+              "Слишком много ссылок за короткое время, повторите позже");
+        }
+      }
+    }
+
+    Link[] result = new Link[originalUrls.size()];
+    Map<String, Integer> pending = new HashMap<>();
+    Map<String, Link> byUrl = new HashMap<>();
+    for (int i = 0; i < result.length; i++) {
+      String url = originalUrls.get(i);
+      Link existing = byUrl.containsKey(url) ? byUrl.get(url) : findReusable(ownerUuid, url);
+      if (existing == null) {
+        String code;
+        do {
+          code = randomLocalCode();
+        } while (pending.containsKey(code));
+        existing = newLink(code, ownerUuid, url, limit);
+        pending.put(code, i);
+      }
+      result[i] = existing;
+      if (config.dedupPerOwner()) {
+        byUrl.put(url, existing);
+      }
+    }
+
+    for (int attempt = 0; !pending.isEmpty(); attempt++) {
+      if (attempt == 200) {
+        throw new IllegalStateException("Не удалось сгенерировать уникальный код");
+      }
+      List<Link> batch = new ArrayList<>(pending.size());
+      for (int i : pending.values()) {
+        batch.add(result[i]);
+      }
+      Map<String, Integer> retry = new HashMap<>();
+      for (Link taken : repo.saveAllIfAbsent(batch)) {
+        int i = pending.get(taken.code());
+        String code;
+        do {
+          code = randomLocalCode();
+        } while (pending.containsKey(code) || retry.containsKey(code));
+        result[i] = newLink(code, ownerUuid, taken.originalUrl(), limit);
+        retry.put(code, i);
+      }
+      pending = retry;
+    }
+    return List.of(result);
+  }
+
+  // В кластере из N узлов локальным оказывается примерно каждый N-й код
+  private String randomLocalCode() {
+    for (int i = 0; i < 200; i++) {
+      String code = CodeGenerator.randomCode(6);
+      if (localCode.test(code)) {
+        return code;
+      }
+    }
+    throw new IllegalStateException("Не удалось сгенерировать уникальный код");
+  }
+
+  private Link newLink(String code, String ownerUuid, String originalUrl, int limit) {
     Instant now = Instant.now(clock);
     Instant expiresAt = now.plus(config.ttl());
-
     String shortUrl =
         config.baseUrl().endsWith("/") ? config.baseUrl() + code : config.baseUrl() + "/" + code;
-
-    Link link = new Link(code, currentUserUuid, originalUrl, shortUrl, limit, 0, now, expiresAt);
-    repo.save(link);
-    return link;
+    return new Link(code, ownerUuid, originalUrl, shortUrl, limit, 0, now, expiresAt);
   }
 
   public void open(String code) {
+    Link link = resolve(code);
+    openInBrowserOrPrint(link.originalUrl());
+  }
+
+  public Link resolve(String code) {
+    return traced(
+        TraceEvent.Op.RESOLVE, null, code, null, null, () -> doResolve(code), Link::originalUrl);
+  }
+
+  private Link doResolve(String code) {
+    if (resolveLimiter != null && code != null && !resolveLimiter.tryAcquire(code)) {
+      throw new RateLimitExceededException("Слишком много переходов по ссылке, повторите позже");
+    }
+    LinkResolveEvent event = new LinkResolveEvent();
+    event.begin();
+    event.code = code;
+    try {
+      Link link = resolveLink(code);
+      event.outcome = "resolved";
+      return link;
+    } catch (RuntimeException e) {
+      event.outcome = e.getMessage();
+      throw e;
+    } finally {
+      event.commit();
+    }
+  }
+
+  private Link resolveLink(String code) {
     Link link =
         repo.findByCode(code).orElseThrow(() -> new IllegalArgumentException("Ссылка не найдена"));
 
@@ -70,71 +342,221 @@ public class ShortenerService {
       System.out.println(
           "Уведомление: срок действия ссылки истёк, ссылка будет удалена. Код: " + code);
       repo.deleteByCode(code);
-      throw new IllegalStateException("Срок действия ссылки истёк");
+      throw new OperationRejectedException("Срок действия ссылки истёк");
     }
 
-    if (link.clicksDone() >= link.maxClicks()) {
+    if (!repo.incrementClicks(code)) {
       System.out.println("Уведомление: лимит переходов по ссылке исчерпан. Код: " + code);
-      throw new IllegalStateException("Лимит переходов по ссылке исчерпан");
+      throw new OperationRejectedException("Лимит переходов по ссылке исчерпан");
     }
+    return link;
+  }
 
-    Link updated =
-        new Link(
-            link.code(),
-            link.ownerUuid(),
-            link.originalUrl(),
-            link.shortUrl(),
-            link.maxClicks(),
-            link.clicksDone() + 1,
-            link.createdAt(),
-            link.expiresAt());
-    repo.save(updated);
-
-    openInBrowserOrPrint(link.originalUrl());
+  public List<Link> findByPrefix(String prefix, int limit) {
+    return traced(
+        TraceEvent.Op.FIND,
+        null,
+        prefix,
+        null,
+        limit,
+        () -> {
+          if (prefix == null || prefix.isEmpty()) {
+            throw new IllegalArgumentException("Префикс не указан");
+          }
+          if (limit <= 0) {
+            throw new IllegalArgumentException("Лимит результатов должен быть больше нуля");
+          }
+          return repo.findByCodePrefix(prefix, limit);
+        },
+        found -> String.valueOf(found.size()));
   }
 
   public List<Link> listMine() {
     ensureUserExists();
-    return repo.findByOwner(currentUserUuid);
+    return listForOwner(currentUserUuid);
+  }
+
+  public List<Link> listForOwner(String ownerUuid) {
+    return traced(
+        TraceEvent.Op.LIST,
+        ownerUuid,
+        null,
+        null,
+        null,
+        () -> {
+          requireUuid(ownerUuid);
+          return repo.findByOwner(ownerUuid);
+        },
+        found -> String.valueOf(found.size()));
   }
 
   public void deleteMine(String code) {
     ensureUserExists();
+    deleteForOwner(currentUserUuid, code);
+  }
 
-    Link link =
-        repo.findByCode(code).orElseThrow(() -> new IllegalArgumentException("Ссылка не найдена"));
+  public void deleteForOwner(String ownerUuid, String code) {
+    traced(
+        TraceEvent.Op.DELETE,
+        ownerUuid,
+        code,
+        null,
+        null,
+        () -> {
+          requireUuid(ownerUuid);
+
+          Link link =
+              repo.findByCode(code)
+                  .orElseThrow(() -> new IllegalArgumentException("Ссылка не найдена"));
+
+          if (!link.ownerUuid().equals(ownerUuid)) {
+            throw new SecurityException("Доступ запрещён: вы не являетесь владельцем ссылки");
+          }
+          repo.deleteByCode(code);
+          return null;
+        },
+        none -> "");
+  }
 
-    if (!link.ownerUuid().equals(currentUserUuid)) {
-      throw new SecurityException("Доступ запрещён: вы не являетесь владельцем ссылки");
+  public int deleteAllMine() {
+    ensureUserExists();
+    return deleteAllForOwner(currentUserUuid);
+  }
+
+  public int deleteAllForOwner(String ownerUuid) {
+    return traced(
+        TraceEvent.Op.DELETE_ALL,
+        ownerUuid,
+        null,
+        null,
+        null,
+        () -> {
+          requireUuid(ownerUuid);
+          List<String> codes = repo.findByOwner(ownerUuid).stream().map(Link::code).toList();
+          repo.deleteAll(codes);
+          return codes.size();
+        },
+        String::valueOf);
+  }
+
+  public void importLink(Link link) {
+    requireUuid(link.ownerUuid());
+    if (!localCode.test(link.code())) {
+      throw new IllegalArgumentException("Код обслуживается другим узлом кластера: " + link.code());
+    }
+    if (repo.saveIfAbsent(link)) {
+      return;
     }
-    repo.deleteByCode(code);
+    // Повторная передача не откатывает уже учтённые переходы: копия с меньшим счётчиком
+    // устарела. При равном счётчике принимается копия прежнего владельца (мог смениться лимит)
+    repo.update(
+        link.code(),
+        existing ->
+            link.clicksDone() > existing.clicksDone()
+                    || link.clicksDone() == existing.clicksDone()
+                        && link.maxClicks() != existing.maxClicks()
+                ? link
+                : existing);
   }
 
   public void updateLimitMine(String code, int newLimit) {
     ensureUserExists();
+    updateLimitForOwner(currentUserUuid, code, newLimit);
+  }
 
+  public void updateLimitForOwner(String ownerUuid, String code, int newLimit) {
+    traced(
+        TraceEvent.Op.LIMIT,
+        ownerUuid,
+        code,
+        null,
+        newLimit,
+        () -> {
+          doUpdateLimit(ownerUuid, code, newLimit);
+          return null;
+        },
+        none -> "");
+  }
+
+  private void doUpdateLimit(String owner, String code, int newLimit) {
+    requireUuid(owner);
     if (newLimit <= 0) {
       throw new IllegalArgumentException("Лимит переходов должен быть больше нуля");
     }
 
-    Link link =
-        repo.findByCode(code).orElseThrow(() -> new IllegalArgumentException("Ссылка не найдена"));
+    repo.update(
+            code,
+            link -> {
+              if (!link.ownerUuid().equals(owner)) {
+                throw new SecurityException("Доступ запрещён: вы не являетесь владельцем ссылки");
+              }
+              return new Link(
+                  link.code(),
+                  link.ownerUuid(),
+                  link.originalUrl(),
+                  link.shortUrl(),
+                  newLimit,
+                  link.clicksDone(),
+                  link.createdAt(),
+                  link.expiresAt());
+            })
+        .orElseThrow(() -> new IllegalArgumentException("Ссылка не найдена"));
+  }
 
-    if (!link.ownerUuid().equals(currentUserUuid)) {
-      throw new SecurityException("Доступ запрещён: вы не являетесь владельцем ссылки");
+  private <T> T traced(
+      TraceEvent.Op op,
+      String owner,
+      String target,
+      String alias,
+      Integer number,
+      Supplier<T> body,
+      Function<T, String> outcome) {
+    TraceRecorder rec = recorder;
+    if (rec == null) {
+      return body.get();
     }
+    long at = clock.millis();
+    long start = System.nanoTime();
+    try {
+      T result = body.get();
+      rec.record(
+          new TraceEvent(
+              op,
+              at,
+              owner,
+              target,
+              alias,
+              number,
+              System.nanoTime() - start,
+              true,
+              outcome.apply(result)));
+      return result;
+    } catch (RuntimeException e) {
+      rec.record(
+          new TraceEvent(
+              op,
+              at,
+              owner,
+              target,
+              alias,
+              number,
+              System.nanoTime() - start,
+              false,
+              TraceEvent.describe(e)));
+      throw e;
+    }
+  }
 
-    Link updated =
-        new Link(
-            link.code(),
-            link.ownerUuid(),
-            link.originalUrl(),
-            link.shortUrl(),
-            newLimit,
-            link.clicksDone(),
-            link.createdAt(),
-            link.expiresAt());
-    repo.save(updated);
+  private static void requireUuid(String uuid) {
+    if (uuid == null || uuid.isBlank()) {
+      throw new IllegalArgumentException("UUID не указан");
+    }
+
+    try {
+      UUID.fromString(uuid);
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Некорректный формат UUID");
+    }
   }
 
   private void ensureUserExists() {
@@ -143,16 +565,6 @@ public class ShortenerService {
     }
   }
 
-  private String generateUniqueCode() {
-    for (int i = 0; i < 20; i++) {
-      String code = CodeGenerator.randomCode(6);
-      if (repo.findByCode(code).isEmpty()) {
-        return code;
-      }
-    }
-    throw new IllegalStateException("Не удалось сгенерировать уникальный код");
-  }
-
   private String loadUserUuidIfExists() {
     Path path = Path.of(config.userUuidFile());
 
@@ -199,15 +611,7 @@ public class ShortenerService {
   }
 
   public void switchUser(String uuid) {
-    if (uuid == null || uuid.isBlank()) {
-      throw new IllegalArgumentException("UUID не указан");
-    }
-
-    try {
-      UUID.fromString(uuid);
-    } catch (Exception e) {
-      throw new IllegalArgumentException("Некорректный формат UUID");
-    }
+    requireUuid(uuid);
 
     this.currentUserUuid = uuid;
     saveUserUuid(uuid);
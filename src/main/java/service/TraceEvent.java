@@ -0,0 +1,30 @@
+package service;
+
+// Одна операция ShortenerService в трассе. target — URL для CREATE, код для RESOLVE,
+// DELETE и LIMIT, префикс для FIND; number — лимит переходов (null — по умолчанию).
+// outcome — код, URL или число результатов при успехе и "Класс: сообщение" при ошибке.
+public record TraceEvent(
+    TraceEvent.Op op,
+    long atMillis,
+    String owner,
+    String target,
+    String alias,
+    Integer number,
+    long latencyNanos,
+    boolean ok,
+    String outcome) {
+
+  public enum Op {
+    CREATE,
+    RESOLVE,
+    LIST,
+    DELETE,
+    DELETE_ALL,
+    LIMIT,
+    FIND
+  }
+
+  static String describe(RuntimeException e) {
+    return e.getClass().getSimpleName() + ": " + e.getMessage();
+  }
+}
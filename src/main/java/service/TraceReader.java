@@ -0,0 +1,117 @@
+package service;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Читает трассу, записанную TraceRecorder. Оборванная при аварийной остановке последняя
+// запись считается концом трассы.
+public final class TraceReader implements AutoCloseable {
+  private static final TraceEvent.Op[] OPS = TraceEvent.Op.values();
+
+  private final Path file;
+  private final InputStream in;
+  private final List<String> strings = new ArrayList<>();
+  private long prevAtMillis;
+
+  public TraceReader(Path file) {
+    this.file = file;
+    try {
+      this.in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+      byte[] magic = in.readNBytes(TraceRecorder.MAGIC.length);
+      if (!Arrays.equals(magic, TraceRecorder.MAGIC)) {
+        throw new IllegalArgumentException("Файл не является трассой: " + file);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось открыть трассу: " + file.toAbsolutePath(), e);
+    }
+  }
+
+  // null — трасса закончилась
+  public TraceEvent next() {
+    try {
+      int head = in.read();
+      if (head < 0) {
+        return null;
+      }
+      int op = head & 0x7F;
+      if (op >= OPS.length) {
+        throw new IllegalStateException("Неизвестная операция в трассе: " + op);
+      }
+      long at = prevAtMillis + TraceRecorder.unZigZag(readVarLong());
+      long latency = readVarLong();
+      String owner = readString();
+      String target = readString();
+      String alias = readString();
+      long number = readVarLong();
+      String outcome = readString();
+      prevAtMillis = at;
+      return new TraceEvent(
+          OPS[op],
+          at,
+          owner,
+          target,
+          alias,
+          number == 0 ? null : (int) TraceRecorder.unZigZag(number - 1),
+          latency,
+          (head & 0x80) != 0,
+          outcome);
+    } catch (EOFException e) {
+      System.out.println("Уведомление: трасса " + file + " оборвана, хвост пропущен");
+      return null;
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось прочитать трассу: " + file.toAbsolutePath(), e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      in.close();
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось закрыть трассу: " + file.toAbsolutePath(), e);
+    }
+  }
+
+  private String readString() throws IOException {
+    long ref = readVarLong();
+    if (ref == 0) {
+      return null;
+    }
+    if (ref >= 2) {
+      return strings.get((int) (ref - 2));
+    }
+    int len = (int) readVarLong();
+    byte[] bytes = in.readNBytes(len);
+    if (bytes.length < len) {
+      throw new EOFException();
+    }
+    String s = new String(bytes, StandardCharsets.UTF_8);
+    if (strings.size() < TraceRecorder.MAX_STRINGS) {
+      strings.add(s);
+    }
+    return s;
+  }
+
+  private long readVarLong() throws IOException {
+    long v = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      v |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return v;
+      }
+    }
+    throw new IOException("Слишком длинное число в трассе");
+  }
+}
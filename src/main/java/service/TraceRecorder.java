@@ -0,0 +1,232 @@
+package service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Пишет трассу операций в компактный двоичный файл: числа — varint, время — разница с
+// предыдущей записью, а повторяющиеся строки (UUID владельцев, коды, URL) — номером в
+// таблице уже записанных строк. Потокобезопасен: операции приходят из CLI и потоков сервера
+// и только ставятся в очередь, а кодирует и пишет их в файл один поток-писатель.
+public final class TraceRecorder implements AutoCloseable {
+  static final byte[] MAGIC = "SLTRACE1".getBytes(StandardCharsets.US_ASCII);
+  // Таблица ограничена, чтобы уникальные URL не съели память; читатель ведёт такую же
+  static final int MAX_STRINGS = 1 << 16;
+  private static final int FLUSH_EVERY = 256;
+  // Переполненная очередь притормаживает операции, а не теряет их: трасса должна быть полной
+  private static final int QUEUE_CAPACITY = 1 << 16;
+  private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+  // Метка конца очереди: писатель дописывает всё, что было до неё, и закрывает файл
+  private static final TraceEvent STOP =
+      new TraceEvent(TraceEvent.Op.LIST, 0, null, null, null, null, 0, true, null);
+
+  private final Path file;
+  private final OutputStream out;
+  private final BlockingQueue<TraceEvent> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final Thread writer;
+  private final AtomicLong recorded = new AtomicLong();
+  // Состояние кодировщика; меняется только в потоке-писателе
+  private final Map<String, Integer> strings = new HashMap<>();
+  private long prevAtMillis;
+  private int pending;
+  private volatile boolean closed;
+  // record() ставит операцию в очередь под общей блокировкой, close() выставляет closed под
+  // исключительной: ни одна принятая операция не окажется в очереди после STOP
+  private final ReadWriteLock closing = new ReentrantReadWriteLock();
+  private IOException closeFailure;
+
+  // Существующую трассу не перезаписываем: новая получает суффикс со временем создания
+  public TraceRecorder(Path file) {
+    try {
+      if (file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+      this.file = createNew(file);
+      this.out = new BufferedOutputStream(Files.newOutputStream(this.file), 64 * 1024);
+      out.write(MAGIC);
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось создать трассу: " + file.toAbsolutePath(), e);
+    }
+    writer = new Thread(this::writeLoop, "trace-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private static Path createNew(Path file) throws IOException {
+    String name = file.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    String base = dot > 0 ? name.substring(0, dot) : name;
+    String ext = dot > 0 ? name.substring(dot) : "";
+    String stamp = LocalDateTime.now().format(SUFFIX);
+    for (int i = 0; ; i++) {
+      Path candidate =
+          i == 0 ? file : file.resolveSibling(base + "-" + stamp + (i == 1 ? "" : "-" + i) + ext);
+      try {
+        return Files.createFile(candidate);
+      } catch (FileAlreadyExistsException e) {
+        // пробуем следующее имя
+      }
+    }
+  }
+
+  public Path file() {
+    return file;
+  }
+
+  // Число операций, принятых в трассу
+  public long recorded() {
+    return recorded.get();
+  }
+
+  public void record(TraceEvent e) {
+    closing.readLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      queue.put(e);
+      recorded.incrementAndGet();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      closing.readLock().unlock();
+    }
+  }
+
+  // Дожидается, пока писатель сохранит все принятые операции
+  @Override
+  public synchronized void close() {
+    if (!writer.isAlive()) {
+      return;
+    }
+    closing.writeLock().lock();
+    try {
+      closed = true;
+    } finally {
+      closing.writeLock().unlock();
+    }
+    boolean interrupted = false;
+    while (true) {
+      try {
+        queue.put(STOP);
+        writer.join();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (closeFailure != null) {
+      throw new IllegalStateException(
+          "Не удалось сохранить трассу: " + file.toAbsolutePath(), closeFailure);
+    }
+  }
+
+  private void writeLoop() {
+    boolean broken = false;
+    try {
+      TraceEvent e;
+      while ((e = queue.take()) != STOP) {
+        if (broken) {
+          continue;
+        }
+        try {
+          write(e);
+          // Сбрасываем пачками или когда очередь опустела: при аварийной остановке теряется
+          // только хвост трассы
+          if (++pending == FLUSH_EVERY || queue.isEmpty()) {
+            out.flush();
+            pending = 0;
+          }
+        } catch (IOException ex) {
+          // Сбой записи трассы не должен ломать обслуживание: запись просто прекращается,
+          // а очередь разбирается до конца, чтобы не держать ждущие операции
+          System.out.println("ОШИБКА записи трассы " + file + ": " + ex.getMessage());
+          closed = true;
+          broken = true;
+          closeQuietly();
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    if (!broken) {
+      try {
+        out.close();
+      } catch (IOException ex) {
+        closeFailure = ex;
+      }
+    }
+  }
+
+  private void write(TraceEvent e) throws IOException {
+    out.write(e.op().ordinal() | (e.ok() ? 0x80 : 0));
+    writeVarLong(zigZag(e.atMillis() - prevAtMillis));
+    prevAtMillis = e.atMillis();
+    writeVarLong(e.latencyNanos());
+    writeString(e.owner());
+    writeString(e.target());
+    writeString(e.alias());
+    writeVarLong(e.number() == null ? 0 : zigZag(e.number()) + 1);
+    writeString(e.outcome());
+  }
+
+  private void closeQuietly() {
+    try {
+      out.close();
+    } catch (IOException ignored) {
+      // уже сообщили о первой ошибке
+    }
+  }
+
+  // 0 — null, 1 — новая строка (длина и UTF-8), n >= 2 — строка номер n - 2 из таблицы
+  private void writeString(String s) throws IOException {
+    if (s == null) {
+      out.write(0);
+      return;
+    }
+    Integer id = strings.get(s);
+    if (id != null) {
+      writeVarLong(id + 2L);
+      return;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.write(1);
+    writeVarLong(bytes.length);
+    out.write(bytes);
+    if (strings.size() < MAX_STRINGS) {
+      strings.put(s, strings.size());
+    }
+  }
+
+  private void writeVarLong(long v) throws IOException {
+    while ((v & ~0x7FL) != 0) {
+      out.write((int) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    out.write((int) v);
+  }
+
+  static long zigZag(long v) {
+    return (v << 1) ^ (v >> 63);
+  }
+
+  static long unZigZag(long v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+}
@@ -0,0 +1,282 @@
+package service;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import storage.LinkRepository;
+import util.Config;
+
+// Проигрывает трассу TraceRecorder на новом ShortenerService поверх заданного хранилища.
+// Часы сервиса переводятся на время каждой записанной операции, поэтому сроки действия
+// ссылок истекают так же, как при записи. Отчёт — перцентили задержек по операциям и
+// операции, чей результат отличается от записанного.
+public final class TraceReplayer {
+  private static final int MAX_DIFFS = 50;
+
+  private final LinkRepository repo;
+  private final Config config;
+
+  public record Latency(
+      TraceEvent.Op op,
+      int count,
+      long p50Nanos,
+      long p90Nanos,
+      long p99Nanos,
+      long maxNanos,
+      long recordedP50Nanos,
+      long recordedP99Nanos) {}
+
+  public record Report(
+      int operations,
+      int mismatches,
+      Duration elapsed,
+      List<Latency> latencies,
+      List<String> diffs) {
+
+    public void print(PrintStream out) {
+      out.println(
+          "Проиграно операций: "
+              + operations
+              + " за "
+              + elapsed.toMillis()
+              + " мс, расхождений с записью: "
+              + mismatches);
+      out.printf(
+          "%-10s %8s %10s %10s %10s %10s   %s%n",
+          "операция", "кол-во", "p50 мкс", "p90 мкс", "p99 мкс", "max мкс", "при записи p50/p99");
+      for (Latency l : latencies) {
+        out.printf(
+            "%-10s %8d %10d %10d %10d %10d   %d/%d%n",
+            l.op(),
+            l.count(),
+            micros(l.p50Nanos()),
+            micros(l.p90Nanos()),
+            micros(l.p99Nanos()),
+            micros(l.maxNanos()),
+            micros(l.recordedP50Nanos()),
+            micros(l.recordedP99Nanos()));
+      }
+      for (String d : diffs) {
+        out.println("  " + d);
+      }
+      if (mismatches > diffs.size()) {
+        out.println("  ... и ещё " + (mismatches - diffs.size()));
+      }
+    }
+
+    private static long micros(long nanos) {
+      return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+  }
+
+  public TraceReplayer(LinkRepository repo, Config config) {
+    this.repo = repo;
+    this.config = config;
+  }
+
+  // realTime — выдерживать паузы между операциями как при записи, иначе как можно быстрее
+  public Report replay(Path trace, boolean realTime) {
+    ReplayClock clock = new ReplayClock();
+    // Ограничители частоты тоже идут по записанному времени: иначе при проигрывании быстрее
+    // записи они отказывают там, где исходный сеанс проходил
+    ShortenerService service =
+        new ShortenerService(repo, config, clock, code -> true, clock::elapsedNanos);
+    // Сгенерированные коды при проигрывании другие: запоминаем соответствие записанным
+    Map<String, String> codes = new HashMap<>();
+    Map<TraceEvent.Op, Samples> replayed = new EnumMap<>(TraceEvent.Op.class);
+    Map<TraceEvent.Op, Samples> recorded = new EnumMap<>(TraceEvent.Op.class);
+    List<String> diffs = new ArrayList<>();
+    int operations = 0;
+    int mismatches = 0;
+
+    long startNanos = System.nanoTime();
+    try (TraceReader reader = new TraceReader(trace)) {
+      long firstAt = 0;
+      TraceEvent e;
+      while ((e = reader.next()) != null) {
+        if (operations == 0) {
+          firstAt = e.atMillis();
+        }
+        if (realTime) {
+          pace(startNanos, e.atMillis() - firstAt);
+        }
+        clock.set(Instant.ofEpochMilli(e.atMillis()));
+        String target = takesCode(e.op()) ? codes.getOrDefault(e.target(), e.target()) : e.target();
+
+        boolean ok;
+        String outcome;
+        long t0 = System.nanoTime();
+        try {
+          outcome = execute(service, e, target);
+          ok = true;
+        } catch (RuntimeException ex) {
+          outcome = TraceEvent.describe(ex);
+          ok = false;
+        }
+        long latency = System.nanoTime() - t0;
+        operations++;
+        replayed.computeIfAbsent(e.op(), op -> new Samples()).add(latency);
+        recorded.computeIfAbsent(e.op(), op -> new Samples()).add(e.latencyNanos());
+
+        if (!matches(e, ok, outcome, codes)) {
+          mismatches++;
+          if (diffs.size() < MAX_DIFFS) {
+            diffs.add(
+                "#"
+                    + operations
+                    + " "
+                    + e.op()
+                    + " "
+                    + (e.target() == null ? e.owner() : e.target())
+                    + ": записано «"
+                    + e.outcome()
+                    + "», получено «"
+                    + outcome
+                    + "»");
+          }
+        }
+      }
+    }
+    Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+
+    List<Latency> latencies = new ArrayList<>();
+    for (Map.Entry<TraceEvent.Op, Samples> en : replayed.entrySet()) {
+      Samples r = en.getValue();
+      Samples rec = recorded.get(en.getKey());
+      latencies.add(
+          new Latency(
+              en.getKey(),
+              r.size,
+              r.percentile(50),
+              r.percentile(90),
+              r.percentile(99),
+              r.percentile(100),
+              rec.percentile(50),
+              rec.percentile(99)));
+    }
+    return new Report(operations, mismatches, elapsed, latencies, diffs);
+  }
+
+  private static String execute(ShortenerService service, TraceEvent e, String target) {
+    return switch (e.op()) {
+      case CREATE -> service.createForOwner(e.owner(), target, e.number(), e.alias()).code();
+      case RESOLVE -> service.resolve(target).originalUrl();
+      case LIST -> String.valueOf(service.listForOwner(e.owner()).size());
+      case DELETE -> {
+        service.deleteForOwner(e.owner(), target);
+        yield "";
+      }
+      case DELETE_ALL -> String.valueOf(service.deleteAllForOwner(e.owner()));
+      case LIMIT -> {
+        service.updateLimitForOwner(e.owner(), target, e.number());
+        yield "";
+      }
+      case FIND -> String.valueOf(service.findByPrefix(target, e.number()).size());
+    };
+  }
+
+  private static boolean matches(
+      TraceEvent e, boolean ok, String outcome, Map<String, String> codes) {
+    if (ok != e.ok()) {
+      return false;
+    }
+    if (e.op() == TraceEvent.Op.CREATE && ok) {
+      String known = codes.putIfAbsent(e.outcome(), outcome);
+      return known == null || known.equals(outcome);
+    }
+    if (e.op() == TraceEvent.Op.FIND) {
+      // Поиск идёт по префиксу сгенерированных кодов, а они при проигрывании другие
+      return true;
+    }
+    return outcome.equals(e.outcome());
+  }
+
+  private static boolean takesCode(TraceEvent.Op op) {
+    return op == TraceEvent.Op.RESOLVE || op == TraceEvent.Op.DELETE || op == TraceEvent.Op.LIMIT;
+  }
+
+  private static void pace(long startNanos, long offsetMillis) {
+    long wait = TimeUnit.MILLISECONDS.toNanos(offsetMillis) - (System.nanoTime() - startNanos);
+    if (wait <= 0) {
+      return;
+    }
+    try {
+      TimeUnit.NANOSECONDS.sleep(wait);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Проигрывание трассы прервано", ex);
+    }
+  }
+
+  // Часы сервиса, которые показывают время текущей проигрываемой операции
+  static final class ReplayClock extends Clock {
+    private volatile Instant now = Instant.EPOCH;
+    private volatile Instant start;
+
+    void set(Instant now) {
+      if (start == null) {
+        start = now;
+      }
+      this.now = now;
+    }
+
+    // Время от первой операции для ограничителей частоты; назад не уходит дальше нуля
+    long elapsedNanos() {
+      Instant from = start;
+      return from == null ? 0 : Math.max(0, Duration.between(from, now).toNanos());
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return Clock.fixed(now, zone);
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+
+  private static final class Samples {
+    private long[] values = new long[64];
+    private int size;
+    private boolean sorted;
+
+    void add(long v) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = v;
+      sorted = false;
+    }
+
+    // Перцентиль методом ближайшего ранга
+    long percentile(int p) {
+      if (size == 0) {
+        return 0;
+      }
+      if (!sorted) {
+        Arrays.sort(values, 0, size);
+        sorted = true;
+      }
+      int rank = (int) Math.ceil(p / 100.0 * size);
+      return values[Math.max(0, rank - 1)];
+    }
+  }
+}
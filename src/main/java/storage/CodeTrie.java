@@ -0,0 +1,143 @@
+package storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+final class CodeTrie {
+
+  private static final char[] NO_KEYS = new char[0];
+  private static final Node[] NO_CHILDREN = new Node[0];
+
+  private static final class Node {
+    // Дети хранятся в отсортированных массивах: коды короткие, а узлы в основном
+    // имеют по одному-два потомка, поэтому это компактнее карты на каждый узел.
+    char[] keys = NO_KEYS;
+    Node[] children = NO_CHILDREN;
+    boolean terminal;
+
+    Node child(char c) {
+      int i = Arrays.binarySearch(keys, c);
+      return i >= 0 ? children[i] : null;
+    }
+
+    Node childOrCreate(char c) {
+      int i = Arrays.binarySearch(keys, c);
+      if (i >= 0) {
+        return children[i];
+      }
+      int at = -i - 1;
+      char[] newKeys = new char[keys.length + 1];
+      Node[] newChildren = new Node[children.length + 1];
+      System.arraycopy(keys, 0, newKeys, 0, at);
+      System.arraycopy(children, 0, newChildren, 0, at);
+      newKeys[at] = c;
+      newChildren[at] = new Node();
+      System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+      System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+      keys = newKeys;
+      children = newChildren;
+      return newChildren[at];
+    }
+
+    void removeChild(char c) {
+      int i = Arrays.binarySearch(keys, c);
+      if (i < 0) {
+        return;
+      }
+      if (keys.length == 1) {
+        keys = NO_KEYS;
+        children = NO_CHILDREN;
+        return;
+      }
+      char[] newKeys = new char[keys.length - 1];
+      Node[] newChildren = new Node[children.length - 1];
+      System.arraycopy(keys, 0, newKeys, 0, i);
+      System.arraycopy(children, 0, newChildren, 0, i);
+      System.arraycopy(keys, i + 1, newKeys, i, keys.length - i - 1);
+      System.arraycopy(children, i + 1, newChildren, i, children.length - i - 1);
+      keys = newKeys;
+      children = newChildren;
+    }
+
+    boolean isEmpty() {
+      return !terminal && keys.length == 0;
+    }
+  }
+
+  private final Node root = new Node();
+  private int size;
+
+  synchronized boolean add(String code) {
+    Node node = root;
+    for (int i = 0; i < code.length(); i++) {
+      node = node.childOrCreate(code.charAt(i));
+    }
+    if (node.terminal) {
+      return false;
+    }
+    node.terminal = true;
+    size++;
+    return true;
+  }
+
+  synchronized boolean remove(String code) {
+    Node[] path = new Node[code.length() + 1];
+    Node node = root;
+    path[0] = node;
+    for (int i = 0; i < code.length(); i++) {
+      node = node.child(code.charAt(i));
+      if (node == null) {
+        return false;
+      }
+      path[i + 1] = node;
+    }
+    if (!node.terminal) {
+      return false;
+    }
+    node.terminal = false;
+    size--;
+
+    for (int i = code.length(); i > 0 && path[i].isEmpty(); i--) {
+      path[i - 1].removeChild(code.charAt(i - 1));
+    }
+    return true;
+  }
+
+  synchronized boolean contains(String code) {
+    Node node = find(code);
+    return node != null && node.terminal;
+  }
+
+  synchronized List<String> withPrefix(String prefix, int limit) {
+    List<String> res = new ArrayList<>();
+    Node node = find(prefix);
+    if (node != null && limit > 0) {
+      collect(node, new StringBuilder(prefix), res, limit);
+    }
+    return res;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  private Node find(String prefix) {
+    Node node = root;
+    for (int i = 0; i < prefix.length() && node != null; i++) {
+      node = node.child(prefix.charAt(i));
+    }
+    return node;
+  }
+
+  private static void collect(Node node, StringBuilder sb, List<String> out, int limit) {
+    if (node.terminal) {
+      out.add(sb.toString());
+    }
+    for (int i = 0; i < node.keys.length && out.size() < limit; i++) {
+      sb.append(node.keys[i]);
+      collect(node.children[i], sb, out, limit);
+      sb.setLength(sb.length() - 1);
+    }
+  }
+}
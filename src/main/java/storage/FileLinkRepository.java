@@ -1,117 +1,872 @@
 package storage;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.zip.Deflater;
 import model.Link;
+import monitoring.StorageLoadEvent;
+import monitoring.StoragePersistEvent;
+import util.UrlValidator;
 
-public class FileLinkRepository implements LinkRepository {
+public class FileLinkRepository implements LinkRepository, AutoCloseable {
+
+  private static final int LOAD_BATCH_SIZE = 512;
+  // Когда журнал общего хранилища перерастает этот размер, он сворачивается в основной файл
+  private static final long JOURNAL_COMPACT_BYTES = 1 << 20;
 
   private final Path file;
-  private final Map<String, Link> byCode = new ConcurrentHashMap<>();
+  private final StorageCompression compression;
+  private final int compressionLevel;
+  // links — последний опубликованный снимок, его читают без блокировки; editor накапливает
+  // изменения под lock, и каждый изменяющий блок публикует их перед выходом (publish)
+  private volatile LinkSnapshot links = LinkSnapshot.EMPTY;
+  private final LinkSnapshot.Editor editor = LinkSnapshot.EMPTY.edit();
+  private final CodeTrie codes = new CodeTrie();
+  private final UrlDictionary urls = new UrlDictionary();
+  // Коды ссылок по хосту URL для запросов query; null — индекс выключен
+  private Map<String, Set<String>> codesByHost;
 
-  private final ObjectMapper mapper;
+  private final LinkJsonFormat format = new LinkJsonFormat();
 
   private final Object lock = new Object();
+  private final Set<String> changedCodes = new LinkedHashSet<>();
+
+  // Журнал общего хранилища; null, если файл принадлежит одному процессу
+  private final SharedJournal journal;
+
+  // Состояние фоновой загрузки (warm start)
+  private volatile boolean loading;
+  private volatile RuntimeException loadFailure;
+  private final Set<String> touchedWhileLoading = new HashSet<>();
+  private boolean dirtyWhileLoading;
+  // Изменения, сделанные до конца загрузки, дописываются сюда и подтверждаются только после
+  // записи; основной файл переписывается, когда загрузка закончится
+  private SharedJournal pendingWrites;
+  private final AtomicLong loadedCount = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+  private volatile long bytesTotal;
 
   public FileLinkRepository(Path file) {
-    this.file = file;
+    this(file, StorageCompression.NONE, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  public FileLinkRepository(Path file, StorageCompression compression, int compressionLevel) {
+    this(file, compression, compressionLevel, false);
+  }
+
+  public FileLinkRepository(
+      Path file, StorageCompression compression, int compressionLevel, boolean warmStart) {
+    this(file, compression, compressionLevel, warmStart, false);
+  }
 
-    this.mapper = new ObjectMapper();
-    this.mapper.registerModule(new JavaTimeModule());
-    this.mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+  public FileLinkRepository(
+      Path file,
+      StorageCompression compression,
+      int compressionLevel,
+      boolean warmStart,
+      boolean shared) {
+    StorageCompression.validateLevel(compressionLevel);
+    if (warmStart && shared) {
+      throw new IllegalArgumentException("warmStart нельзя включать для общего хранилища");
+    }
+    this.file = file;
+    this.compression = compression;
+    this.compressionLevel = compressionLevel;
 
-    loadFromFile();
+    if (shared) {
+      this.journal = openJournal();
+      loadShared();
+    } else if (warmStart) {
+      this.journal = null;
+      startBackgroundLoad();
+    } else {
+      this.journal = null;
+      loadFromFile();
+    }
   }
 
   @Override
   public void save(Link link) {
-    synchronized (lock) {
-      byCode.put(link.code(), link);
-      persistToFile();
-    }
+    saveAll(List.of(link));
+  }
+
+  @Override
+  public void saveAll(Collection<Link> links) {
+    mutate(
+        () -> {
+          for (Link link : links) {
+            put(link);
+            markChanged(link.code());
+          }
+          return null;
+        });
+  }
+
+  @Override
+  public boolean saveIfAbsent(Link link) {
+    return mutate(
+        () -> {
+          String code = link.code();
+          if ((loading ? awaitCode(code) : editor.get(code)) != null) {
+            return false;
+          }
+          put(link);
+          markChanged(code);
+          return true;
+        });
+  }
+
+  @Override
+  public List<Link> saveAllIfAbsent(Collection<Link> links) {
+    return mutate(
+        () -> {
+          List<Link> taken = new ArrayList<>();
+          for (Link link : links) {
+            String code = link.code();
+            if ((loading ? awaitCode(code) : editor.get(code)) != null) {
+              taken.add(link);
+              continue;
+            }
+            put(link);
+            markChanged(code);
+          }
+          return taken;
+        });
+  }
+
+  @Override
+  public void deleteAll(Collection<String> codes) {
+    mutate(
+        () -> {
+          for (String code : codes) {
+            remove(code);
+            markChanged(code);
+          }
+          return null;
+        });
+  }
+
+  @Override
+  public List<Link> deleteIf(
+      Collection<String> codes, Predicate<Link> condition, Consumer<List<Link>> beforeDelete) {
+    return mutate(
+        () -> {
+          List<Link> removed = new ArrayList<>();
+          for (String code : codes) {
+            Link link = loading ? awaitCode(code) : editor.get(code);
+            if (link != null && condition.test(link)) {
+              removed.add(link);
+            }
+          }
+          if (removed.isEmpty()) {
+            return removed;
+          }
+          beforeDelete.accept(removed);
+          for (Link link : removed) {
+            remove(link.code());
+            markChanged(link.code());
+          }
+          return removed;
+        });
+  }
+
+  @Override
+  public Optional<Link> update(String code, UnaryOperator<Link> fn) {
+    return mutate(
+        () -> {
+          Link link = loading ? awaitCode(code) : editor.get(code);
+          if (link == null) {
+            return Optional.empty();
+          }
+          Link updated = fn.apply(link);
+          if (!updated.code().equals(code)) {
+            throw new IllegalArgumentException("Обновление не может менять код ссылки: " + code);
+          }
+          if (updated != link) {
+            put(updated);
+            markChanged(code);
+          }
+          return Optional.of(updated);
+        });
   }
 
   @Override
   public Optional<Link> findByCode(String code) {
-    return Optional.ofNullable(byCode.get(code));
+    refresh();
+    Link link = links.get(code);
+    if (link != null || !loading) {
+      return Optional.ofNullable(link);
+    }
+    return Optional.ofNullable(awaitCode(code));
   }
 
   @Override
   public List<Link> findByOwner(String ownerUuid) {
     List<Link> res = new ArrayList<>();
-    for (Link l : byCode.values()) {
-      if (l.ownerUuid().equals(ownerUuid)) {
-        res.add(l);
-      }
-    }
+    snapshot()
+        .forEach(
+            l -> {
+              if (l.ownerUuid().equals(ownerUuid)) {
+                res.add(l);
+              }
+            });
     res.sort(Comparator.comparing(Link::createdAt).reversed());
     return res;
   }
 
   @Override
   public void deleteByCode(String code) {
+    deleteAll(List.of(code));
+  }
+
+  // Копия для вызывающих, которым нужен изменяемый список; для обхода — snapshot()
+  @Override
+  public List<Link> findAll() {
+    return new ArrayList<>(snapshot());
+  }
+
+  @Override
+  public List<Link> findByCodePrefix(String prefix, int limit) {
+    awaitLoaded();
+    refresh();
+    LinkSnapshot view = links;
+    List<Link> res = new ArrayList<>();
+    for (String code : codes.withPrefix(prefix, limit)) {
+      Link link = view.get(code);
+      if (link != null) {
+        res.add(link);
+      }
+    }
+    return res;
+  }
+
+  @Override
+  public Optional<List<Link>> findByHost(String host) {
+    awaitLoaded();
+    refresh();
     synchronized (lock) {
-      byCode.remove(code);
-      persistToFile();
+      if (codesByHost == null) {
+        return Optional.empty();
+      }
+      List<Link> res = new ArrayList<>();
+      for (String code : codesByHost.getOrDefault(host.toLowerCase(Locale.ROOT), Set.of())) {
+        Link link = editor.get(code);
+        if (link != null) {
+          res.add(link);
+        }
+      }
+      return Optional.of(res);
+    }
+  }
+
+  public void enableHostIndex() {
+    awaitLoaded();
+    synchronized (lock) {
+      if (codesByHost != null) {
+        return;
+      }
+      codesByHost = new HashMap<>();
+      for (Link l : links) {
+        indexHost(l);
+      }
     }
   }
 
   @Override
-  public List<Link> findAll() {
-    return new ArrayList<>(byCode.values());
+  public List<Link> findByOwnerAndUrl(String ownerUuid, String originalUrl) {
+    awaitLoaded();
+    refresh();
+    synchronized (lock) {
+      List<Link> res = new ArrayList<>();
+      for (String code : urls.codes(originalUrl, ownerUuid)) {
+        Link link = editor.get(code);
+        if (link != null) {
+          res.add(link);
+        }
+      }
+      return res;
+    }
+  }
+
+  // Каждый блок под lock публикует свои изменения целиком, поэтому снимок согласован
+  // и берётся без блокировки и без копирования
+  @Override
+  public LinkSnapshot snapshot() {
+    awaitLoaded();
+    refresh();
+    return links;
+  }
+
+  @Override
+  public int count() {
+    awaitLoaded();
+    refresh();
+    return links.size();
+  }
+
+  @Override
+  public boolean incrementClicks(String code) {
+    return mutate(
+        () -> {
+          Link link = loading ? awaitCode(code) : editor.get(code);
+          if (link == null || link.clicksDone() >= link.maxClicks()) {
+            return false;
+          }
+          editor.put(
+              new Link(
+                  link.code(),
+                  link.ownerUuid(),
+                  link.originalUrl(),
+                  link.shortUrl(),
+                  link.maxClicks(),
+                  link.clicksDone() + 1,
+                  link.createdAt(),
+                  link.expiresAt()));
+          markChanged(code);
+          return true;
+        });
+  }
+
+  @Override
+  public List<Link> deleteExpired(Instant now) {
+    awaitLoaded();
+    return mutate(
+        () -> {
+          List<Link> removed = new ArrayList<>();
+          for (Link l : editor.snapshot()) {
+            if (now.isAfter(l.expiresAt())) {
+              removed.add(l);
+            }
+          }
+          for (Link l : removed) {
+            remove(l.code());
+            markChanged(l.code());
+          }
+          return removed;
+        });
+  }
+
+  @Override
+  public void close() {
+    if (journal != null) {
+      journal.close();
+    }
+    synchronized (lock) {
+      if (pendingWrites != null) {
+        pendingWrites.close();
+      }
+    }
+  }
+
+  public boolean isReady() {
+    return !loading;
+  }
+
+  public int distinctUrlCount() {
+    synchronized (lock) {
+      return urls.size();
+    }
+  }
+
+  public long loadedCount() {
+    return loadedCount.get();
+  }
+
+  public double loadProgress() {
+    if (!loading) {
+      return 1.0;
+    }
+    long total = bytesTotal;
+    return total <= 0 ? 0.0 : Math.min(1.0, (double) bytesRead.get() / total);
+  }
+
+  public void awaitLoaded() {
+    if (!loading) {
+      rethrowLoadFailure();
+      return;
+    }
+    synchronized (lock) {
+      while (loading) {
+        waitForLoader();
+      }
+    }
+    rethrowLoadFailure();
   }
 
   private void loadFromFile() {
     synchronized (lock) {
+      if (prepareFile()) {
+        readLinks(
+            batch -> {
+              for (Link l : batch) {
+                put(l);
+              }
+            });
+        publish();
+      }
+      recoverPendingWrites();
+    }
+  }
+
+  private SharedJournal openJournal() {
+    try {
+      if (file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось загрузить файл: " + file.toAbsolutePath(), e);
+    }
+    return new SharedJournal(file.resolveSibling(file.getFileName() + ".journal"), format.mapper());
+  }
+
+  private void loadShared() {
+    synchronized (lock) {
+      journal.lock();
       try {
-        if (!Files.exists(file)) {
-          if (file.getParent() != null) {
-            Files.createDirectories(file.getParent());
+        reloadShared();
+      } finally {
+        publish();
+        journal.unlock();
+      }
+    }
+  }
+
+  // Под lock и блокировкой журнала: основной файл и журнал одного поколения
+  private void reloadShared() {
+    for (Link l : editor.snapshot()) {
+      remove(l.code());
+    }
+    if (prepareFile()) {
+      readLinks(
+          batch -> {
+            for (Link l : batch) {
+              put(l);
+            }
+          });
+    }
+    applyJournal(journal.readAll());
+  }
+
+  // Подтягивает изменения других процессов: без них — одна проверка заголовка и размера
+  private void refresh() {
+    if (journal == null || !journal.hasChanges()) {
+      return;
+    }
+    synchronized (lock) {
+      List<SharedJournal.Entry> changes = journal.readNew();
+      if (changes == null) {
+        loadShared();
+      } else {
+        applyJournal(changes);
+        publish();
+      }
+    }
+  }
+
+  private void applyJournal(List<SharedJournal.Entry> entries) {
+    for (SharedJournal.Entry e : entries) {
+      if (e.put() != null) {
+        put(e.put());
+      } else {
+        remove(e.del());
+      }
+    }
+  }
+
+  // Все изменения проходят здесь: одна запись в файл (или журнал) на вызов
+  private <T> T mutate(Supplier<T> mutation) {
+    synchronized (lock) {
+      if (journal == null) {
+        try {
+          T result = mutation.get();
+          if (!changedCodes.isEmpty()) {
+            persistOrDefer();
+          }
+          return result;
+        } finally {
+          publish();
+          changedCodes.clear();
+        }
+      }
+
+      journal.lock();
+      try {
+        List<SharedJournal.Entry> missed = journal.readNew();
+        if (missed == null) {
+          reloadShared();
+        } else {
+          applyJournal(missed);
+        }
+
+        T result = mutation.get();
+        if (!changedCodes.isEmpty()) {
+          journal.append(changedEntries());
+          if (journal.size() > JOURNAL_COMPACT_BYTES) {
+            persistToFile();
+            journal.reset();
           }
-          persistToFile();
-          return;
         }
+        return result;
+      } finally {
+        publish();
+        changedCodes.clear();
+        journal.unlock();
+      }
+    }
+  }
+
+  private void startBackgroundLoad() {
+    synchronized (lock) {
+      if (!prepareFile()) {
+        recoverPendingWrites();
+        return;
+      }
+      loading = true;
+      // Изменения, не попавшие в основной файл до прошлой остановки, важнее загружаемых
+      pendingWrites = new SharedJournal(pendingWritesPath(), format.mapper());
+      List<SharedJournal.Entry> recovered = pendingWrites.readAll();
+      for (SharedJournal.Entry e : recovered) {
+        touchedWhileLoading.add(e.put() != null ? e.put().code() : e.del());
+      }
+      applyJournal(recovered);
+      dirtyWhileLoading = !recovered.isEmpty();
+      publish();
+    }
+
+    Thread loader = new Thread(this::loadInBackground, "link-repository-loader");
+    loader.setDaemon(true);
+    loader.start();
+  }
 
-        String json = Files.readString(file).trim();
-        if (json.isEmpty()) {
-          return;
+  private void loadInBackground() {
+    long startedAt = System.nanoTime();
+    try {
+      readLinks(this::applyLoadedBatch);
+    } catch (RuntimeException e) {
+      loadFailure = e;
+    }
+
+    synchronized (lock) {
+      loading = false;
+      touchedWhileLoading.clear();
+      if (loadFailure == null) {
+        try {
+          if (dirtyWhileLoading) {
+            dirtyWhileLoading = false;
+            persistToFile();
+          }
+          closePendingWrites();
+        } catch (RuntimeException e) {
+          // Журнал остаётся на диске и будет применён при следующем запуске
+          loadFailure = e;
         }
+      }
+      lock.notifyAll();
+    }
+
+    if (loadFailure == null) {
+      long ms = (System.nanoTime() - startedAt) / 1_000_000;
+      System.out.println("Хранилище загружено: " + loadedCount.get() + " ссылок за " + ms + " мс");
+    } else {
+      System.out.println("ОШИБКА: " + loadFailure.getMessage());
+    }
+  }
 
-        List<Link> links = mapper.readValue(json, new TypeReference<List<Link>>() {});
-        for (Link l : links) {
-          byCode.put(l.code(), l);
+  private void applyLoadedBatch(List<Link> batch) {
+    synchronized (lock) {
+      for (Link l : batch) {
+        if (!touchedWhileLoading.contains(l.code()) && editor.get(l.code()) == null) {
+          put(l);
         }
+      }
+      publish();
+      lock.notifyAll();
+    }
+  }
 
-      } catch (IOException e) {
-        throw new IllegalStateException("Не удалось загрузить файл: " + file.toAbsolutePath(), e);
+  private Link awaitCode(String code) {
+    synchronized (lock) {
+      while (true) {
+        Link link = editor.get(code);
+        if (link != null || !loading || touchedWhileLoading.contains(code)) {
+          if (link == null) {
+            rethrowLoadFailure();
+          }
+          return link;
+        }
+        waitForLoader();
+      }
+    }
+  }
+
+  private void waitForLoader() {
+    try {
+      lock.wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Ожидание загрузки хранилища прервано", e);
+    }
+  }
+
+  private void rethrowLoadFailure() {
+    if (loadFailure != null) {
+      throw loadFailure;
+    }
+  }
+
+  // Под lock: делает изменения editor видимыми читателям без блокировки
+  private void publish() {
+    links = editor.snapshot();
+  }
+
+  // put и remove вызываются под lock и поддерживают индексы вместе со ссылками
+  private void put(Link link) {
+    Link old = editor.get(link.code());
+    if (old != null) {
+      urls.release(old.originalUrl(), old.ownerUuid(), old.code());
+    }
+    if (codesByHost != null && (old == null || !old.originalUrl().equals(link.originalUrl()))) {
+      if (old != null) {
+        unindexHost(old);
+      }
+      indexHost(link);
+    }
+    String url = urls.acquire(link.originalUrl(), link.ownerUuid(), link.code());
+    editor.put(
+        url == link.originalUrl()
+            ? link
+            : new Link(
+                link.code(),
+                link.ownerUuid(),
+                url,
+                link.shortUrl(),
+                link.maxClicks(),
+                link.clicksDone(),
+                link.createdAt(),
+                link.expiresAt()));
+    codes.add(link.code());
+  }
+
+  private void remove(String code) {
+    Link old = editor.remove(code);
+    if (old != null) {
+      urls.release(old.originalUrl(), old.ownerUuid(), code);
+      codes.remove(code);
+      if (codesByHost != null) {
+        unindexHost(old);
+      }
+    }
+  }
+
+  private void indexHost(Link link) {
+    String host = UrlValidator.hostOf(link.originalUrl());
+    if (host != null) {
+      codesByHost.computeIfAbsent(host, h -> new HashSet<>()).add(link.code());
+    }
+  }
+
+  private void unindexHost(Link link) {
+    String host = UrlValidator.hostOf(link.originalUrl());
+    Set<String> hostCodes = host == null ? null : codesByHost.get(host);
+    if (hostCodes != null && hostCodes.remove(link.code()) && hostCodes.isEmpty()) {
+      codesByHost.remove(host);
+    }
+  }
+
+  private void markChanged(String code) {
+    if (loading) {
+      touchedWhileLoading.add(code);
+    }
+    changedCodes.add(code);
+  }
+
+  private void persistOrDefer() {
+    if (loading) {
+      pendingWrites.append(changedEntries());
+      dirtyWhileLoading = true;
+    } else {
+      persistToFile();
+    }
+  }
+
+  private List<SharedJournal.Entry> changedEntries() {
+    List<SharedJournal.Entry> entries = new ArrayList<>(changedCodes.size());
+    for (String code : changedCodes) {
+      Link link = editor.get(code);
+      entries.add(link != null ? SharedJournal.Entry.put(link) : SharedJournal.Entry.delete(code));
+    }
+    return entries;
+  }
+
+  private Path pendingWritesPath() {
+    return file.resolveSibling(file.getFileName() + ".pending");
+  }
+
+  // Под lock: журнал изменений прерванной фоновой загрузки переносится в основной файл
+  private void recoverPendingWrites() {
+    if (!Files.exists(pendingWritesPath())) {
+      return;
+    }
+    pendingWrites = new SharedJournal(pendingWritesPath(), format.mapper());
+    List<SharedJournal.Entry> recovered = pendingWrites.readAll();
+    if (!recovered.isEmpty()) {
+      applyJournal(recovered);
+      persistToFile();
+      publish();
+    }
+    closePendingWrites();
+  }
+
+  private void closePendingWrites() {
+    pendingWrites.close();
+    pendingWrites = null;
+    try {
+      Files.deleteIfExists(pendingWritesPath());
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Не удалось удалить журнал: " + pendingWritesPath().toAbsolutePath(), e);
+    }
+  }
+
+  private boolean prepareFile() {
+    try {
+      if (!Files.exists(file)) {
+        if (file.getParent() != null) {
+          Files.createDirectories(file.getParent());
+        }
+        persistToFile();
+        return false;
+      }
+      bytesTotal = Files.size(file);
+      return true;
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось загрузить файл: " + file.toAbsolutePath(), e);
+    }
+  }
+
+  private void readLinks(Consumer<List<Link>> sink) {
+    StorageLoadEvent event = new StorageLoadEvent();
+    event.begin();
+    try (BufferedInputStream raw =
+            new BufferedInputStream(new CountingInputStream(Files.newInputStream(file)));
+        InputStream in = StorageCompression.detect(raw).wrap(raw)) {
+      format.read(
+          in,
+          LOAD_BATCH_SIZE,
+          batch -> {
+            sink.accept(batch);
+            loadedCount.addAndGet(batch.size());
+          });
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось загрузить файл: " + file.toAbsolutePath(), e);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.file = file.toString();
+        event.linkCount = loadedCount.get();
+        event.bytesRead = bytesRead.get();
+        event.warmStart = loading;
+        event.commit();
       }
     }
   }
 
   private void persistToFile() {
+    rethrowLoadFailure();
+    StoragePersistEvent event = new StoragePersistEvent();
+    event.begin();
     try {
       if (file.getParent() != null) {
         Files.createDirectories(file.getParent());
       }
-      List<Link> links = new ArrayList<>(byCode.values());
-      links.sort(Comparator.comparing(Link::createdAt).reversed());
+      // Файл собирается рядом и подменяет основной целиком: прерванная запись не портит его, а
+      // журнал общего хранилища обрезается только после того, как новое состояние на диске
+      Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+      int linkCount;
+      try {
+        try (OutputStream out =
+            compression.wrap(
+                new BufferedOutputStream(Files.newOutputStream(tmp)), compressionLevel)) {
+          linkCount = format.write(out, editor.snapshot());
+        }
+        if (journal != null || pendingWrites != null) {
+          // Следом журнал будет обрезан или удалён: состояние должно дойти до диска
+          try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+          }
+        }
+        try {
+          Files.move(
+              tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(tmp);
+        throw e;
+      }
 
-      String json = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(links);
-      Files.writeString(file, json);
+      event.end();
+      if (event.shouldCommit()) {
+        event.file = file.toString();
+        event.linkCount = linkCount;
+        event.bytesWritten = Files.size(file);
+        event.commit();
+      }
 
     } catch (IOException e) {
       throw new IllegalStateException("Не удалось сохранить файл: " + file.toAbsolutePath(), e);
     }
   }
+
+  private final class CountingInputStream extends FilterInputStream {
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        bytesRead.incrementAndGet();
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+      int n = super.read(buf, off, len);
+      if (n > 0) {
+        bytesRead.addAndGet(n);
+      }
+      return n;
+    }
+  }
 }
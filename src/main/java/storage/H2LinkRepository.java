@@ -0,0 +1,656 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import model.Link;
+
+public class H2LinkRepository implements LinkRepository, AutoCloseable {
+
+  private static final String COLUMNS =
+      "l.code, l.owner_uuid, u.url, l.short_url, l.max_clicks, l.clicks_done, l.created_at,"
+          + " l.expires_at";
+
+  // URL хранится один раз в словаре urls, ссылки ссылаются на него по url_id
+  private static final String FROM = " FROM links l JOIN urls u ON u.id = l.url_id";
+
+  private static final String[] SCHEMA = {
+    """
+    CREATE TABLE IF NOT EXISTS urls (
+      id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+      url_hash INT NOT NULL,
+      url VARCHAR(8192) NOT NULL
+    )
+    """,
+    // Поиск URL в словаре идёт по хешу и самой строке; индекс только по хешу больше не нужен
+    "CREATE INDEX IF NOT EXISTS idx_urls_hash_url ON urls (url_hash, url)",
+    "DROP INDEX IF EXISTS idx_urls_hash",
+    """
+    CREATE TABLE IF NOT EXISTS links (
+      code VARCHAR(64) PRIMARY KEY,
+      owner_uuid VARCHAR(64) NOT NULL,
+      url_id BIGINT NOT NULL,
+      short_url VARCHAR(8192) NOT NULL,
+      max_clicks INT NOT NULL,
+      clicks_done INT NOT NULL,
+      created_at TIMESTAMP(9) WITH TIME ZONE NOT NULL,
+      expires_at TIMESTAMP(9) WITH TIME ZONE NOT NULL
+    )
+    """,
+    "CREATE INDEX IF NOT EXISTS idx_links_owner_created ON links (owner_uuid, created_at)",
+    "CREATE INDEX IF NOT EXISTS idx_links_expires ON links (expires_at)"
+  };
+
+  // SQLSTATE нарушения уникальности
+  private static final String DUPLICATE_KEY = "23505";
+
+  private static final String URL_OWNER_INDEX =
+      "CREATE INDEX IF NOT EXISTS idx_links_url_owner ON links (url_id, owner_uuid)";
+
+  // Перенос базы, где URL хранился прямо в links.original_url. DDL в H2 фиксируется сразу,
+  // поэтому каждый шаг можно повторить после сбоя, а original_url удаляется последним:
+  // пока он есть, перенос при следующем открытии продолжится
+  private static final String[] PREPARE_INLINE_URLS = {
+    "ALTER TABLE links ADD COLUMN IF NOT EXISTS url_id BIGINT",
+    "ALTER TABLE links ADD COLUMN IF NOT EXISTS original_url_hash INT"
+  };
+
+  // Хеш в links.original_url_hash проставлен в Java до этих шагов, поэтому URL ищутся по
+  // индексу (url_hash, url), а в словарь попадают уже с верным хешем
+  private static final String[] MIGRATE_INLINE_URLS = {
+    """
+    INSERT INTO urls (url_hash, url)
+    SELECT DISTINCT l.original_url_hash, l.original_url FROM links l
+    WHERE l.url_id IS NULL AND NOT EXISTS (
+      SELECT 1 FROM urls u WHERE u.url_hash = l.original_url_hash AND u.url = l.original_url)
+    """,
+    """
+    UPDATE links l SET url_id = (
+      SELECT MIN(u.id) FROM urls u
+      WHERE u.url_hash = l.original_url_hash AND u.url = l.original_url)
+    WHERE l.url_id IS NULL
+    """,
+    "ALTER TABLE links DROP COLUMN original_url_hash",
+    "ALTER TABLE links ALTER COLUMN url_id SET NOT NULL",
+    "ALTER TABLE links DROP COLUMN original_url"
+  };
+
+  private final Path file;
+  private final Connection connection;
+
+  private final PreparedStatement selectUrlId;
+  private final PreparedStatement insertUrl;
+  private final PreparedStatement deleteUnusedUrl;
+  private final PreparedStatement selectUrlIdByCode;
+  private final PreparedStatement upsert;
+  private final PreparedStatement insert;
+  private final PreparedStatement selectByCode;
+  private final PreparedStatement selectCode;
+  private final PreparedStatement selectByOwner;
+  private final PreparedStatement selectAll;
+  private final PreparedStatement selectByCodePrefix;
+  private final PreparedStatement selectByOwnerAndUrl;
+  private final PreparedStatement countAll;
+  private final PreparedStatement deleteByCode;
+  private final PreparedStatement incrementClicks;
+  private final PreparedStatement selectExpired;
+  private final PreparedStatement deleteExpired;
+
+  private final Object lock = new Object();
+  // Соединение только для чтения снимков со своей блокировкой
+  private final Connection snapshotConnection;
+  private final PreparedStatement snapshotAll;
+  private final Object snapshotLock = new Object();
+
+  public H2LinkRepository(Path file) {
+    this.file = file;
+    try {
+      if (file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+      this.connection = DriverManager.getConnection("jdbc:h2:file:" + file.toAbsolutePath());
+
+      try (Statement st = connection.createStatement()) {
+        for (String ddl : SCHEMA) {
+          st.execute(ddl);
+        }
+        migrateInlineUrls();
+        st.execute(URL_OWNER_INDEX);
+      }
+
+      this.selectUrlId =
+          connection.prepareStatement("SELECT id FROM urls WHERE url_hash = ? AND url = ?");
+      this.insertUrl =
+          connection.prepareStatement(
+              "INSERT INTO urls (url_hash, url) VALUES (?, ?)", Statement.RETURN_GENERATED_KEYS);
+      this.deleteUnusedUrl =
+          connection.prepareStatement(
+              "DELETE FROM urls u WHERE u.id = ?"
+                  + " AND NOT EXISTS (SELECT 1 FROM links l WHERE l.url_id = u.id)");
+      this.selectUrlIdByCode =
+          connection.prepareStatement("SELECT url_id FROM links WHERE code = ?");
+      this.upsert =
+          connection.prepareStatement(
+              "MERGE INTO links (code, owner_uuid, url_id, short_url, max_clicks, clicks_done,"
+                  + " created_at, expires_at) KEY (code) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+      this.insert =
+          connection.prepareStatement(
+              "INSERT INTO links (code, owner_uuid, url_id, short_url, max_clicks, clicks_done,"
+                  + " created_at, expires_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+      this.selectByCode =
+          connection.prepareStatement("SELECT " + COLUMNS + FROM + " WHERE l.code = ?");
+      this.selectCode = connection.prepareStatement("SELECT 1 FROM links WHERE code = ?");
+      this.selectByOwner =
+          connection.prepareStatement(
+              "SELECT "
+                  + COLUMNS
+                  + FROM
+                  + " WHERE l.owner_uuid = ? ORDER BY l.owner_uuid, l.created_at DESC");
+      this.selectAll = connection.prepareStatement("SELECT " + COLUMNS + FROM);
+      this.selectByCodePrefix =
+          connection.prepareStatement(
+              "SELECT "
+                  + COLUMNS
+                  + FROM
+                  + " WHERE l.code LIKE ? ESCAPE '\\' ORDER BY l.code LIMIT ?");
+      this.selectByOwnerAndUrl =
+          connection.prepareStatement(
+              "SELECT "
+                  + COLUMNS
+                  + FROM
+                  + " WHERE u.url_hash = ? AND u.url = ? AND l.owner_uuid = ?");
+      this.countAll = connection.prepareStatement("SELECT COUNT(*) FROM links");
+      this.deleteByCode =
+          connection.prepareStatement(
+              "SELECT url_id FROM OLD TABLE (DELETE FROM links WHERE code = ?)");
+      this.incrementClicks =
+          connection.prepareStatement(
+              "UPDATE links SET clicks_done = clicks_done + 1"
+                  + " WHERE code = ? AND clicks_done < max_clicks");
+      this.selectExpired =
+          connection.prepareStatement("SELECT " + COLUMNS + FROM + " WHERE l.expires_at < ?");
+      this.deleteExpired =
+          connection.prepareStatement(
+              "SELECT url_id FROM OLD TABLE (DELETE FROM links WHERE expires_at < ?)");
+
+      this.snapshotConnection =
+          DriverManager.getConnection("jdbc:h2:file:" + file.toAbsolutePath());
+      snapshotConnection.setReadOnly(true);
+      this.snapshotAll = snapshotConnection.prepareStatement("SELECT " + COLUMNS + FROM);
+
+    } catch (SQLException | IOException e) {
+      throw new IllegalStateException(
+          "Не удалось открыть базу данных: " + file.toAbsolutePath(), e);
+    }
+  }
+
+  @Override
+  public void save(Link link) {
+    saveAll(List.of(link));
+  }
+
+  @Override
+  public void saveAll(Collection<Link> links) {
+    synchronized (lock) {
+      inTransaction(
+          "сохранить ссылки",
+          () -> {
+            upsertAll(links);
+            return null;
+          });
+    }
+  }
+
+  // Занятость кода проверяет первичный ключ: дубликат откатывает и добавленный в словарь URL
+  @Override
+  public boolean saveIfAbsent(Link link) {
+    synchronized (lock) {
+      return inTransaction(
+          "сохранить ссылку",
+          () -> {
+            bind(insert, link);
+            try {
+              insert.executeUpdate();
+              return true;
+            } catch (SQLException e) {
+              if (!DUPLICATE_KEY.equals(e.getSQLState())) {
+                throw e;
+              }
+              connection.rollback();
+              return false;
+            }
+          });
+    }
+  }
+
+  // Коды проверяются под lock одним соединением, поэтому между проверкой и вставкой их никто
+  // не займёт; свободные ссылки вставляются одним пакетом
+  @Override
+  public List<Link> saveAllIfAbsent(Collection<Link> links) {
+    synchronized (lock) {
+      return inTransaction(
+          "сохранить ссылки",
+          () -> {
+            List<Link> taken = new ArrayList<>();
+            Set<String> codes = new HashSet<>();
+            for (Link link : links) {
+              selectCode.setString(1, link.code());
+              boolean exists;
+              try (ResultSet rs = selectCode.executeQuery()) {
+                exists = rs.next();
+              }
+              if (exists || !codes.add(link.code())) {
+                taken.add(link);
+                continue;
+              }
+              bind(insert, link);
+              insert.addBatch();
+            }
+            insert.executeBatch();
+            return taken;
+          });
+    }
+  }
+
+  @Override
+  public void deleteAll(Collection<String> codes) {
+    synchronized (lock) {
+      inTransaction(
+          "удалить ссылки",
+          () -> {
+            Set<Long> urlIds = new HashSet<>();
+            for (String code : codes) {
+              deleteByCode.setString(1, code);
+              try (ResultSet rs = deleteByCode.executeQuery()) {
+                while (rs.next()) {
+                  urlIds.add(rs.getLong(1));
+                }
+              }
+            }
+            releaseUrls(urlIds);
+            return null;
+          });
+    }
+  }
+
+  @Override
+  public List<Link> deleteIf(
+      Collection<String> codes, Predicate<Link> condition, Consumer<List<Link>> beforeDelete) {
+    synchronized (lock) {
+      return inTransaction(
+          "удалить ссылки",
+          () -> {
+            List<Link> removed = new ArrayList<>();
+            for (String code : codes) {
+              selectByCode.setString(1, code);
+              List<Link> found = readAll(selectByCode);
+              if (!found.isEmpty() && condition.test(found.get(0))) {
+                removed.add(found.get(0));
+              }
+            }
+            if (removed.isEmpty()) {
+              return removed;
+            }
+            beforeDelete.accept(removed);
+            Set<Long> urlIds = new HashSet<>();
+            for (Link link : removed) {
+              deleteByCode.setString(1, link.code());
+              try (ResultSet rs = deleteByCode.executeQuery()) {
+                while (rs.next()) {
+                  urlIds.add(rs.getLong(1));
+                }
+              }
+            }
+            releaseUrls(urlIds);
+            return removed;
+          });
+    }
+  }
+
+  @Override
+  public Optional<Link> update(String code, UnaryOperator<Link> fn) {
+    synchronized (lock) {
+      return inTransaction(
+          "обновить ссылку",
+          () -> {
+            selectByCode.setString(1, code);
+            List<Link> found = readAll(selectByCode);
+            if (found.isEmpty()) {
+              return Optional.empty();
+            }
+            Link link = found.get(0);
+            Link updated = fn.apply(link);
+            if (!updated.code().equals(code)) {
+              throw new IllegalArgumentException("Обновление не может менять код ссылки: " + code);
+            }
+            if (updated != link) {
+              upsertAll(List.of(updated));
+            }
+            return Optional.of(updated);
+          });
+    }
+  }
+
+  @Override
+  public Optional<Link> findByCode(String code) {
+    synchronized (lock) {
+      try {
+        selectByCode.setString(1, code);
+        List<Link> res = readAll(selectByCode);
+        return res.isEmpty() ? Optional.empty() : Optional.of(res.get(0));
+      } catch (SQLException e) {
+        throw failure("найти ссылку", e);
+      }
+    }
+  }
+
+  @Override
+  public List<Link> findByOwner(String ownerUuid) {
+    synchronized (lock) {
+      try {
+        selectByOwner.setString(1, ownerUuid);
+        return readAll(selectByOwner);
+      } catch (SQLException e) {
+        throw failure("получить ссылки пользователя", e);
+      }
+    }
+  }
+
+  @Override
+  public void deleteByCode(String code) {
+    deleteAll(List.of(code));
+  }
+
+  @Override
+  public List<Link> findAll() {
+    synchronized (lock) {
+      try {
+        return readAll(selectAll);
+      } catch (SQLException e) {
+        throw failure("получить ссылки", e);
+      }
+    }
+  }
+
+  @Override
+  public List<Link> findByCodePrefix(String prefix, int limit) {
+    synchronized (lock) {
+      try {
+        String escaped = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        selectByCodePrefix.setString(1, escaped + "%");
+        selectByCodePrefix.setInt(2, limit);
+        return readAll(selectByCodePrefix);
+      } catch (SQLException e) {
+        throw failure("найти ссылки по префиксу", e);
+      }
+    }
+  }
+
+  @Override
+  public List<Link> findByOwnerAndUrl(String ownerUuid, String originalUrl) {
+    synchronized (lock) {
+      try {
+        selectByOwnerAndUrl.setInt(1, originalUrl.hashCode());
+        selectByOwnerAndUrl.setString(2, originalUrl);
+        selectByOwnerAndUrl.setString(3, ownerUuid);
+        return readAll(selectByOwnerAndUrl);
+      } catch (SQLException e) {
+        throw failure("найти ссылки пользователя по URL", e);
+      }
+    }
+  }
+
+  // Строки читаются одним запросом через отдельное соединение: MVCC отдаёт ему согласованное
+  // состояние на момент запроса, а остальные операции не ждут, пока снимок прочитается
+  @Override
+  public LinkSnapshot snapshot() {
+    synchronized (snapshotLock) {
+      try {
+        return LinkSnapshot.of(readAll(snapshotAll));
+      } catch (SQLException e) {
+        throw failure("получить снимок ссылок", e);
+      }
+    }
+  }
+
+  @Override
+  public int count() {
+    synchronized (lock) {
+      try (ResultSet rs = countAll.executeQuery()) {
+        rs.next();
+        return rs.getInt(1);
+      } catch (SQLException e) {
+        throw failure("посчитать ссылки", e);
+      }
+    }
+  }
+
+  @Override
+  public boolean incrementClicks(String code) {
+    synchronized (lock) {
+      try {
+        incrementClicks.setString(1, code);
+        return incrementClicks.executeUpdate() == 1;
+      } catch (SQLException e) {
+        throw failure("обновить счётчик переходов", e);
+      }
+    }
+  }
+
+  @Override
+  public List<Link> deleteExpired(Instant now) {
+    synchronized (lock) {
+      return inTransaction(
+          "удалить просроченные ссылки",
+          () -> {
+            selectExpired.setObject(1, toDb(now));
+            List<Link> removed = readAll(selectExpired);
+            if (!removed.isEmpty()) {
+              deleteExpired.setObject(1, toDb(now));
+              Set<Long> urlIds = new HashSet<>();
+              try (ResultSet rs = deleteExpired.executeQuery()) {
+                while (rs.next()) {
+                  urlIds.add(rs.getLong(1));
+                }
+              }
+              releaseUrls(urlIds);
+            }
+            return removed;
+          });
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (snapshotLock) {
+      try {
+        snapshotConnection.close();
+      } catch (SQLException e) {
+        throw failure("закрыть базу данных", e);
+      }
+    }
+    synchronized (lock) {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        throw failure("закрыть базу данных", e);
+      }
+    }
+  }
+
+  private interface SqlWork<T> {
+    T run() throws SQLException;
+  }
+
+  // Вызывается под lock: несколько запросов фиксируются вместе или откатываются
+  private <T> T inTransaction(String action, SqlWork<T> work) {
+    try {
+      connection.setAutoCommit(false);
+      try {
+        T result = work.run();
+        connection.commit();
+        return result;
+      } catch (SQLException | RuntimeException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      throw failure(action, e);
+    }
+  }
+
+  // Вызывается в транзакции: перезапись ссылки освобождает в словаре её прежний URL
+  private void upsertAll(Collection<Link> links) throws SQLException {
+    Set<Long> previous = new HashSet<>();
+    for (Link link : links) {
+      selectUrlIdByCode.setString(1, link.code());
+      try (ResultSet rs = selectUrlIdByCode.executeQuery()) {
+        if (rs.next()) {
+          previous.add(rs.getLong(1));
+        }
+      }
+      bind(upsert, link);
+      upsert.addBatch();
+    }
+    upsert.executeBatch();
+    releaseUrls(previous);
+  }
+
+  // Удаляет из словаря URL, на которые больше не ссылается ни одна ссылка
+  private void releaseUrls(Set<Long> urlIds) throws SQLException {
+    if (urlIds.isEmpty()) {
+      return;
+    }
+    for (long id : urlIds) {
+      deleteUnusedUrl.setLong(1, id);
+      deleteUnusedUrl.addBatch();
+    }
+    deleteUnusedUrl.executeBatch();
+  }
+
+  private void bind(PreparedStatement st, Link link) throws SQLException {
+    st.setString(1, link.code());
+    st.setString(2, link.ownerUuid());
+    st.setLong(3, urlId(link.originalUrl()));
+    st.setString(4, link.shortUrl());
+    st.setInt(5, link.maxClicks());
+    st.setInt(6, link.clicksDone());
+    st.setObject(7, toDb(link.createdAt()));
+    st.setObject(8, toDb(link.expiresAt()));
+  }
+
+  // Вызывается под lock: находит URL в словаре или добавляет его
+  private long urlId(String url) throws SQLException {
+    selectUrlId.setInt(1, url.hashCode());
+    selectUrlId.setString(2, url);
+    try (ResultSet rs = selectUrlId.executeQuery()) {
+      if (rs.next()) {
+        return rs.getLong(1);
+      }
+    }
+    insertUrl.setInt(1, url.hashCode());
+    insertUrl.setString(2, url);
+    insertUrl.executeUpdate();
+    try (ResultSet rs = insertUrl.getGeneratedKeys()) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+
+  private void migrateInlineUrls() throws SQLException {
+    // Прежний перенос проставлял хеши последним шагом и мог оставить url_hash = 0 после сбоя
+    stampHashes("urls", "id", "url", "url_hash", "url_hash = 0");
+    try (ResultSet rs = connection.getMetaData().getColumns(null, null, "LINKS", "ORIGINAL_URL")) {
+      if (!rs.next()) {
+        return;
+      }
+    }
+    try (Statement st = connection.createStatement()) {
+      for (String ddl : PREPARE_INLINE_URLS) {
+        st.execute(ddl);
+      }
+      // Хеш считается в Java (String.hashCode), поэтому проставляется до переноса
+      stampHashes(
+          "links",
+          "code",
+          "original_url",
+          "original_url_hash",
+          "url_id IS NULL AND original_url_hash IS NULL");
+      for (String ddl : MIGRATE_INLINE_URLS) {
+        st.execute(ddl);
+      }
+    }
+  }
+
+  // Проставляет hashColumn = String.hashCode() от urlColumn в строках table, где выполнено where
+  private void stampHashes(
+      String table, String key, String urlColumn, String hashColumn, String where)
+      throws SQLException {
+    try (Statement st = connection.createStatement();
+        ResultSet rs =
+            st.executeQuery(
+                "SELECT " + key + ", " + urlColumn + " FROM " + table + " WHERE " + where);
+        PreparedStatement stamp =
+            connection.prepareStatement(
+                "UPDATE " + table + " SET " + hashColumn + " = ? WHERE " + key + " = ?")) {
+      int batched = 0;
+      while (rs.next()) {
+        stamp.setInt(1, rs.getString(2).hashCode());
+        stamp.setObject(2, rs.getObject(1));
+        stamp.addBatch();
+        if (++batched % 1000 == 0) {
+          stamp.executeBatch();
+        }
+      }
+      stamp.executeBatch();
+    }
+  }
+
+  private List<Link> readAll(PreparedStatement st) throws SQLException {
+    List<Link> res = new ArrayList<>();
+    try (ResultSet rs = st.executeQuery()) {
+      while (rs.next()) {
+        res.add(
+            new Link(
+                rs.getString(1),
+                rs.getString(2),
+                rs.getString(3),
+                rs.getString(4),
+                rs.getInt(5),
+                rs.getInt(6),
+                rs.getObject(7, OffsetDateTime.class).toInstant(),
+                rs.getObject(8, OffsetDateTime.class).toInstant()));
+      }
+    }
+    return res;
+  }
+
+  private static OffsetDateTime toDb(Instant instant) {
+    return instant.atOffset(ZoneOffset.UTC);
+  }
+
+  private IllegalStateException failure(String action, SQLException e) {
+    return new IllegalStateException(
+        "Не удалось " + action + " в базе данных: " + file.toAbsolutePath(), e);
+  }
+}
@@ -0,0 +1,252 @@
+package storage;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import model.Link;
+
+// Архив удалённых из хранилища ссылок. Файл только дописывается: каждый пакет — отдельный
+// кадр [длина int][gzip с JSON-строками записей], поэтому запись пакета не трогает
+// старые данные, а оборванный при сбое последний кадр отбрасывается при открытии.
+public final class LinkArchive {
+
+  public record Entry(Link link, String reason, Instant archivedAt) {}
+
+  private static final int FRAME_HEADER = Integer.BYTES;
+
+  private final Path file;
+  private final ObjectWriter writer;
+  private final ObjectReader reader;
+
+  public LinkArchive(Path file) {
+    this.file = file;
+    LinkJsonFormat format = new LinkJsonFormat();
+    this.writer = format.mapper().writerFor(Entry.class);
+    this.reader = format.mapper().readerFor(Entry.class);
+    trimTornTail();
+  }
+
+  public Path file() {
+    return file;
+  }
+
+  public synchronized void append(Collection<Entry> entries) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    byte[] frame;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (OutputStream gz = new GZIPOutputStream(bytes)) {
+        for (Entry e : entries) {
+          gz.write(writer.writeValueAsBytes(e));
+          gz.write('\n');
+        }
+      }
+      frame = bytes.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось подготовить пакет архива", e);
+    }
+
+    try {
+      if (file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+      try (FileChannel ch =
+          FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        long start = ch.size();
+        ByteBuffer buf = ByteBuffer.allocate(FRAME_HEADER + frame.length);
+        buf.putInt(frame.length).put(frame).flip();
+        try {
+          while (buf.hasRemaining()) {
+            ch.write(buf, start + buf.position());
+          }
+          // Ссылки удаляются из хранилища только после того, как пакет надёжно записан
+          ch.force(false);
+        } catch (IOException e) {
+          ch.truncate(start);
+          throw e;
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось дописать архив: " + file.toAbsolutePath(), e);
+    }
+  }
+
+  // Записи в порядке архивации; limit <= 0 — без ограничения
+  public List<Entry> find(Predicate<Entry> filter, int limit) {
+    return scan(null, filter, limit);
+  }
+
+  // При сбое между записью пакета и удалением из хранилища ссылка может попасть в архив
+  // дважды — остаётся последняя запись
+  public Optional<Entry> findByCode(String code) {
+    List<Entry> all = scan(code, e -> e.link().code().equals(code), 0);
+    return all.isEmpty() ? Optional.empty() : Optional.of(all.get(all.size() - 1));
+  }
+
+  public List<Entry> findByOwner(String ownerUuid) {
+    Map<String, Entry> latest = new LinkedHashMap<>();
+    for (Entry e : scan(ownerUuid, e -> e.link().ownerUuid().equals(ownerUuid), 0)) {
+      latest.remove(e.link().code());
+      latest.put(e.link().code(), e);
+    }
+    return new ArrayList<>(latest.values());
+  }
+
+  public synchronized int count() {
+    int[] lines = {0};
+    forEachFrame(
+        data -> {
+          for (byte b : data) {
+            if (b == '\n') {
+              lines[0]++;
+            }
+          }
+          return true;
+        });
+    return lines[0];
+  }
+
+  // Каждая запись занимает одну строку, поэтому при поиске по значению поля строки без
+  // него отбрасываются по байтам, без разбора JSON
+  private synchronized List<Entry> scan(String needle, Predicate<Entry> filter, int limit) {
+    byte[] quoted = needle == null ? null : quotedOrNull(needle);
+    List<Entry> found = new ArrayList<>();
+    forEachFrame(
+        data -> {
+          int from = 0;
+          for (int i = 0; i < data.length; i++) {
+            if (data[i] != '\n') {
+              continue;
+            }
+            if (quoted == null || contains(data, from, i, quoted)) {
+              Entry e = reader.readValue(data, from, i - from);
+              if (filter.test(e)) {
+                found.add(e);
+                if (found.size() == limit) {
+                  return false;
+                }
+              }
+            }
+            from = i + 1;
+          }
+          return true;
+        });
+    return found;
+  }
+
+  private interface FrameVisitor {
+    // false — прекратить чтение
+    boolean visit(byte[] data) throws IOException;
+  }
+
+  private void forEachFrame(FrameVisitor visitor) {
+    if (!Files.exists(file)) {
+      return;
+    }
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+      long pos = 0;
+      long size = ch.size();
+      ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+      while (pos + FRAME_HEADER <= size) {
+        header.clear();
+        readFully(ch, header, pos);
+        int len = header.getInt(0);
+        ByteBuffer frame = ByteBuffer.allocate(len);
+        readFully(ch, frame, pos + FRAME_HEADER);
+        pos += FRAME_HEADER + len;
+
+        byte[] data;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(frame.array()), len)) {
+          data = in.readAllBytes();
+        }
+        if (!visitor.visit(data)) {
+          return;
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось прочитать архив: " + file.toAbsolutePath(), e);
+    }
+  }
+
+  // Значение в кавычках, как его запишет JSON; null, если JSON экранировал бы его символы
+  private static byte[] quotedOrNull(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x20 || c == '"' || c == '\\' || c > 0x7e) {
+        return null;
+      }
+    }
+    return ('"' + value + '"').getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static boolean contains(byte[] data, int from, int to, byte[] needle) {
+    outer:
+    for (int i = from; i <= to - needle.length; i++) {
+      for (int j = 0; j < needle.length; j++) {
+        if (data[i + j] != needle[j]) {
+          continue outer;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  private void trimTornTail() {
+    if (!Files.exists(file)) {
+      return;
+    }
+    try (FileChannel ch =
+        FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long pos = 0;
+      long size = ch.size();
+      ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+      while (pos + FRAME_HEADER <= size) {
+        header.clear();
+        readFully(ch, header, pos);
+        int len = header.getInt(0);
+        if (len < 0 || pos + FRAME_HEADER + len > size) {
+          break;
+        }
+        pos += FRAME_HEADER + len;
+      }
+      if (pos < size) {
+        System.out.println(
+            "Уведомление: отброшен незавершённый пакет в конце архива (" + (size - pos) + " байт)");
+        ch.truncate(pos);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось открыть архив: " + file.toAbsolutePath(), e);
+    }
+  }
+
+  private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+    while (buf.hasRemaining()) {
+      if (ch.read(buf, pos + buf.position()) < 0) {
+        throw new IOException("Неожиданный конец архива");
+      }
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import model.Link;
+
+// Ручной потоковый кодек Link без рефлексии. Поля пишутся в порядке компонентов record,
+// а Instant — строкой ISO-8601, как их записывал Jackson с JavaTimeModule, поэтому файлы
+// обоих форматов совпадают побайтно. Кодек не хранит состояния и переиспользуется.
+final class LinkCodec {
+
+  private static final SerializableString CODE = new SerializedString("code");
+  private static final SerializableString OWNER_UUID = new SerializedString("ownerUuid");
+  private static final SerializableString ORIGINAL_URL = new SerializedString("originalUrl");
+  private static final SerializableString SHORT_URL = new SerializedString("shortUrl");
+  private static final SerializableString MAX_CLICKS = new SerializedString("maxClicks");
+  private static final SerializableString CLICKS_DONE = new SerializedString("clicksDone");
+  private static final SerializableString CREATED_AT = new SerializedString("createdAt");
+  private static final SerializableString EXPIRES_AT = new SerializedString("expiresAt");
+
+  private static final long SECONDS_PER_DAY = 86_400;
+  private static final long MIN_FAST_EPOCH_DAY = LocalDate.of(0, 1, 1).toEpochDay();
+  private static final long MAX_FAST_EPOCH_DAY = LocalDate.of(9999, 12, 31).toEpochDay();
+
+  private LinkCodec() {}
+
+  static void write(JsonGenerator gen, Link link) throws IOException {
+    gen.writeStartObject();
+    gen.writeFieldName(CODE);
+    gen.writeString(link.code());
+    gen.writeFieldName(OWNER_UUID);
+    gen.writeString(link.ownerUuid());
+    gen.writeFieldName(ORIGINAL_URL);
+    gen.writeString(link.originalUrl());
+    gen.writeFieldName(SHORT_URL);
+    gen.writeString(link.shortUrl());
+    gen.writeFieldName(MAX_CLICKS);
+    gen.writeNumber(link.maxClicks());
+    gen.writeFieldName(CLICKS_DONE);
+    gen.writeNumber(link.clicksDone());
+    gen.writeFieldName(CREATED_AT);
+    writeInstant(gen, link.createdAt());
+    gen.writeFieldName(EXPIRES_AT);
+    writeInstant(gen, link.expiresAt());
+    gen.writeEndObject();
+  }
+
+  // Парсер стоит на START_OBJECT; после вызова — на END_OBJECT этой ссылки
+  static Link read(JsonParser p) throws IOException {
+    if (p.currentToken() != JsonToken.START_OBJECT) {
+      throw new JsonParseException(p, "Ожидался JSON-объект ссылки");
+    }
+    String code = null;
+    String ownerUuid = null;
+    String originalUrl = null;
+    String shortUrl = null;
+    int maxClicks = 0;
+    int clicksDone = 0;
+    Instant createdAt = null;
+    Instant expiresAt = null;
+
+    String name;
+    while ((name = p.nextFieldName()) != null) {
+      JsonToken value = p.nextToken();
+      switch (name) {
+        case "code" -> code = readString(p, value);
+        case "ownerUuid" -> ownerUuid = readString(p, value);
+        case "originalUrl" -> originalUrl = readString(p, value);
+        case "shortUrl" -> shortUrl = readString(p, value);
+        case "maxClicks" -> maxClicks = value == JsonToken.VALUE_NULL ? 0 : p.getValueAsInt();
+        case "clicksDone" -> clicksDone = value == JsonToken.VALUE_NULL ? 0 : p.getValueAsInt();
+        case "createdAt" -> createdAt = readInstant(p, value);
+        case "expiresAt" -> expiresAt = readInstant(p, value);
+        default -> p.skipChildren();
+      }
+    }
+    if (p.currentToken() != JsonToken.END_OBJECT) {
+      throw new JsonParseException(p, "Ожидалось имя поля ссылки");
+    }
+    return new Link(
+        code, ownerUuid, originalUrl, shortUrl, maxClicks, clicksDone, createdAt, expiresAt);
+  }
+
+  private static void writeInstant(JsonGenerator gen, Instant instant) throws IOException {
+    if (instant == null) {
+      gen.writeNull();
+    } else {
+      gen.writeString(formatInstant(instant));
+    }
+  }
+
+  // То же, что Instant.toString(), без DateTimeFormatter: секунды пишутся всегда, дробь —
+  // группами по 3 цифры. Годы вне 0000–9999 форматирует сам Instant
+  static String formatInstant(Instant instant) {
+    long seconds = instant.getEpochSecond();
+    long epochDay = Math.floorDiv(seconds, SECONDS_PER_DAY);
+    int secOfDay = (int) Math.floorMod(seconds, SECONDS_PER_DAY);
+    if (epochDay < MIN_FAST_EPOCH_DAY || epochDay > MAX_FAST_EPOCH_DAY) {
+      return instant.toString();
+    }
+    LocalDate date = LocalDate.ofEpochDay(epochDay);
+    int nanos = instant.getNano();
+    char[] buf = new char[30];
+    put(buf, 0, date.getYear(), 4);
+    buf[4] = '-';
+    put(buf, 5, date.getMonthValue(), 2);
+    buf[7] = '-';
+    put(buf, 8, date.getDayOfMonth(), 2);
+    buf[10] = 'T';
+    put(buf, 11, secOfDay / 3600, 2);
+    buf[13] = ':';
+    put(buf, 14, secOfDay / 60 % 60, 2);
+    buf[16] = ':';
+    put(buf, 17, secOfDay % 60, 2);
+    int len = 19;
+    if (nanos > 0) {
+      buf[len++] = '.';
+      if (nanos % 1_000_000 == 0) {
+        put(buf, len, nanos / 1_000_000, 3);
+        len += 3;
+      } else if (nanos % 1000 == 0) {
+        put(buf, len, nanos / 1000, 6);
+        len += 6;
+      } else {
+        put(buf, len, nanos, 9);
+        len += 9;
+      }
+    }
+    buf[len++] = 'Z';
+    return new String(buf, 0, len);
+  }
+
+  private static void put(char[] buf, int at, int value, int width) {
+    for (int i = at + width - 1; i >= at; i--) {
+      buf[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+  }
+
+  private static String readString(JsonParser p, JsonToken value) throws IOException {
+    return value == JsonToken.VALUE_NULL ? null : p.getValueAsString();
+  }
+
+  // Числа, как и JavaTimeModule, читаются как секунды эпохи с дробной частью
+  private static Instant readInstant(JsonParser p, JsonToken value) throws IOException {
+    try {
+      return switch (value) {
+        case VALUE_NULL -> null;
+        case VALUE_STRING -> parseInstant(p.getText());
+        case VALUE_NUMBER_INT -> Instant.ofEpochSecond(p.getLongValue());
+        case VALUE_NUMBER_FLOAT -> {
+          BigDecimal seconds = p.getDecimalValue();
+          long whole = seconds.longValue();
+          int nanos = seconds.subtract(BigDecimal.valueOf(whole)).movePointRight(9).intValue();
+          yield Instant.ofEpochSecond(whole, nanos);
+        }
+        default -> throw new JsonParseException(p, "Ожидалась дата в формате ISO-8601");
+      };
+    } catch (DateTimeException e) {
+      throw new JsonParseException(p, "Некорректная дата: " + p.getText(), e);
+    }
+  }
+
+  // Быстрый разбор того вида, в котором Instant записывает сам себя:
+  // yyyy-MM-ddTHH:mm:ss[.дробь]Z. Всё остальное разбирает Instant.parse.
+  static Instant parseInstant(String s) {
+    int len = s.length();
+    if (len < 20
+        || len > 30
+        || s.charAt(4) != '-'
+        || s.charAt(7) != '-'
+        || s.charAt(10) != 'T'
+        || s.charAt(13) != ':'
+        || s.charAt(16) != ':'
+        || s.charAt(len - 1) != 'Z') {
+      return Instant.parse(s);
+    }
+    int year = digits(s, 0, 4);
+    int month = digits(s, 5, 7);
+    int day = digits(s, 8, 10);
+    int hour = digits(s, 11, 13);
+    int minute = digits(s, 14, 16);
+    int second = digits(s, 17, 19);
+    int nanos = 0;
+    if (len > 20) {
+      int fraction = len - 21;
+      if (s.charAt(19) != '.' || fraction < 1 || fraction > 9) {
+        return Instant.parse(s);
+      }
+      nanos = digits(s, 20, len - 1);
+      for (int i = fraction; i < 9; i++) {
+        nanos *= 10;
+      }
+    }
+    if ((year | month | day | hour | minute | second | nanos) < 0
+        || hour > 23
+        || minute > 59
+        || second > 59) {
+      return Instant.parse(s);
+    }
+    long epochDay = LocalDate.of(year, month, day).toEpochDay();
+    return Instant.ofEpochSecond(
+        epochDay * SECONDS_PER_DAY + hour * 3600L + minute * 60L + second, nanos);
+  }
+
+  // -1, если в диапазоне есть не цифра
+  private static int digits(String s, int from, int to) {
+    int v = 0;
+    for (int i = from; i < to; i++) {
+      int d = s.charAt(i) - '0';
+      if (d < 0 || d > 9) {
+        return -1;
+      }
+      v = v * 10 + d;
+    }
+    return v;
+  }
+}
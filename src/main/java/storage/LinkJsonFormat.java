@@ -0,0 +1,112 @@
+package storage;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import model.Link;
+
+public final class LinkJsonFormat {
+
+  private static final Comparator<Link> NEWEST_FIRST =
+      Comparator.comparing(Link::createdAt).reversed();
+
+  // Фабрика потокобезопасна после настройки, одна на все экземпляры формата
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  private volatile ObjectMapper mapper;
+
+  // Маппер нужен только журналу и архиву для их записей; Link в них кодирует тот же
+  // LinkCodec, а сам маппер создаётся при первом обращении, чтобы не замедлять запуск
+  ObjectMapper mapper() {
+    ObjectMapper m = mapper;
+    if (m == null) {
+      synchronized (this) {
+        m = mapper;
+        if (m == null) {
+          m = new ObjectMapper();
+          m.registerModule(new JavaTimeModule());
+          m.registerModule(linkModule());
+          m.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+          mapper = m;
+        }
+      }
+    }
+    return m;
+  }
+
+  public int write(OutputStream out, Collection<Link> links) throws IOException {
+    List<Link> sorted = new ArrayList<>(links);
+    sorted.sort(NEWEST_FIRST);
+    try (JsonGenerator gen = FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+      gen.setPrettyPrinter(new DefaultPrettyPrinter());
+      gen.writeStartArray();
+      for (Link l : sorted) {
+        LinkCodec.write(gen, l);
+      }
+      gen.writeEndArray();
+    }
+    return sorted.size();
+  }
+
+  public void read(InputStream in, int batchSize, Consumer<List<Link>> sink) throws IOException {
+    try (JsonParser parser = FACTORY.createParser(in)) {
+      if (parser.nextToken() == null) {
+        return;
+      }
+      if (parser.currentToken() != JsonToken.START_ARRAY) {
+        throw new IOException("Ожидался JSON-массив ссылок");
+      }
+
+      List<Link> batch = new ArrayList<>(batchSize);
+      while (parser.nextToken() == JsonToken.START_OBJECT) {
+        batch.add(LinkCodec.read(parser));
+        if (batch.size() == batchSize) {
+          sink.accept(batch);
+          batch = new ArrayList<>(batchSize);
+        }
+      }
+      sink.accept(batch);
+    }
+  }
+
+  private static SimpleModule linkModule() {
+    SimpleModule module = new SimpleModule("link-codec");
+    module.addSerializer(
+        Link.class,
+        new JsonSerializer<>() {
+          @Override
+          public void serialize(Link link, JsonGenerator gen, SerializerProvider provider)
+              throws IOException {
+            LinkCodec.write(gen, link);
+          }
+        });
+    module.addDeserializer(
+        Link.class,
+        new JsonDeserializer<>() {
+          @Override
+          public Link deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return LinkCodec.read(p);
+          }
+        });
+    return module;
+  }
+}
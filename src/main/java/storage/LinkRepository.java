@@ -1,12 +1,44 @@
 package storage;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import model.Link;
 
 public interface LinkRepository {
   void save(Link link);
 
+  // Пакетные изменения применяются атомарно: одна блокировка и одна запись на вызов
+  void saveAll(Collection<Link> links);
+
+  // Атомарно добавляет ссылку, только если её код свободен; false — код уже занят
+  boolean saveIfAbsent(Link link);
+
+  // Пакетный saveIfAbsent: одна блокировка и одна запись на вызов. Сохраняет ссылки со
+  // свободными кодами и возвращает те, чьи коды уже заняты
+  List<Link> saveAllIfAbsent(Collection<Link> links);
+
+  void deleteAll(Collection<String> codes);
+
+  // Атомарно удаляет ссылки, текущее состояние которых удовлетворяет условию; возвращает
+  // удалённые в том виде, в каком они были в момент удаления
+  default List<Link> deleteIf(Collection<String> codes, Predicate<Link> condition) {
+    return deleteIf(codes, condition, removed -> {});
+  }
+
+  // То же, но beforeDelete получает отобранные ссылки до удаления, под той же блокировкой
+  // (в той же транзакции). Исключение из beforeDelete отменяет удаление целиком
+  List<Link> deleteIf(
+      Collection<String> codes, Predicate<Link> condition, Consumer<List<Link>> beforeDelete);
+
+  // fn получает текущую ссылку и возвращает новую с тем же кодом (или ту же, если менять нечего)
+  Optional<Link> update(String code, UnaryOperator<Link> fn);
+
   Optional<Link> findByCode(String code);
 
   List<Link> findByOwner(String ownerUuid);
@@ -14,4 +46,33 @@ public interface LinkRepository {
   void deleteByCode(String code);
 
   List<Link> findAll();
+
+  List<Link> findByOwnerAndUrl(String ownerUuid, String originalUrl);
+
+  // Неизменяемый согласованный снимок всех ссылок на момент вызова
+  LinkSnapshot snapshot();
+
+  // Потоковый обход снимка без промежуточного списка
+  default void forEach(Consumer<? super Link> action) {
+    snapshot().forEach(action);
+  }
+
+  // Делится по частям снимка: StreamSupport.stream(repo.spliterator(), true) обходит его
+  // параллельно
+  default Spliterator<Link> spliterator() {
+    return snapshot().spliterator();
+  }
+
+  List<Link> findByCodePrefix(String prefix, int limit);
+
+  // Ссылки на хост по индексу; пусто, если индекса хостов нет и нужно сканировать всё
+  default Optional<List<Link>> findByHost(String host) {
+    return Optional.empty();
+  }
+
+  int count();
+
+  boolean incrementClicks(String code);
+
+  List<Link> deleteExpired(Instant now);
 }
@@ -0,0 +1,414 @@
+package storage;
+
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import model.Link;
+
+// Неизменяемый снимок ссылок: постоянное хеш-дерево (HAMT) по коду с ветвлением 32.
+// Изменение копирует только путь от корня до листа, остальные узлы общие со старыми
+// снимками, поэтому снимок берётся за O(1), а обход не копирует ссылки и не мешает записи.
+public final class LinkSnapshot extends AbstractCollection<Link> {
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+  // На этой глубине биты хеша кончаются: коды с одинаковым хешем лежат в одном узле списком
+  private static final int HASH_BITS = 32;
+
+  static final LinkSnapshot EMPTY = new LinkSnapshot(Node.EMPTY, 0, 0);
+
+  private final Node root;
+  private final int size;
+  private final long version;
+
+  private LinkSnapshot(Node root, int size, long version) {
+    this.root = root;
+    this.size = size;
+    this.version = version;
+  }
+
+  public static LinkSnapshot of(Collection<Link> links) {
+    Editor editor = EMPTY.edit();
+    for (Link l : links) {
+      editor.put(l);
+    }
+    return editor.snapshot();
+  }
+
+  // Растёт с каждым опубликованным изменением хранилища
+  public long version() {
+    return version;
+  }
+
+  public Link get(String code) {
+    return root.get(code, hash(code), 0);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof Link l && l.equals(get(l.code()));
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Iterator<Link> iterator() {
+    return new Iter(root);
+  }
+
+  @Override
+  public void forEach(Consumer<? super Link> action) {
+    root.forEach(action);
+  }
+
+  // Делится по поддеревьям, поэтому parallelStream() раздаёт потокам части дерева без копий
+  @Override
+  public Spliterator<Link> spliterator() {
+    return new Split(root, size);
+  }
+
+  Editor edit() {
+    return new Editor(this);
+  }
+
+  // Изменяет снимок пакетами. Узлы, созданные редактором после последнего snapshot(), ещё
+  // никому не видны и меняются на месте; опубликованные узлы копируются по пути записи.
+  // Не потокобезопасен: хранилище вызывает его под своей блокировкой.
+  static final class Editor {
+    private Object token = new Object();
+    private Node root;
+    private int size;
+    private long version;
+    private LinkSnapshot last;
+
+    private Editor(LinkSnapshot from) {
+      this.root = from.root;
+      this.size = from.size;
+      this.version = from.version;
+      this.last = from;
+    }
+
+    Link get(String code) {
+      return root.get(code, hash(code), 0);
+    }
+
+    int size() {
+      return size;
+    }
+
+    // Возвращает заменённую ссылку или null
+    Link put(Link link) {
+      Link[] old = new Link[1];
+      root = root.put(link, hash(link.code()), 0, token, old);
+      if (old[0] == null) {
+        size++;
+      }
+      last = null;
+      return old[0];
+    }
+
+    // Возвращает удалённую ссылку или null
+    Link remove(String code) {
+      Link[] old = new Link[1];
+      Node n = root.remove(code, hash(code), 0, token, old);
+      if (old[0] == null) {
+        return null;
+      }
+      root = n == null ? Node.EMPTY : n;
+      size--;
+      last = null;
+      return old[0];
+    }
+
+    // Текущее состояние как неизменяемый снимок; после вызова узлы снова копируются при записи
+    LinkSnapshot snapshot() {
+      if (last == null) {
+        token = new Object();
+        last = new LinkSnapshot(root, size, ++version);
+      }
+      return last;
+    }
+  }
+
+  private static int hash(String code) {
+    int h = code.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  // Узел с битовой картой: slots содержит ссылки и дочерние узлы в порядке битов. На глубине
+  // HASH_BITS карта не используется, а slots — список ссылок с одинаковым хешем
+  private static final class Node {
+    static final Node EMPTY = new Node(0, new Object[0], null);
+
+    private int bitmap;
+    private Object[] slots;
+    private final Object owner;
+
+    Node(int bitmap, Object[] slots, Object owner) {
+      this.bitmap = bitmap;
+      this.slots = slots;
+      this.owner = owner;
+    }
+
+    Link get(String code, int hash, int shift) {
+      Node n = this;
+      while (shift < HASH_BITS) {
+        int bit = 1 << ((hash >>> shift) & MASK);
+        if ((n.bitmap & bit) == 0) {
+          return null;
+        }
+        Object s = n.slots[Integer.bitCount(n.bitmap & (bit - 1))];
+        if (s instanceof Link l) {
+          return l.code().equals(code) ? l : null;
+        }
+        n = (Node) s;
+        shift += BITS;
+      }
+      for (Object s : n.slots) {
+        if (((Link) s).code().equals(code)) {
+          return (Link) s;
+        }
+      }
+      return null;
+    }
+
+    Node put(Link link, int hash, int shift, Object token, Link[] old) {
+      if (shift >= HASH_BITS) {
+        for (int i = 0; i < slots.length; i++) {
+          if (((Link) slots[i]).code().equals(link.code())) {
+            old[0] = (Link) slots[i];
+            return with(i, link, token);
+          }
+        }
+        return inserted(slots.length, 0, link, token);
+      }
+      int bit = 1 << ((hash >>> shift) & MASK);
+      int idx = Integer.bitCount(bitmap & (bit - 1));
+      if ((bitmap & bit) == 0) {
+        return inserted(idx, bit, link, token);
+      }
+      Object s = slots[idx];
+      if (s instanceof Node child) {
+        Node n = child.put(link, hash, shift + BITS, token, old);
+        return n == child ? this : with(idx, n, token);
+      }
+      Link existing = (Link) s;
+      if (existing.code().equals(link.code())) {
+        old[0] = existing;
+        return with(idx, link, token);
+      }
+      Node pair =
+          new Node(0, new Object[0], token)
+              .put(existing, hash(existing.code()), shift + BITS, token, old)
+              .put(link, hash, shift + BITS, token, old);
+      return with(idx, pair, token);
+    }
+
+    // null — узел опустел
+    Node remove(String code, int hash, int shift, Object token, Link[] old) {
+      if (shift >= HASH_BITS) {
+        for (int i = 0; i < slots.length; i++) {
+          if (((Link) slots[i]).code().equals(code)) {
+            old[0] = (Link) slots[i];
+            return slots.length == 1 ? null : removed(i, 0, token);
+          }
+        }
+        return this;
+      }
+      int bit = 1 << ((hash >>> shift) & MASK);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int idx = Integer.bitCount(bitmap & (bit - 1));
+      Object s = slots[idx];
+      if (s instanceof Node child) {
+        Node n = child.remove(code, hash, shift + BITS, token, old);
+        if (n == child) {
+          return this;
+        }
+        if (n == null) {
+          return slots.length == 1 ? null : removed(idx, bit, token);
+        }
+        // Поддерево из одной ссылки поднимается на место узла
+        return with(idx, n.slots.length == 1 && n.slots[0] instanceof Link l ? l : n, token);
+      }
+      if (!((Link) s).code().equals(code)) {
+        return this;
+      }
+      old[0] = (Link) s;
+      return slots.length == 1 ? null : removed(idx, bit, token);
+    }
+
+    void forEach(Consumer<? super Link> action) {
+      for (Object s : slots) {
+        if (s instanceof Link l) {
+          action.accept(l);
+        } else {
+          ((Node) s).forEach(action);
+        }
+      }
+    }
+
+    private Node editable(Object token) {
+      return owner == token ? this : new Node(bitmap, slots.clone(), token);
+    }
+
+    private Node with(int idx, Object value, Object token) {
+      Node n = editable(token);
+      n.slots[idx] = value;
+      return n;
+    }
+
+    private Node inserted(int idx, int bit, Object value, Object token) {
+      Object[] next = new Object[slots.length + 1];
+      System.arraycopy(slots, 0, next, 0, idx);
+      next[idx] = value;
+      System.arraycopy(slots, idx, next, idx + 1, slots.length - idx);
+      if (owner == token) {
+        bitmap |= bit;
+        slots = next;
+        return this;
+      }
+      return new Node(bitmap | bit, next, token);
+    }
+
+    private Node removed(int idx, int bit, Object token) {
+      Object[] next = new Object[slots.length - 1];
+      System.arraycopy(slots, 0, next, 0, idx);
+      System.arraycopy(slots, idx + 1, next, idx, next.length - idx);
+      if (owner == token) {
+        bitmap &= ~bit;
+        slots = next;
+        return this;
+      }
+      return new Node(bitmap & ~bit, next, token);
+    }
+  }
+
+  // Обход в глубину со стеком массивов узлов: глубина дерева не больше 8 уровней
+  private static final class Iter implements Iterator<Link> {
+    private final Object[][] arrays = new Object[HASH_BITS / BITS + 2][];
+    private final int[] positions = new int[arrays.length];
+    private int depth;
+    private Link next;
+
+    Iter(Node root) {
+      arrays[0] = root.slots;
+      advance();
+    }
+
+    private void advance() {
+      next = null;
+      while (depth >= 0) {
+        Object[] slots = arrays[depth];
+        if (positions[depth] == slots.length) {
+          depth--;
+          continue;
+        }
+        Object s = slots[positions[depth]++];
+        if (s instanceof Link l) {
+          next = l;
+          return;
+        }
+        depth++;
+        arrays[depth] = ((Node) s).slots;
+        positions[depth] = 0;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Link next() {
+      Link l = next;
+      if (l == null) {
+        throw new NoSuchElementException();
+      }
+      advance();
+      return l;
+    }
+  }
+
+  // Обходит очередь из ссылок и ещё не раскрытых поддеревьев; trySplit отдаёт половину очереди
+  private static final class Split implements Spliterator<Link> {
+    private final ArrayDeque<Object> pending = new ArrayDeque<>();
+    private long estimate;
+
+    Split(Node root, long estimate) {
+      pending.add(root);
+      this.estimate = estimate;
+    }
+
+    private Split(long estimate) {
+      this.estimate = estimate;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Link> action) {
+      Object next;
+      while ((next = pending.pollFirst()) != null) {
+        if (next instanceof Link l) {
+          action.accept(l);
+          return true;
+        }
+        Object[] slots = ((Node) next).slots;
+        for (int i = slots.length - 1; i >= 0; i--) {
+          pending.addFirst(slots[i]);
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Link> action) {
+      Object next;
+      while ((next = pending.pollFirst()) != null) {
+        if (next instanceof Link l) {
+          action.accept(l);
+        } else {
+          ((Node) next).forEach(action);
+        }
+      }
+    }
+
+    @Override
+    public Spliterator<Link> trySplit() {
+      while (pending.size() == 1 && pending.peekFirst() instanceof Node n) {
+        pending.pollFirst();
+        for (Object s : n.slots) {
+          pending.addLast(s);
+        }
+      }
+      int half = pending.size() / 2;
+      if (half == 0) {
+        return null;
+      }
+      Split prefix = new Split(estimate / 2);
+      for (int i = 0; i < half; i++) {
+        prefix.pending.addLast(pending.pollFirst());
+      }
+      estimate -= prefix.estimate;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+      return DISTINCT | NONNULL | IMMUTABLE;
+    }
+  }
+}
@@ -0,0 +1,248 @@
+package storage;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import model.Link;
+
+// Журнал изменений общего хранилища: заголовок с номером поколения и строки JSON,
+// по одной на изменённую ссылку. Процессы дописывают его под блокировкой файла, а
+// остальные читают только хвост после своего смещения. При сжатии состояние уходит в
+// основной файл, журнал обрезается, а поколение увеличивается.
+final class SharedJournal implements AutoCloseable {
+  private static final String HEADER_PREFIX = "#shortlink-journal ";
+  private static final int HEADER_SIZE = HEADER_PREFIX.length() + 20 + 1;
+
+  // FileChannel.lock() действует на процесс целиком: потоки и экземпляры внутри одной JVM
+  // дополнительно упорядочиваются своей блокировкой на каждый путь. Блокировка живёт, пока
+  // путь открыт хотя бы одним журналом
+  private static final Map<Path, JvmLock> JVM_LOCKS = new ConcurrentHashMap<>();
+
+  // users меняется только внутри compute по своему ключу
+  private static final class JvmLock extends ReentrantLock {
+    int users;
+  }
+
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  record Entry(Link put, String del) {
+    static Entry put(Link link) {
+      return new Entry(link, null);
+    }
+
+    static Entry delete(String code) {
+      return new Entry(null, code);
+    }
+  }
+
+  private final Path path;
+  private final Path lockKey;
+  private final ObjectMapper mapper;
+  private final FileChannel channel;
+  private final JvmLock jvmLock;
+
+  private FileLock fileLock;
+  private boolean closed;
+  // Пишутся под блокировкой репозитория, читаются в hasChanges() без неё
+  private volatile long generation = -1;
+  private volatile long offset;
+
+  SharedJournal(Path path, ObjectMapper mapper) {
+    this.path = path;
+    this.mapper = mapper;
+    this.lockKey = path.toAbsolutePath().normalize();
+    try {
+      this.channel =
+          FileChannel.open(
+              path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw failure("открыть журнал", e);
+    }
+    this.jvmLock =
+        JVM_LOCKS.compute(
+            lockKey,
+            (p, l) -> {
+              JvmLock lock = l != null ? l : new JvmLock();
+              lock.users++;
+              return lock;
+            });
+  }
+
+  void lock() {
+    jvmLock.lock();
+    try {
+      fileLock = channel.lock();
+    } catch (IOException e) {
+      jvmLock.unlock();
+      throw failure("заблокировать журнал", e);
+    }
+  }
+
+  void unlock() {
+    try {
+      fileLock.release();
+    } catch (IOException e) {
+      throw failure("снять блокировку журнала", e);
+    } finally {
+      fileLock = null;
+      jvmLock.unlock();
+    }
+  }
+
+  // Дешёвая проверка без блокировки: сменилось поколение или кто-то дописал журнал
+  boolean hasChanges() {
+    try {
+      return readGeneration() != generation || channel.size() > offset;
+    } catch (IOException e) {
+      throw failure("прочитать журнал", e);
+    }
+  }
+
+  // Под lock(): перечитать журнал с начала, создав его при необходимости
+  List<Entry> readAll() {
+    try {
+      generation = readGeneration();
+      if (generation == 0) {
+        generation = 1;
+        writeHeader();
+      }
+      offset = HEADER_SIZE;
+      return readNew();
+    } catch (IOException e) {
+      throw failure("прочитать журнал", e);
+    }
+  }
+
+  // Новые записи после своего смещения; null — журнал сжат и нужно перечитать всё под lock()
+  List<Entry> readNew() {
+    try {
+      long gen = readGeneration();
+      if (gen != generation) {
+        return null;
+      }
+      long size = channel.size();
+      if (size <= offset) {
+        return List.of();
+      }
+
+      ByteBuffer buf = ByteBuffer.allocate(Math.toIntExact(size - offset));
+      while (buf.hasRemaining() && channel.read(buf, offset + buf.position()) > 0) {
+        // читаем до конца
+      }
+      if (readGeneration() != gen) {
+        return null;
+      }
+
+      // Строка, которую другой процесс ещё дописывает, будет прочитана в следующий раз
+      byte[] bytes = buf.array();
+      int end = buf.position();
+      while (end > 0 && bytes[end - 1] != '\n') {
+        end--;
+      }
+      List<Entry> entries = new ArrayList<>();
+      int start = 0;
+      for (int i = 0; i < end; i++) {
+        if (bytes[i] == '\n') {
+          if (i > start) {
+            entries.add(mapper.readValue(bytes, start, i - start, Entry.class));
+          }
+          start = i + 1;
+        }
+      }
+      offset += end;
+      return entries;
+    } catch (IOException e) {
+      throw failure("прочитать журнал", e);
+    }
+  }
+
+  // Под lock() и после readNew(): смещение совпадает с концом файла
+  void append(List<Entry> entries) {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(256 * entries.size());
+      for (Entry e : entries) {
+        out.write(mapper.writeValueAsBytes(e));
+        out.write('\n');
+      }
+      ByteBuffer buf = ByteBuffer.wrap(out.toByteArray());
+      while (buf.hasRemaining()) {
+        offset += channel.write(buf, offset);
+      }
+    } catch (IOException e) {
+      throw failure("дописать журнал", e);
+    }
+  }
+
+  // Открыт ли в JVM хотя бы один журнал по этому пути
+  static boolean isOpen(Path path) {
+    return JVM_LOCKS.containsKey(path.toAbsolutePath().normalize());
+  }
+
+  long size() {
+    return offset;
+  }
+
+  // Под lock(): основной файл уже содержит всё состояние
+  void reset() {
+    try {
+      channel.truncate(0);
+      generation++;
+      writeHeader();
+      offset = HEADER_SIZE;
+    } catch (IOException e) {
+      throw failure("сжать журнал", e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    JVM_LOCKS.computeIfPresent(lockKey, (p, l) -> --l.users == 0 ? null : l);
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw failure("закрыть журнал", e);
+    }
+  }
+
+  private long readGeneration() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+      // читаем заголовок целиком
+    }
+    if (header.hasRemaining()) {
+      return 0;
+    }
+    String s = new String(header.array(), StandardCharsets.US_ASCII);
+    if (!s.startsWith(HEADER_PREFIX)) {
+      throw new IOException("Некорректный заголовок журнала");
+    }
+    return Long.parseLong(s.substring(HEADER_PREFIX.length(), HEADER_SIZE - 1));
+  }
+
+  private void writeHeader() throws IOException {
+    String s = HEADER_PREFIX + String.format("%020d", generation) + "\n";
+    ByteBuffer buf = ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII));
+    while (buf.hasRemaining()) {
+      channel.write(buf, buf.position());
+    }
+  }
+
+  private IllegalStateException failure(String action, IOException e) {
+    return new IllegalStateException("Не удалось " + action + ": " + path.toAbsolutePath(), e);
+  }
+}
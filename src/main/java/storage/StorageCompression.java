@@ -0,0 +1,99 @@
+package storage;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+public enum StorageCompression {
+  NONE,
+  GZIP,
+  DEFLATE;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  public static StorageCompression fromName(String name) {
+    if (name == null || name.isBlank()) {
+      return NONE;
+    }
+    try {
+      return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Неизвестный формат сжатия хранилища: " + name);
+    }
+  }
+
+  public static void validateLevel(int level) {
+    if (level != Deflater.DEFAULT_COMPRESSION
+        && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+      throw new IllegalArgumentException("Уровень сжатия должен быть от -1 до 9: " + level);
+    }
+  }
+
+  public OutputStream wrap(OutputStream out, int level) throws IOException {
+    return switch (this) {
+      case NONE -> out;
+      case GZIP ->
+          new GZIPOutputStream(out, BUFFER_SIZE) {
+            {
+              def.setLevel(level);
+            }
+          };
+      case DEFLATE ->
+          new DeflaterOutputStream(out, new Deflater(level), BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+              try {
+                super.close();
+              } finally {
+                def.end();
+              }
+            }
+          };
+    };
+  }
+
+  InputStream wrap(InputStream in) throws IOException {
+    return switch (this) {
+      case NONE -> in;
+      case GZIP -> new GZIPInputStream(in, BUFFER_SIZE);
+      case DEFLATE -> {
+        // Свой Inflater нужен, чтобы задать размер буфера; освобождаем его сами, как и Deflater
+        Inflater inf = new Inflater();
+        yield new InflaterInputStream(in, inf, BUFFER_SIZE) {
+          @Override
+          public void close() throws IOException {
+            try {
+              super.close();
+            } finally {
+              inf.end();
+            }
+          }
+        };
+      }
+    };
+  }
+
+  static StorageCompression detect(BufferedInputStream in) throws IOException {
+    in.mark(2);
+    int b0 = in.read();
+    int b1 = in.read();
+    in.reset();
+
+    if (b0 == 0x1f && b1 == 0x8b) {
+      return GZIP;
+    }
+    // zlib header: CM=8 в младших битах первого байта, контрольная сумма кратна 31
+    if (b0 >= 0 && b1 >= 0 && (b0 & 0x0f) == 8 && ((b0 << 8) | b1) % 31 == 0) {
+      return DEFLATE;
+    }
+    return NONE;
+  }
+}
@@ -0,0 +1,60 @@
+package storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Словарь различных URL: каждая строка хранится один раз, ссылки делят один экземпляр.
+// Заодно индексирует коды по паре (владелец, URL) для повторного использования ссылок.
+// Не потокобезопасен: вызывается под блокировкой репозитория.
+final class UrlDictionary {
+
+  private static final class Entry {
+    final String url;
+    final Map<String, List<String>> codesByOwner = new HashMap<>(2);
+    int refs;
+
+    Entry(String url) {
+      this.url = url;
+    }
+  }
+
+  private final Map<String, Entry> byUrl = new HashMap<>();
+
+  String acquire(String url, String ownerUuid, String code) {
+    Entry e = byUrl.computeIfAbsent(url, Entry::new);
+    e.codesByOwner.computeIfAbsent(ownerUuid, o -> new ArrayList<>(1)).add(code);
+    e.refs++;
+    return e.url;
+  }
+
+  void release(String url, String ownerUuid, String code) {
+    Entry e = byUrl.get(url);
+    if (e == null) {
+      return;
+    }
+    List<String> codes = e.codesByOwner.get(ownerUuid);
+    if (codes == null || !codes.remove(code)) {
+      return;
+    }
+    if (codes.isEmpty()) {
+      e.codesByOwner.remove(ownerUuid);
+    }
+    if (--e.refs == 0) {
+      byUrl.remove(url);
+    }
+  }
+
+  List<String> codes(String url, String ownerUuid) {
+    Entry e = byUrl.get(url);
+    if (e == null) {
+      return List.of();
+    }
+    return List.copyOf(e.codesByOwner.getOrDefault(ownerUuid, List.of()));
+  }
+
+  int size() {
+    return byUrl.size();
+  }
+}
@@ -0,0 +1,14 @@
+package util;
+
+import java.util.regex.Pattern;
+
+public class AliasValidator {
+  private static final Pattern ALIAS = Pattern.compile("[0-9A-Za-z_-]{3,32}");
+
+  public static void validate(String alias) {
+    if (alias == null || !ALIAS.matcher(alias).matches()) {
+      throw new IllegalArgumentException(
+          "Псевдоним должен содержать от 3 до 32 символов: латинские буквы, цифры, '-' или '_'");
+    }
+  }
+}
@@ -14,6 +14,32 @@ public class Config {
   private final String storageFile;
   private final String userUuidFile;
   private final Duration cleanupInterval;
+  private final String storageCompression;
+  private final int storageCompressionLevel;
+  private final String storageBackend;
+  private final String databaseFile;
+  private final boolean warmStart;
+  private final int serverPort;
+  private final int serverWorkers;
+  private final String clusterNodeId;
+  private final String clusterNodes;
+  private final boolean dedupPerOwner;
+  private final boolean storageShared;
+  private final double createRatePerSecond;
+  private final int createBurst;
+  private final double resolveRatePerSecond;
+  private final int resolveBurst;
+  private final String asyncExecutor;
+  private final int asyncThreads;
+  private final int asyncMaxInFlight;
+  private final Duration asyncTimeout;
+  private final boolean reclaimExhausted;
+  private final int reclaimIdleDays;
+  private final int reclaimBatchSize;
+  private final Duration reclaimInterval;
+  private final String archiveFile;
+  private final String traceFile;
+  private final boolean queryHostIndex;
 
   private Config(
       Duration ttl,
@@ -21,13 +47,65 @@ public class Config {
       String baseUrl,
       String storageFile,
       String userUuidFile,
-      Duration cleanupInterval) {
+      Duration cleanupInterval,
+      String storageCompression,
+      int storageCompressionLevel,
+      String storageBackend,
+      String databaseFile,
+      boolean warmStart,
+      int serverPort,
+      int serverWorkers,
+      String clusterNodeId,
+      String clusterNodes,
+      boolean dedupPerOwner,
+      boolean storageShared,
+      double createRatePerSecond,
+      int createBurst,
+      double resolveRatePerSecond,
+      int resolveBurst,
+      String asyncExecutor,
+      int asyncThreads,
+      int asyncMaxInFlight,
+      Duration asyncTimeout,
+      boolean reclaimExhausted,
+      int reclaimIdleDays,
+      int reclaimBatchSize,
+      Duration reclaimInterval,
+      String archiveFile,
+      String traceFile,
+      boolean queryHostIndex) {
     this.ttl = ttl;
     this.defaultMaxClicks = defaultMaxClicks;
     this.baseUrl = baseUrl;
     this.storageFile = storageFile;
     this.userUuidFile = userUuidFile;
     this.cleanupInterval = cleanupInterval;
+    this.storageCompression = storageCompression;
+    this.storageCompressionLevel = storageCompressionLevel;
+    this.storageBackend = storageBackend;
+    this.databaseFile = databaseFile;
+    this.warmStart = warmStart;
+    this.serverPort = serverPort;
+    this.serverWorkers = serverWorkers;
+    this.clusterNodeId = clusterNodeId;
+    this.clusterNodes = clusterNodes;
+    this.dedupPerOwner = dedupPerOwner;
+    this.storageShared = storageShared;
+    this.createRatePerSecond = createRatePerSecond;
+    this.createBurst = createBurst;
+    this.resolveRatePerSecond = resolveRatePerSecond;
+    this.resolveBurst = resolveBurst;
+    this.asyncExecutor = asyncExecutor;
+    this.asyncThreads = asyncThreads;
+    this.asyncMaxInFlight = asyncMaxInFlight;
+    this.asyncTimeout = asyncTimeout;
+    this.reclaimExhausted = reclaimExhausted;
+    this.reclaimIdleDays = reclaimIdleDays;
+    this.reclaimBatchSize = reclaimBatchSize;
+    this.reclaimInterval = reclaimInterval;
+    this.archiveFile = archiveFile;
+    this.traceFile = traceFile;
+    this.queryHostIndex = queryHostIndex;
   }
 
   public static Config load(Path path) {
@@ -45,8 +123,68 @@ public class Config {
     String userUuidFile = p.getProperty("userUuidFile", "data/user.uuid");
     Duration cleanupInterval =
         Duration.ofSeconds(Long.parseLong(p.getProperty("cleanupIntervalSeconds", "30")));
+    String storageCompression = p.getProperty("storageCompression", "none");
+    int storageCompressionLevel = Integer.parseInt(p.getProperty("storageCompressionLevel", "6"));
+    String storageBackend = p.getProperty("storageBackend", "file");
+    String databaseFile = p.getProperty("databaseFile", "data/links");
+    boolean warmStart = Boolean.parseBoolean(p.getProperty("warmStart", "false"));
+    int serverPort = Integer.parseInt(p.getProperty("serverPort", "0"));
+    int serverWorkers = Integer.parseInt(p.getProperty("serverWorkers", "4"));
+    String clusterNodeId = p.getProperty("clusterNodeId", "").trim();
+    String clusterNodes = p.getProperty("clusterNodes", "").trim();
+    boolean dedupPerOwner = Boolean.parseBoolean(p.getProperty("dedupPerOwner", "false"));
+    boolean storageShared = Boolean.parseBoolean(p.getProperty("storageShared", "false"));
+    double createRatePerSecond = Double.parseDouble(p.getProperty("createRatePerSecond", "0"));
+    int createBurst = Integer.parseInt(p.getProperty("createBurst", "20"));
+    double resolveRatePerSecond = Double.parseDouble(p.getProperty("resolveRatePerSecond", "0"));
+    int resolveBurst = Integer.parseInt(p.getProperty("resolveBurst", "100"));
+    String asyncExecutor = p.getProperty("asyncExecutor", "bounded").trim();
+    int asyncThreads = Integer.parseInt(p.getProperty("asyncThreads", "8"));
+    int asyncMaxInFlight = Integer.parseInt(p.getProperty("asyncMaxInFlight", "256"));
+    Duration asyncTimeout =
+        Duration.ofMillis(Long.parseLong(p.getProperty("asyncTimeoutMillis", "5000")));
+    boolean reclaimExhausted = Boolean.parseBoolean(p.getProperty("reclaimExhausted", "true"));
+    int reclaimIdleDays = Integer.parseInt(p.getProperty("reclaimIdleDays", "0"));
+    int reclaimBatchSize = Integer.parseInt(p.getProperty("reclaimBatchSize", "500"));
+    Duration reclaimInterval =
+        Duration.ofSeconds(Long.parseLong(p.getProperty("reclaimIntervalSeconds", "300")));
+    String archiveFile = p.getProperty("archiveFile", "data/archive.bin");
+    String traceFile = p.getProperty("traceFile", "").trim();
+    boolean queryHostIndex = Boolean.parseBoolean(p.getProperty("queryHostIndex", "false"));
 
-    return new Config(ttl, defaultMaxClicks, baseUrl, storageFile, userUuidFile, cleanupInterval);
+    return new Config(
+        ttl,
+        defaultMaxClicks,
+        baseUrl,
+        storageFile,
+        userUuidFile,
+        cleanupInterval,
+        storageCompression,
+        storageCompressionLevel,
+        storageBackend,
+        databaseFile,
+        warmStart,
+        serverPort,
+        serverWorkers,
+        clusterNodeId,
+        clusterNodes,
+        dedupPerOwner,
+        storageShared,
+        createRatePerSecond,
+        createBurst,
+        resolveRatePerSecond,
+        resolveBurst,
+        asyncExecutor,
+        asyncThreads,
+        asyncMaxInFlight,
+        asyncTimeout,
+        reclaimExhausted,
+        reclaimIdleDays,
+        reclaimBatchSize,
+        reclaimInterval,
+        archiveFile,
+        traceFile,
+        queryHostIndex);
   }
 
   public Duration ttl() {
@@ -72,4 +210,108 @@ public class Config {
   public Duration cleanupInterval() {
     return cleanupInterval;
   }
+
+  public String storageCompression() {
+    return storageCompression;
+  }
+
+  public int storageCompressionLevel() {
+    return storageCompressionLevel;
+  }
+
+  public String storageBackend() {
+    return storageBackend;
+  }
+
+  public String databaseFile() {
+    return databaseFile;
+  }
+
+  public boolean warmStart() {
+    return warmStart;
+  }
+
+  public int serverPort() {
+    return serverPort;
+  }
+
+  public int serverWorkers() {
+    return serverWorkers;
+  }
+
+  public String clusterNodeId() {
+    return clusterNodeId;
+  }
+
+  public String clusterNodes() {
+    return clusterNodes;
+  }
+
+  public boolean dedupPerOwner() {
+    return dedupPerOwner;
+  }
+
+  public boolean storageShared() {
+    return storageShared;
+  }
+
+  public double createRatePerSecond() {
+    return createRatePerSecond;
+  }
+
+  public int createBurst() {
+    return createBurst;
+  }
+
+  public double resolveRatePerSecond() {
+    return resolveRatePerSecond;
+  }
+
+  public int resolveBurst() {
+    return resolveBurst;
+  }
+
+  public String asyncExecutor() {
+    return asyncExecutor;
+  }
+
+  public int asyncThreads() {
+    return asyncThreads;
+  }
+
+  public int asyncMaxInFlight() {
+    return asyncMaxInFlight;
+  }
+
+  public Duration asyncTimeout() {
+    return asyncTimeout;
+  }
+
+  public boolean reclaimExhausted() {
+    return reclaimExhausted;
+  }
+
+  public int reclaimIdleDays() {
+    return reclaimIdleDays;
+  }
+
+  public int reclaimBatchSize() {
+    return reclaimBatchSize;
+  }
+
+  public Duration reclaimInterval() {
+    return reclaimInterval;
+  }
+
+  public String archiveFile() {
+    return archiveFile;
+  }
+
+  public String traceFile() {
+    return traceFile;
+  }
+
+  public boolean queryHostIndex() {
+    return queryHostIndex;
+  }
 }
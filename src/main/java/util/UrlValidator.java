@@ -1,6 +1,7 @@
 package util;
 
 import java.net.URI;
+import java.util.Locale;
 
 public class UrlValidator {
   public static void validate(String url) {
@@ -21,4 +22,39 @@ public class UrlValidator {
       throw new IllegalArgumentException("Некорректный URL: " + url);
     }
   }
+
+  // Хост URL в нижнем регистре, без userinfo и порта; null, если хоста нет.
+  // Разбирается вручную: вызывается для каждой ссылки при сканировании запросом query
+  public static String hostOf(String url) {
+    if (url == null) {
+      return null;
+    }
+    int start = url.indexOf("://");
+    if (start < 0) {
+      return null;
+    }
+    start += 3;
+    int end = start;
+    while (end < url.length()) {
+      char c = url.charAt(end);
+      if (c == '/' || c == '?' || c == '#') {
+        break;
+      }
+      end++;
+    }
+    int at = url.lastIndexOf('@', end - 1);
+    if (at >= start) {
+      start = at + 1;
+    }
+    if (start < end && url.charAt(start) == '[') {
+      int close = url.indexOf(']', start);
+      end = close < 0 || close > end ? end : close + 1;
+    } else {
+      int colon = url.indexOf(':', start);
+      if (colon >= 0 && colon < end) {
+        end = colon;
+      }
+    }
+    return start == end ? null : url.substring(start, end).toLowerCase(Locale.ROOT);
+  }
 }
@@ -0,0 +1,325 @@
+package cluster;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import model.Link;
+import net.LinkClient;
+import net.LinkServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import service.ShortenerService;
+import storage.H2LinkRepository;
+import util.Config;
+
+public class ClusterTest {
+
+  @TempDir Path tempDir;
+
+  private final List<AutoCloseable> resources = new ArrayList<>();
+
+  private record Node(String id, H2LinkRepository repo, ClusterRouter router, LinkServer server) {
+    ClusterNode address() {
+      return new ClusterNode(id, "localhost", server.port());
+    }
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    Collections.reverse(resources);
+    for (AutoCloseable r : resources) {
+      r.close();
+    }
+  }
+
+  private Node startNode(String id) throws Exception {
+    return startNode(id, new H2LinkRepository(tempDir.resolve(id).resolve("links")));
+  }
+
+  private Node startNode(String id, H2LinkRepository repo) throws Exception {
+    Path dir = Files.createDirectories(tempDir.resolve(id));
+    Path cfg = dir.resolve("app.properties");
+    Files.writeString(
+        cfg,
+        """
+                ttlSeconds=3600
+                defaultMaxClicks=10
+                baseUrl=http://localhost/
+                userUuidFile=%s
+                """
+            .formatted(dir.resolve("user.uuid").toString().replace("\\", "\\\\")));
+
+    ClusterRouter router = new ClusterRouter(id, repo);
+    ShortenerService service =
+        new ShortenerService(repo, Config.load(cfg), Clock.systemUTC(), router::isLocal);
+    LinkServer server = new LinkServer(service, 0, 4, router);
+    server.start();
+
+    resources.add(repo);
+    resources.add(router);
+    resources.add(server);
+    return new Node(id, repo, router, server);
+  }
+
+  private LinkClient connect(Node node) {
+    LinkClient client = new LinkClient("localhost", node.server().port());
+    resources.add(client);
+    return client;
+  }
+
+  @Test
+  void partitionMapIsStableAndSpreadsCodes() {
+    PartitionMap map = PartitionMap.parse("b@localhost:2,a@localhost:1,c@localhost:3");
+    assertEquals("a@localhost:1,b@localhost:2,c@localhost:3", map.toSpec());
+    assertEquals(map, PartitionMap.parse(map.toSpec()));
+
+    int[] perNode = new int[3];
+    for (int i = 0; i < 3000; i++) {
+      String code = "c" + i;
+      ClusterNode owner = map.ownerOf(code);
+      assertEquals(owner, PartitionMap.parse(map.toSpec()).ownerOf(code));
+      perNode[owner.id().charAt(0) - 'a']++;
+    }
+    for (int n : perNode) {
+      assertTrue(n > 600, "неравномерное распределение: " + n);
+    }
+
+    assertThrows(IllegalArgumentException.class, () -> PartitionMap.parse("a@localhost"));
+    assertThrows(
+        IllegalArgumentException.class, () -> PartitionMap.parse("a@localhost:1,a@localhost:2"));
+  }
+
+  @Test
+  void requestsAreForwardedToOwnerAndLinksMoveWhenNodeJoins() throws Exception {
+    Node a = startNode("a");
+    Node b = startNode("b");
+    PartitionMap two = new PartitionMap(List.of(a.address(), b.address()));
+    a.router().applyPartitionMap(two).join();
+    b.router().applyPartitionMap(two).join();
+
+    LinkClient viaA = connect(a);
+    LinkClient viaB = connect(b);
+    String owner = UUID.randomUUID().toString();
+
+    List<String> urls = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      urls.add("https://example.com/" + i);
+    }
+    List<LinkClient.CreatedLink> created = viaA.batchCreate(owner, urls, 100).join();
+    for (LinkClient.CreatedLink l : created) {
+      assertEquals("a", two.ownerOf(l.code()).id());
+    }
+    assertEquals(200, a.repo().count());
+
+    // Обращения к чужим кодам пересылаются владельцу
+    for (int i = 0; i < created.size(); i++) {
+      assertEquals(urls.get(i), viaB.resolve(created.get(i).code()).join());
+    }
+
+    // Псевдоним создаётся на узле-владельце, куда бы ни пришёл запрос
+    String alias = null;
+    for (int i = 0; alias == null; i++) {
+      if (two.ownerOf("promo" + i).id().equals("b")) {
+        alias = "promo" + i;
+      }
+    }
+    assertEquals(alias, viaA.create(owner, "https://mail.ru", 0, alias).join().code());
+    assertTrue(b.repo().findByCode(alias).isPresent());
+    assertTrue(a.repo().findByCode(alias).isEmpty());
+
+    // Новый узел объявляет расширенную карту, соседи передают ему его разделы
+    Node c = startNode("c");
+    PartitionMap three = new PartitionMap(List.of(a.address(), b.address(), c.address()));
+    c.router().applyPartitionMap(three).join();
+    c.router().announce().get(10, TimeUnit.SECONDS);
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    int expectedOnC =
+        (int) created.stream().filter(l -> three.ownerOf(l.code()).id().equals("c")).count();
+    // Прежний владелец удаляет переданные ссылки пакетом уже после того, как их получил c
+    while ((c.repo().count() < expectedOnC || a.repo().count() > 200 - expectedOnC)
+        && System.nanoTime() < deadline) {
+      Thread.sleep(20);
+    }
+    assertTrue(expectedOnC > 0);
+    assertEquals(expectedOnC, c.repo().count());
+    assertEquals(200 - expectedOnC, a.repo().count());
+
+    LinkClient viaC = connect(c);
+    for (int i = 0; i < created.size(); i++) {
+      String code = created.get(i).code();
+      assertEquals(urls.get(i), viaC.resolve(code).join());
+      assertEquals(urls.get(i), viaA.resolve(code).join());
+    }
+  }
+
+  @Test
+  void linksChangedDuringHandOffAreResentNotLost() throws Exception {
+    AtomicBoolean clicked = new AtomicBoolean();
+    // Переход по ссылке успевает произойти между выгрузкой и удалением у прежнего владельца
+    H2LinkRepository clicking =
+        new H2LinkRepository(tempDir.resolve("a").resolve("links")) {
+          @Override
+          public List<Link> deleteIf(
+              Collection<String> codes,
+              Predicate<Link> condition,
+              Consumer<List<Link>> beforeDelete) {
+            if (clicked.compareAndSet(false, true)) {
+              for (String code : codes) {
+                update(
+                    code,
+                    l ->
+                        new Link(
+                            l.code(),
+                            l.ownerUuid(),
+                            l.originalUrl(),
+                            l.shortUrl(),
+                            l.maxClicks(),
+                            l.clicksDone() + 1,
+                            l.createdAt(),
+                            l.expiresAt()));
+              }
+            }
+            return super.deleteIf(codes, condition, beforeDelete);
+          }
+        };
+    Node a = startNode("a", clicking);
+    Node b = startNode("b");
+    PartitionMap one = new PartitionMap(List.of(a.address()));
+    a.router().applyPartitionMap(one).join();
+
+    LinkClient viaA = connect(a);
+    String owner = UUID.randomUUID().toString();
+    List<String> urls = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      urls.add("https://example.com/" + i);
+    }
+    viaA.batchCreate(owner, urls, 100).join();
+
+    PartitionMap two = new PartitionMap(List.of(a.address(), b.address()));
+    b.router().applyPartitionMap(two).join();
+    int moved = a.router().applyPartitionMap(two).get(10, TimeUnit.SECONDS);
+    assertTrue(moved > 0);
+    assertTrue(clicked.get());
+    assertEquals(40 - moved, a.repo().count());
+    assertEquals(moved, b.repo().count());
+    b.repo().forEach(l -> assertEquals(1, l.clicksDone(), l.code()));
+  }
+
+  @Test
+  void serviceFramesAreAcceptedOnlyFromClusterNodes() throws Exception {
+    Node a = startNode("a");
+    Node b = startNode("b");
+    PartitionMap two = new PartitionMap(List.of(a.address(), b.address()));
+    a.router().applyPartitionMap(two).join();
+
+    InetAddress stranger = InetAddress.getByName("10.1.2.3");
+    assertTrue(a.router().isPeer(InetAddress.getLoopbackAddress()));
+    assertFalse(a.router().isPeer(stranger));
+    PartitionMap hijack = new PartitionMap(List.of(new ClusterNode("x", "10.1.2.3", 1)));
+    assertThrows(SecurityException.class, () -> a.router().acceptPartitionMap(hijack, stranger));
+    // Чужой узел не может и добавить себя, подменив адрес соседа
+    PartitionMap replaced =
+        new PartitionMap(
+            List.of(
+                a.address(),
+                new ClusterNode("b", "10.1.2.3", 1),
+                new ClusterNode("x", "10.1.2.3", 2)));
+    assertThrows(SecurityException.class, () -> a.router().acceptPartitionMap(replaced, stranger));
+    assertEquals(two, a.router().partitionMap());
+
+    String owner = UUID.randomUUID().toString();
+    String local = null;
+    String foreign = null;
+    for (int i = 0; local == null || foreign == null; i++) {
+      String code = "imp" + i;
+      if (two.ownerOf(code).id().equals("a")) {
+        local = local == null ? code : local;
+      } else {
+        foreign = foreign == null ? code : foreign;
+      }
+    }
+    LinkClient viaA = connect(a);
+    Instant now = Instant.now();
+    Link fresh =
+        new Link(local, owner, "https://example.com/", "", 10, 5, now, now.plusSeconds(3600));
+    viaA.importLink(fresh).get(10, TimeUnit.SECONDS);
+    // Устаревшая копия с меньшим счётчиком переходов не затирает текущую
+    Link stale =
+        new Link(local, owner, "https://example.com/", "", 10, 2, now, now.plusSeconds(3600));
+    viaA.importLink(stale).get(10, TimeUnit.SECONDS);
+    assertEquals(5, a.repo().findByCode(local).orElseThrow().clicksDone());
+
+    Link notMine =
+        new Link(foreign, owner, "https://example.com/", "", 10, 0, now, now.plusSeconds(3600));
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class, () -> viaA.importLink(notMine).get(10, TimeUnit.SECONDS));
+    assertInstanceOf(IllegalArgumentException.class, e.getCause());
+    assertTrue(a.repo().findByCode(foreign).isEmpty());
+  }
+
+  @Test
+  void linksNotYetHandedOffResolveOnEveryNode() throws Exception {
+    Node a = startNode("a");
+    Node b = startNode("b");
+    PartitionMap two = new PartitionMap(List.of(a.address(), b.address()));
+    a.router().applyPartitionMap(two).join();
+    b.router().applyPartitionMap(two).join();
+
+    LinkClient viaA = connect(a);
+    String owner = UUID.randomUUID().toString();
+    List<String> urls = new ArrayList<>();
+    for (int i = 0; i < 60; i++) {
+      urls.add("https://example.com/" + i);
+    }
+    List<LinkClient.CreatedLink> created = viaA.batchCreate(owner, urls, 100).join();
+
+    Node c = startNode("c");
+    PartitionMap three = new PartitionMap(List.of(a.address(), b.address(), c.address()));
+    c.router().applyPartitionMap(three).join();
+    b.router().applyPartitionMap(three).join();
+    // Узел a знает c по недоступному адресу, поэтому передача с него не проходит
+    int deadPort;
+    try (ServerSocket s = new ServerSocket(0)) {
+      deadPort = s.getLocalPort();
+    }
+    PartitionMap unreachable =
+        new PartitionMap(
+            List.of(a.address(), b.address(), new ClusterNode("c", "localhost", deadPort)));
+    a.router().applyPartitionMap(unreachable).get(10, TimeUnit.SECONDS);
+    assertEquals(60, a.repo().count());
+    assertEquals(0, c.repo().count());
+
+    LinkClient viaB = connect(b);
+    LinkClient viaC = connect(c);
+    int onC = 0;
+    for (int i = 0; i < created.size(); i++) {
+      String code = created.get(i).code();
+      if (!three.ownerOf(code).id().equals("c")) {
+        continue;
+      }
+      onC++;
+      assertEquals(urls.get(i), viaA.resolve(code).join());
+      assertEquals(urls.get(i), viaB.resolve(code).join());
+      assertEquals(urls.get(i), viaC.resolve(code).join());
+    }
+    assertTrue(onC > 0);
+  }
+}
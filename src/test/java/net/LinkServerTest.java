@@ -0,0 +1,144 @@
+package net;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import service.OperationRejectedException;
+import service.ShortenerService;
+import storage.H2LinkRepository;
+import util.Config;
+
+public class LinkServerTest {
+
+  @TempDir Path tempDir;
+
+  private H2LinkRepository repo;
+  private LinkServer server;
+  private LinkClient client;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Path cfg = tempDir.resolve("app.properties");
+    Files.writeString(
+        cfg,
+        """
+                ttlSeconds=3600
+                defaultMaxClicks=10
+                baseUrl=http://localhost/
+                userUuidFile=%s
+                """
+            .formatted(tempDir.resolve("user.uuid").toString().replace("\\", "\\\\")));
+
+    repo = new H2LinkRepository(tempDir.resolve("links"));
+    server = new LinkServer(new ShortenerService(repo, Config.load(cfg)), 0, 4);
+    server.start();
+    client = new LinkClient("localhost", server.port());
+  }
+
+  @AfterEach
+  void tearDown() {
+    client.close();
+    server.close();
+    repo.close();
+  }
+
+  private static Throwable cause(CompletableFuture<?> f) {
+    CompletionException e = assertThrows(CompletionException.class, f::join);
+    return e.getCause();
+  }
+
+  @Test
+  void createResolveDeleteRoundTrip() {
+    String owner = UUID.randomUUID().toString();
+
+    LinkClient.CreatedLink link = client.create(owner, "https://mail.ru", 0, "promo").join();
+    assertEquals("promo", link.code());
+    assertEquals("http://localhost/promo", link.shortUrl());
+
+    assertEquals("https://mail.ru", client.resolve("promo").join());
+
+    assertInstanceOf(
+        SecurityException.class, cause(client.delete(UUID.randomUUID().toString(), "promo")));
+    client.delete(owner, "promo").join();
+
+    assertInstanceOf(IllegalArgumentException.class, cause(client.resolve("promo")));
+    assertInstanceOf(
+        IllegalArgumentException.class, cause(client.create(owner, "ftp://x", 1, null)));
+  }
+
+  @Test
+  void limitExhaustionIsReportedAsRejected() {
+    String owner = UUID.randomUUID().toString();
+    LinkClient.CreatedLink link = client.create(owner, "https://ya.ru", 1, null).join();
+
+    client.resolve(link.code()).join();
+
+    assertInstanceOf(OperationRejectedException.class, cause(client.resolve(link.code())));
+
+    // Сбой хранилища — не отказ: повторять такой запрос бессмысленно
+    repo.close();
+    Throwable failure = cause(client.resolve(link.code()));
+    assertFalse(failure instanceof IllegalStateException, failure.toString());
+  }
+
+  @Test
+  void requestsAfterConnectionLossFailInsteadOfHanging() throws Exception {
+    server.close();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (client.isOpen() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(client.isOpen());
+
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class, () -> client.resolve("promo").get(5, TimeUnit.SECONDS));
+    assertInstanceOf(IllegalStateException.class, e.getCause());
+  }
+
+  @Test
+  void pipelinedThroughputOnLocalhost() {
+    String owner = UUID.randomUUID().toString();
+    List<String> urls = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      urls.add("https://example.com/item/" + i);
+    }
+
+    long started = System.nanoTime();
+    List<CompletableFuture<List<LinkClient.CreatedLink>>> batches = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      batches.add(client.batchCreate(owner, urls, 1_000_000));
+    }
+    List<String> codes = new ArrayList<>();
+    for (CompletableFuture<List<LinkClient.CreatedLink>> b : batches) {
+      b.join().forEach(l -> codes.add(l.code()));
+    }
+    assertEquals(1000, codes.size());
+
+    int requests = 5000;
+    List<CompletableFuture<String>> resolves = new ArrayList<>(requests);
+    for (int i = 0; i < requests; i++) {
+      resolves.add(client.resolve(codes.get(i % codes.size())));
+    }
+    for (CompletableFuture<String> r : resolves) {
+      assertTrue(r.join().startsWith("https://example.com/item/"));
+    }
+    double seconds = (System.nanoTime() - started) / 1e9;
+
+    System.out.printf(
+        "Бинарный протокол: %d создано, %d переходов за %.2f с (%.0f оп/с)%n",
+        codes.size(), requests, seconds, (codes.size() + requests) / seconds);
+  }
+}
@@ -0,0 +1,146 @@
+package service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import model.Link;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import storage.FileLinkRepository;
+import util.Config;
+
+public class AsyncShortenerServiceTest {
+
+  @TempDir Path tempDir;
+
+  private Config config() throws Exception {
+    Path cfg = tempDir.resolve("app.properties");
+    Files.writeString(
+        cfg,
+        """
+        ttlSeconds=3600
+        defaultMaxClicks=10
+        storageFile=%s
+        userUuidFile=%s
+        asyncThreads=4
+        asyncMaxInFlight=16
+        """
+            .formatted(
+                tempDir.resolve("links.json").toString().replace("\\", "\\\\"),
+                tempDir.resolve("user.uuid").toString().replace("\\", "\\\\")));
+    return Config.load(cfg);
+  }
+
+  @Test
+  void createResolveListDeleteRunAsynchronously() throws Exception {
+    Config cfg = config();
+    FileLinkRepository repo = new FileLinkRepository(Path.of(cfg.storageFile()));
+    String owner = UUID.randomUUID().toString();
+
+    try (AsyncShortenerService service =
+        new AsyncShortenerService(new ShortenerService(repo, cfg), cfg)) {
+      List<CompletableFuture<Link>> created =
+          List.of(
+              service.create(owner, "https://mail.ru", 5, null),
+              service.create(owner, "https://ya.ru", 5, null),
+              service.create(owner, "https://ok.ru", 5, null));
+      CompletableFuture.allOf(created.toArray(new CompletableFuture<?>[0])).join();
+
+      Link first = created.get(0).join();
+      assertEquals("https://mail.ru", service.resolve(first.code()).join().originalUrl());
+      assertEquals(3, service.list(owner).join().size());
+
+      service.delete(owner, first.code()).join();
+      assertEquals(2, service.list(owner).join().size());
+
+      CompletionException missing =
+          assertThrows(CompletionException.class, () -> service.resolve(first.code()).join());
+      assertInstanceOf(IllegalArgumentException.class, missing.getCause());
+      CompletionException foreign =
+          assertThrows(
+              CompletionException.class,
+              () ->
+                  service
+                      .delete(UUID.randomUUID().toString(), created.get(1).join().code())
+                      .join());
+      assertInstanceOf(SecurityException.class, foreign.getCause());
+      assertEquals(0, service.inFlight());
+    }
+  }
+
+  @Test
+  void capsConcurrentOperationsAndTimesOutQueuedOnes() throws Exception {
+    Config cfg = config();
+    FileLinkRepository repo = new FileLinkRepository(Path.of(cfg.storageFile()));
+    ShortenerService core = new ShortenerService(repo, cfg);
+    Link link = core.createForOwner(UUID.randomUUID().toString(), "https://mail.ru", 10, null);
+
+    ExecutorService single = Executors.newSingleThreadExecutor();
+    CountDownLatch release = new CountDownLatch(1);
+    single.execute(
+        () -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+
+    try (AsyncShortenerService service =
+        new AsyncShortenerService(core, single, 2, Duration.ofMillis(100))) {
+      CompletableFuture<Link> a = service.resolve(link.code());
+      CompletableFuture<Link> b = service.resolve(link.code());
+      CompletionException overCap =
+          assertThrows(CompletionException.class, () -> service.resolve(link.code()).join());
+      assertInstanceOf(IllegalStateException.class, overCap.getCause());
+
+      assertInstanceOf(
+          TimeoutException.class, assertThrows(CompletionException.class, a::join).getCause());
+      assertInstanceOf(
+          TimeoutException.class, assertThrows(CompletionException.class, b::join).getCause());
+      // Снятые с очереди операции вернули слоты, хотя исполнитель всё ещё занят
+      assertEquals(0, service.inFlight());
+
+      release.countDown();
+      service.resolve(link.code()).join();
+      assertEquals(1, repo.findByCode(link.code()).orElseThrow().clicksDone());
+    }
+  }
+
+  @Test
+  void errorInOperationFailsFutureAndReturnsSlot() throws Exception {
+    Config cfg = config();
+    FileLinkRepository repo =
+        new FileLinkRepository(Path.of(cfg.storageFile())) {
+          @Override
+          public List<Link> findByOwner(String ownerUuid) {
+            throw new StackOverflowError();
+          }
+        };
+
+    try (AsyncShortenerService service =
+        new AsyncShortenerService(new ShortenerService(repo, cfg), cfg)) {
+      CompletableFuture<List<Link>> list = service.list(UUID.randomUUID().toString());
+      CompletionException failed = assertThrows(CompletionException.class, list::join);
+      assertInstanceOf(StackOverflowError.class, failed.getCause());
+      assertEquals(0, service.inFlight());
+    }
+  }
+
+  @Test
+  void rejectsUnknownExecutorKind() {
+    assertThrows(
+        IllegalArgumentException.class, () -> AsyncShortenerService.createExecutor("fibers", 2));
+    AsyncShortenerService.createExecutor("virtual", 2).shutdown();
+  }
+}
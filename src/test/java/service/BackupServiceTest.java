@@ -0,0 +1,83 @@
+package service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import model.Link;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import storage.FileLinkRepository;
+import util.Config;
+
+public class BackupServiceTest {
+
+  @TempDir Path tempDir;
+
+  private Config config(String compression) throws Exception {
+    Path cfg = tempDir.resolve("app.properties");
+    Files.writeString(
+        cfg,
+        """
+                storageCompression=%s
+                storageCompressionLevel=6
+                """
+            .formatted(compression));
+    return Config.load(cfg);
+  }
+
+  private static Link link(String code) {
+    return new Link(
+        code,
+        "user-1",
+        "https://mail.ru/" + code,
+        "http://localhost/" + code,
+        5,
+        0,
+        Instant.parse("2026-01-01T00:00:00Z"),
+        Instant.parse("2026-01-02T00:00:00Z"));
+  }
+
+  @Test
+  void backupCapturesSnapshotAndIgnoresLaterWrites() throws Exception {
+    FileLinkRepository repo = new FileLinkRepository(tempDir.resolve("links.json"));
+    repo.save(link("B1"));
+    repo.save(link("B2"));
+
+    BackupService backup = new BackupService(repo, config("gzip"));
+    Path target = tempDir.resolve("backup/links.json.gz");
+
+    var pending = backup.backup(target);
+    repo.save(link("B3"));
+    repo.deleteByCode("B1");
+    BackupService.BackupResult result = pending.get();
+    backup.stop();
+
+    assertEquals(2, result.linkCount());
+    assertEquals(Files.size(target), result.bytes());
+    assertFalse(Files.exists(tempDir.resolve("backup/links.json.gz.tmp")));
+
+    FileLinkRepository restored = new FileLinkRepository(target);
+    assertTrue(restored.findByCode("B1").isPresent());
+    assertTrue(restored.findByCode("B2").isPresent());
+    assertTrue(restored.findByCode("B3").isEmpty());
+  }
+
+  @Test
+  void failedBackupRemovesTemporaryFile() throws Exception {
+    FileLinkRepository repo = new FileLinkRepository(tempDir.resolve("links.json"));
+    repo.save(link("B1"));
+    // На месте копии непустой каталог: переименование не удаётся
+    Path target = tempDir.resolve("occupied");
+    Files.createDirectories(target.resolve("inner"));
+
+    BackupService backup = new BackupService(repo, config("none"));
+    ExecutionException e = assertThrows(ExecutionException.class, backup.backup(target)::get);
+    backup.stop();
+
+    assertInstanceOf(IllegalStateException.class, e.getCause());
+    assertFalse(Files.exists(tempDir.resolve("occupied.tmp")));
+  }
+}
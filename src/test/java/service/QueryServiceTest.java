@@ -0,0 +1,121 @@
+package service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import model.Link;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import storage.FileLinkRepository;
+
+public class QueryServiceTest {
+
+  private static final Instant NOW = Instant.parse("2026-03-01T12:00:00Z");
+
+  @TempDir Path tempDir;
+
+  @Test
+  void filtersGroupsAndCountsAcrossSplitRanges() {
+    FileLinkRepository repo = repoWith(1000);
+    QueryService queries = new QueryService(repo, ForkJoinPool.commonPool(), clock(), 16);
+
+    QueryService.Result count = queries.query(List.of("host=MAIL.ru", "clicks>=5", "count"));
+    // host = mail.ru у каждой третьей, clicks = i % 10
+    long expected = IntStream.range(0, 1000).filter(i -> i % 3 == 0 && i % 10 >= 5).count();
+    assertEquals(expected, count.matched());
+    assertTrue(count.links().isEmpty());
+
+    QueryService.Result groups =
+        queries.query(List.of("expiresAt<now+2h", "group", "host", "having", "count>300"));
+    assertEquals(
+        List.of(Map.entry("mail.ru", 334), Map.entry("ok.ru", 333), Map.entry("ya.ru", 333)),
+        groups.groups());
+    assertEquals(1000, groups.matched());
+
+    QueryService.Result byDay = queries.query(List.of("code^=c000", "group", "createdAt"));
+    assertEquals(List.of(Map.entry("2026-03-01", 10)), byDay.groups());
+
+    // Страница — самые новые совпадения (createdAt = NOW - i минут), а не первые найденные
+    QueryService.Result listing = queries.query(List.of("url~/PROMO", "limit", "5"));
+    assertEquals(
+        List.of("c0000", "c0002", "c0004", "c0006", "c0008"),
+        listing.links().stream().map(Link::code).toList());
+    assertTrue(listing.truncated());
+    assertEquals(500, listing.matched());
+
+    // Ровно limit совпадений — список полный
+    QueryService.Result exact = queries.query(List.of("code^=c000", "limit", "10"));
+    assertEquals(10, exact.links().size());
+    assertFalse(exact.truncated());
+
+    assertThrows(IllegalArgumentException.class, () -> queries.query(List.of("color=red")));
+    assertThrows(IllegalArgumentException.class, () -> queries.query(List.of("clicks~5")));
+    assertThrows(IllegalArgumentException.class, () -> queries.query(List.of("having", "count>1")));
+  }
+
+  @Test
+  void hostIndexFollowsWritesAndGivesSameAnswer() {
+    FileLinkRepository repo = repoWith(300);
+    QueryService queries = new QueryService(repo, ForkJoinPool.commonPool(), clock(), 16);
+    QueryService.Result scanned = queries.query(List.of("host=ok.ru", "count"));
+    assertFalse(scanned.usedHostIndex());
+
+    repo.enableHostIndex();
+    QueryService.Result indexed = queries.query(List.of("host=ok.ru", "count"));
+    assertTrue(indexed.usedHostIndex());
+    assertEquals(scanned.matched(), indexed.matched());
+
+    // Смена URL переносит ссылку в индексе на новый хост, удаление убирает её
+    repo.update("c0001", l -> withUrl(l, "https://mail.ru/moved"));
+    repo.deleteByCode("c0004");
+    assertEquals(scanned.matched() - 2, queries.query(List.of("host=ok.ru", "count")).matched());
+    assertEquals(
+        queries.query(List.of("url^=https://mail.ru", "count")).matched(),
+        queries.query(List.of("host=mail.ru", "count")).matched());
+  }
+
+  private FileLinkRepository repoWith(int n) {
+    String[] hosts = {"mail.ru", "ok.ru", "ya.ru"};
+    List<Link> links = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      links.add(
+          new Link(
+              String.format("c%04d", i),
+              "owner-" + i % 7,
+              "https://" + hosts[i % 3] + (i % 2 == 0 ? "/promo/" : "/news/") + i,
+              "http://short/" + i,
+              100,
+              i % 10,
+              NOW.minus(Duration.ofMinutes(i)),
+              NOW.plus(Duration.ofMinutes(i % 90))));
+    }
+    FileLinkRepository repo = new FileLinkRepository(tempDir.resolve("links.json"));
+    repo.saveAll(links);
+    return repo;
+  }
+
+  private static Link withUrl(Link l, String url) {
+    return new Link(
+        l.code(),
+        l.ownerUuid(),
+        url,
+        l.shortUrl(),
+        l.maxClicks(),
+        l.clicksDone(),
+        l.createdAt(),
+        l.expiresAt());
+  }
+
+  private static Clock clock() {
+    return Clock.fixed(NOW, ZoneId.of("UTC"));
+  }
+}
@@ -0,0 +1,95 @@
+package service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class RateLimiterTest {
+
+  private static final long MS = 1_000_000;
+
+  @Test
+  void burstThenRefillAtConfiguredRate() {
+    AtomicLong nanos = new AtomicLong();
+    RateLimiter limiter = new RateLimiter(2.0, 3, nanos::get);
+
+    assertTrue(limiter.tryAcquire("owner"));
+    assertTrue(limiter.tryAcquire("owner"));
+    assertTrue(limiter.tryAcquire("owner"));
+    assertFalse(limiter.tryAcquire("owner"));
+    assertTrue(limiter.tryAcquire("other"));
+
+    // 2 токена в секунду: через 499 мс токена ещё нет, через 500 мс — есть ровно один
+    nanos.addAndGet(499 * MS);
+    assertFalse(limiter.tryAcquire("owner"));
+    nanos.addAndGet(1 * MS);
+    assertTrue(limiter.tryAcquire("owner"));
+    assertFalse(limiter.tryAcquire("owner"));
+    assertEquals(3, limiter.rejectedCount());
+
+    // Запас не превышает burst даже после долгого простоя
+    nanos.addAndGet(60_000 * MS);
+    for (int i = 0; i < 3; i++) {
+      assertTrue(limiter.tryAcquire("owner"));
+    }
+    assertFalse(limiter.tryAcquire("owner"));
+
+    assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0, 3));
+    assertThrows(IllegalArgumentException.class, () -> new RateLimiter(1, 0));
+  }
+
+  @Test
+  void fractionalRefillIsCarriedOverBetweenFrequentCalls() {
+    AtomicLong nanos = new AtomicLong();
+    RateLimiter limiter = new RateLimiter(0.75, 1, nanos::get);
+    assertTrue(limiter.tryAcquire("owner"));
+
+    // Каждую миллисекунду набегает 0,00075 токена: целый токен — через 1334 мс, если
+    // дробные доли не отбрасываются при частых обращениях
+    for (int ms = 1; ms < 1334; ms++) {
+      nanos.addAndGet(MS);
+      assertFalse(limiter.tryAcquire("owner"), "ms " + ms);
+    }
+    nanos.addAndGet(MS);
+    assertTrue(limiter.tryAcquire("owner"));
+  }
+
+  @Test
+  void concurrentCallersNeverExceedBurstAndIdleBucketsAreEvicted() throws Exception {
+    AtomicLong nanos = new AtomicLong();
+    RateLimiter limiter = new RateLimiter(1.0, 100, nanos::get);
+
+    AtomicInteger granted = new AtomicInteger();
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] =
+          new Thread(
+              () -> {
+                for (int i = 0; i < 1000; i++) {
+                  if (limiter.tryAcquire("hot")) {
+                    granted.incrementAndGet();
+                  }
+                }
+              });
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(100, granted.get());
+    assertEquals(7900, limiter.rejectedCount());
+
+    for (int i = 0; i < 5000; i++) {
+      limiter.tryAcquire("key-" + i);
+    }
+    int before = limiter.bucketCount();
+    nanos.addAndGet(101_000 * MS);
+    for (int i = 0; i < 16 * 1024; i++) {
+      limiter.tryAcquire("fresh");
+    }
+    assertTrue(before > 5000);
+    assertEquals(1, limiter.bucketCount());
+  }
+}
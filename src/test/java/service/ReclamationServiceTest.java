@@ -0,0 +1,152 @@
+package service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import model.Link;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import storage.FileLinkRepository;
+import storage.LinkArchive;
+import util.Config;
+
+public class ReclamationServiceTest {
+
+  @TempDir Path tempDir;
+
+  @Test
+  void archivesExhaustedAndIdleLinksInBatches() throws Exception {
+    Path cfgFile = tempDir.resolve("app.properties");
+    Files.writeString(
+        cfgFile,
+        """
+        ttlSeconds=864000
+        storageFile=%s
+        userUuidFile=%s
+        reclaimIdleDays=3
+        reclaimBatchSize=2
+        """
+            .formatted(
+                tempDir.resolve("links.json").toString().replace("\\", "\\\\"),
+                tempDir.resolve("user.uuid").toString().replace("\\", "\\\\")));
+    Config cfg = Config.load(cfgFile);
+    FileLinkRepository repo = new FileLinkRepository(Path.of(cfg.storageFile()));
+    Instant created = Instant.parse("2026-01-01T00:00:00Z");
+    ShortenerService service =
+        new ShortenerService(repo, cfg, Clock.fixed(created, ZoneId.of("UTC")));
+    String owner = UUID.randomUUID().toString();
+
+    Link exhausted1 = service.createForOwner(owner, "https://mail.ru", 1, null);
+    Link exhausted2 = service.createForOwner(owner, "https://ya.ru", 2, null);
+    Link exhausted3 = service.createForOwner(owner, "https://ok.ru", 1, null);
+    Link idle = service.createForOwner(owner, "https://vk.com", 5, null);
+    Link active = service.createForOwner(owner, "https://habr.com", 5, null);
+    service.resolve(exhausted1.code());
+    service.resolve(exhausted2.code());
+    service.resolve(exhausted2.code());
+    service.resolve(exhausted3.code());
+    service.resolve(active.code());
+
+    LinkArchive archive = new LinkArchive(tempDir.resolve("archive.bin"));
+    Clock later = Clock.fixed(created.plus(Duration.ofDays(3)), ZoneId.of("UTC"));
+    ReclamationService reclamation = new ReclamationService(repo, archive, cfg, later);
+
+    Map<String, Integer> archived = reclamation.reclaimNow();
+    assertEquals(Map.of("exhausted", 3, "idle", 1), archived);
+    assertEquals(1, repo.count());
+    assertTrue(repo.findByCode(active.code()).isPresent());
+
+    LinkArchive.Entry entry = archive.findByCode(exhausted2.code()).orElseThrow();
+    assertEquals("exhausted", entry.reason());
+    assertEquals(2, entry.link().clicksDone());
+    assertEquals("idle", archive.findByCode(idle.code()).orElseThrow().reason());
+    assertEquals(4, archive.findByOwner(owner).size());
+    assertEquals(4, new LinkArchive(archive.file()).count());
+
+    // Перезапуск видит уже очищенное хранилище; повторный проход ничего не переносит
+    assertEquals(1, new FileLinkRepository(Path.of(cfg.storageFile())).count());
+    assertTrue(reclamation.reclaimNow().isEmpty());
+  }
+
+  @Test
+  void linkWhoseLimitWasRaisedAfterSnapshotStaysInStorage() {
+    FileLinkRepository repo = new FileLinkRepository(tempDir.resolve("links.json"));
+    Instant now = Instant.parse("2026-01-01T00:00:00Z");
+    Link raised = new Link("raised", "o", "https://mail.ru", "http://s/raised", 1, 1, now, now);
+    Link spent = new Link("spent", "o", "https://ya.ru", "http://s/spent", 1, 1, now, now);
+    repo.saveAll(List.of(raised, spent));
+
+    // Владелец поднимает лимит, когда проход уже отобрал ссылку по снимку
+    AtomicBoolean updated = new AtomicBoolean();
+    ReclamationService.Rule exhausted =
+        new ReclamationService.Rule(
+            "exhausted",
+            (l, t) -> {
+              if (updated.compareAndSet(false, true)) {
+                repo.update("raised", x -> withMaxClicks(x, 5));
+              }
+              return l.clicksDone() >= l.maxClicks();
+            });
+    LinkArchive archive = new LinkArchive(tempDir.resolve("archive.bin"));
+    ReclamationService reclamation =
+        new ReclamationService(
+            repo,
+            archive,
+            List.of(exhausted),
+            10,
+            Duration.ofHours(1),
+            Clock.fixed(now, ZoneId.of("UTC")));
+
+    assertEquals(Map.of("exhausted", 1), reclamation.reclaimNow());
+    assertEquals(5, repo.findByCode("raised").orElseThrow().maxClicks());
+    assertTrue(repo.findByCode("spent").isEmpty());
+    assertTrue(archive.findByCode("raised").isEmpty());
+    assertEquals(spent, archive.findByCode("spent").orElseThrow().link());
+  }
+
+  @Test
+  void failedArchiveWriteKeepsLinksInStorage() throws Exception {
+    FileLinkRepository repo = new FileLinkRepository(tempDir.resolve("links.json"));
+    Instant now = Instant.parse("2026-01-01T00:00:00Z");
+    repo.save(new Link("spent", "o", "https://ya.ru", "http://s/spent", 1, 1, now, now));
+
+    // На месте файла архива каталог: дописать пакет не удастся
+    Path archiveFile = tempDir.resolve("archive.bin");
+    LinkArchive archive = new LinkArchive(archiveFile);
+    Files.createDirectories(archiveFile);
+    ReclamationService reclamation =
+        new ReclamationService(
+            repo,
+            archive,
+            List.of(new ReclamationService.Rule("exhausted", (l, t) -> true)),
+            10,
+            Duration.ofHours(1),
+            Clock.fixed(now, ZoneId.of("UTC")));
+
+    assertThrows(IllegalStateException.class, reclamation::reclaimNow);
+    assertTrue(repo.findByCode("spent").isPresent());
+    assertTrue(
+        new FileLinkRepository(tempDir.resolve("links.json")).findByCode("spent").isPresent());
+  }
+
+  private static Link withMaxClicks(Link l, int maxClicks) {
+    return new Link(
+        l.code(),
+        l.ownerUuid(),
+        l.originalUrl(),
+        l.shortUrl(),
+        maxClicks,
+        l.clicksDone(),
+        l.createdAt(),
+        l.expiresAt());
+  }
+}
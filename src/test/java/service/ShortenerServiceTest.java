@@ -4,9 +4,25 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import model.Link;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -156,6 +172,24 @@ public class ShortenerServiceTest {
     assertEquals(20, updated.maxClicks());
   }
 
+  @Test
+  void deleteAllMine_removesOnlyCurrentUsersLinks() throws Exception {
+    Config cfg = config(3600, 10);
+    FileLinkRepository repo = new FileLinkRepository(Path.of(cfg.storageFile()));
+
+    ShortenerService service = newService(repo, cfg, Instant.parse("2026-01-01T00:00:00Z"));
+    Link foreign = service.create("https://mail.ru", 5);
+    service.newUser();
+    service.create("https://ya.ru", 5);
+    service.create("https://ok.ru", 5);
+
+    assertThrows(SecurityException.class, () -> service.updateLimitMine(foreign.code(), 20));
+    assertEquals(2, service.deleteAllMine());
+
+    assertTrue(service.listMine().isEmpty());
+    assertEquals(5, repo.findByCode(foreign.code()).orElseThrow().maxClicks());
+  }
+
   @Test
   void listMine_returnsOnlyUsersLinks() throws Exception {
     Config cfg = config(3600, 10);
@@ -204,4 +238,168 @@ public class ShortenerServiceTest {
         ex.getMessage().toLowerCase().contains("uuid")
             || ex.getMessage().toLowerCase().contains("формат"));
   }
+
+  @Test
+  void create_withAlias_usesAliasAndRejectsDuplicates() throws Exception {
+    Config cfg = config(3600, 10);
+    FileLinkRepository repo = new FileLinkRepository(Path.of(cfg.storageFile()));
+
+    ShortenerService service = newService(repo, cfg, Instant.parse("2026-01-01T00:00:00Z"));
+
+    Link link = service.create("https://mail.ru", 5, "promo-2026");
+    assertEquals("promo-2026", link.code());
+    assertEquals("http://localhost/promo-2026", link.shortUrl());
+
+    IllegalArgumentException taken =
+        assertThrows(
+            IllegalArgumentException.class, () -> service.create("https://ya.ru", 5, "promo-2026"));
+    assertTrue(taken.getMessage().toLowerCase().contains("занят"));
+
+    assertThrows(IllegalArgumentException.class, () -> service.create("https://ya.ru", 5, "a b"));
+  }
+
+  @Test
+  void concurrentCreatesWithSameAliasKeepTheFirstLink() throws Exception {
+    Config cfg = config(3600, 10);
+    FileLinkRepository repo = new FileLinkRepository(Path.of(cfg.storageFile()));
+    ShortenerService service = newService(repo, cfg, Instant.parse("2026-01-01T00:00:00Z"));
+
+    int threads = 8;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Link>> results = new ArrayList<>();
+    List<String> owners = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      String owner = UUID.randomUUID().toString();
+      owners.add(owner);
+      results.add(
+          pool.submit(
+              () -> {
+                start.await();
+                return service.createForOwner(owner, "https://mail.ru/" + owner, 5, "race");
+              }));
+    }
+    start.countDown();
+
+    Link winner = null;
+    int taken = 0;
+    for (Future<Link> f : results) {
+      try {
+        Link created = f.get();
+        assertNull(winner);
+        winner = created;
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause().getMessage().contains("Псевдоним уже занят"));
+        taken++;
+      }
+    }
+    pool.shutdown();
+    assertEquals(threads - 1, taken);
+    assertEquals(winner, repo.findByCode("race").orElseThrow());
+  }
+
+  @Test
+  void findByPrefix_returnsMatchingCodes() throws Exception {
+    Config cfg = config(3600, 10);
+    FileLinkRepository repo = new FileLinkRepository(Path.of(cfg.storageFile()));
+
+    ShortenerService service = newService(repo, cfg, Instant.parse("2026-01-01T00:00:00Z"));
+    service.create("https://mail.ru", 5, "promo-a");
+    service.create("https://ya.ru", 5, "promo-b");
+    service.create("https://ok.ru", 5, "other");
+    service.deleteMine("promo-a");
+
+    List<Link> found = service.findByPrefix("promo", 10);
+
+    assertEquals(List.of("promo-b"), found.stream().map(Link::code).toList());
+  }
+
+  @Test
+  void dedupPerOwnerReturnsLiveLinkForRepeatedUrl() throws Exception {
+    config(3600, 2);
+    Path cfgFile = tempDir.resolve("app.properties");
+    Files.writeString(cfgFile, "dedupPerOwner=true\n", StandardOpenOption.APPEND);
+    Config cfg = Config.load(cfgFile);
+    FileLinkRepository repo = new FileLinkRepository(Path.of(cfg.storageFile()));
+    ShortenerService service = newService(repo, cfg, Instant.parse("2026-01-01T00:00:00Z"));
+
+    Link first = service.create("https://mail.ru", null);
+    assertEquals(first.code(), service.create("https://mail.ru", null).code());
+    assertNotEquals(first.code(), service.create("https://ya.ru", null).code());
+
+    String other =
+        service.createForOwner(UUID.randomUUID().toString(), "https://mail.ru", null, null).code();
+    assertNotEquals(first.code(), other);
+
+    // Исчерпанная ссылка не переиспользуется
+    service.resolve(first.code());
+    service.resolve(first.code());
+    assertNotEquals(first.code(), service.create("https://mail.ru", null).code());
+  }
+
+  @Test
+  void rateLimitsCreatePerOwnerAndResolvePerCode() throws Exception {
+    config(3600, 100);
+    Path cfgFile = tempDir.resolve("app.properties");
+    Files.writeString(
+        cfgFile,
+        "createRatePerSecond=0.001\ncreateBurst=2\nresolveRatePerSecond=0.001\nresolveBurst=3\n",
+        StandardOpenOption.APPEND);
+    Config cfg = Config.load(cfgFile);
+    FileLinkRepository repo = new FileLinkRepository(Path.of(cfg.storageFile()));
+    ShortenerService service = newService(repo, cfg, Instant.parse("2026-01-01T00:00:00Z"));
+
+    Link link = service.create("https://mail.ru", null);
+    service.create("https://ya.ru", null);
+    assertThrows(RateLimitExceededException.class, () -> service.create("https://ok.ru", null));
+    assertNotNull(
+        service.createForOwner(UUID.randomUUID().toString(), "https://ok.ru", null, null));
+    assertEquals(1, service.createRejections());
+
+    for (int i = 0; i < 3; i++) {
+      service.resolve(link.code());
+    }
+    assertThrows(RateLimitExceededException.class, () -> service.resolve(link.code()));
+    assertEquals(3, repo.findByCode(link.code()).orElseThrow().clicksDone());
+    assertEquals(1, service.resolveRejections());
+  }
+
+  @Test
+  void jfrEventsAreRecordedWithShippedPreset() throws Exception {
+    Config cfg = config(3600, 10);
+    Path jfr = tempDir.resolve("service.jfr");
+
+    try (Recording recording =
+        new Recording(Configuration.create(Path.of("config/shortlink.jfc")))) {
+      recording.enable("shortlink.LinkCreate").withThreshold(Duration.ZERO);
+      recording.enable("shortlink.LinkResolve").withThreshold(Duration.ZERO);
+      recording.enable("shortlink.StoragePersist").withThreshold(Duration.ZERO);
+      recording.start();
+
+      FileLinkRepository repo = new FileLinkRepository(Path.of(cfg.storageFile()));
+      ShortenerService service = newService(repo, cfg, Instant.parse("2026-01-01T00:00:00Z"));
+      Link link = service.create("https://mail.ru", 1);
+      service.resolve(link.code());
+      assertThrows(IllegalStateException.class, () -> service.resolve(link.code()));
+      new FileLinkRepository(Path.of(cfg.storageFile()));
+
+      recording.stop();
+      recording.dump(jfr);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(jfr);
+    Set<String> names =
+        events.stream().map(e -> e.getEventType().getName()).collect(Collectors.toSet());
+    assertTrue(names.contains("shortlink.LinkCreate"));
+    assertTrue(names.contains("shortlink.StoragePersist"));
+    assertTrue(names.contains("shortlink.StorageLoad"));
+
+    List<String> outcomes =
+        events.stream()
+            .filter(e -> e.getEventType().getName().equals("shortlink.LinkResolve"))
+            .map(e -> e.getString("outcome"))
+            .toList();
+    assertEquals(2, outcomes.size());
+    assertEquals("resolved", outcomes.get(0));
+  }
 }
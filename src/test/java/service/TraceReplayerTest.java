@@ -0,0 +1,192 @@
+package service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import model.Link;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import storage.FileLinkRepository;
+import storage.H2LinkRepository;
+import util.Config;
+
+public class TraceReplayerTest {
+
+  @TempDir Path tempDir;
+
+  private Config config() throws Exception {
+    return config("");
+  }
+
+  private Config config(String extra) throws Exception {
+    Path cfg = tempDir.resolve("app.properties");
+    Files.writeString(
+        cfg,
+        """
+        ttlSeconds=60
+        defaultMaxClicks=10
+        storageFile=%s
+        userUuidFile=%s
+        """
+                .formatted(
+                    tempDir.resolve("links.json").toString().replace("\\", "\\\\"),
+                    tempDir.resolve("user.uuid").toString().replace("\\", "\\\\"))
+            + extra);
+    return Config.load(cfg);
+  }
+
+  // Записывает сеанс, в котором часы сервиса идут вперёд, а ссылки истекают и исчерпываются
+  private Path recordSession(Config cfg) {
+    Path trace = tempDir.resolve("session.trace");
+    FileLinkRepository repo = new FileLinkRepository(Path.of(cfg.storageFile()));
+    TraceReplayer.ReplayClock clock = new TraceReplayer.ReplayClock();
+    clock.set(Instant.parse("2026-01-01T00:00:00Z"));
+    ShortenerService service = new ShortenerService(repo, cfg, clock);
+    String alice = UUID.randomUUID().toString();
+    String bob = UUID.randomUUID().toString();
+
+    try (TraceRecorder recorder = new TraceRecorder(trace)) {
+      assertNull(service.setTraceRecorder(recorder));
+      Link a = service.createForOwner(alice, "https://mail.ru", 2, null);
+      Link b = service.createForOwner(bob, "https://ya.ru", null, "bobs");
+      service.resolve(a.code());
+      service.resolve(a.code());
+      assertThrows(IllegalStateException.class, () -> service.resolve(a.code()));
+      service.updateLimitForOwner(alice, a.code(), 5);
+      service.resolve(a.code());
+      assertThrows(SecurityException.class, () -> service.deleteForOwner(alice, b.code()));
+      service.listForOwner(alice);
+      service.findByPrefix("bo", 10);
+      clock.set(Instant.parse("2026-01-01T00:02:00Z"));
+      assertThrows(IllegalStateException.class, () -> service.resolve(b.code()));
+      service.createForOwner(alice, "https://ok.ru", 3, null);
+      assertEquals(2, service.deleteAllForOwner(alice));
+      assertSame(recorder, service.setTraceRecorder(null));
+      service.listForOwner(alice);
+      assertEquals(13, recorder.recorded());
+    }
+    return trace;
+  }
+
+  @Test
+  void recordsCompactTraceAndReplaysItOnAnotherBackend() throws Exception {
+    Config cfg = config();
+    Path trace = recordSession(cfg);
+
+    List<TraceEvent> events = new ArrayList<>();
+    try (TraceReader reader = new TraceReader(trace)) {
+      TraceEvent e;
+      while ((e = reader.next()) != null) {
+        events.add(e);
+      }
+    }
+    assertEquals(13, events.size());
+    TraceEvent create = events.get(0);
+    assertEquals(TraceEvent.Op.CREATE, create.op());
+    assertEquals("https://mail.ru", create.target());
+    assertEquals(2, create.number());
+    assertTrue(create.ok());
+    assertEquals("bobs", events.get(1).alias());
+    assertNull(events.get(1).number());
+    assertFalse(events.get(4).ok());
+    assertEquals(
+        "OperationRejectedException: Лимит переходов по ссылке исчерпан", events.get(4).outcome());
+    assertEquals(Instant.parse("2026-01-01T00:02:00Z").toEpochMilli(), events.get(10).atMillis());
+    assertTrue(Files.size(trace) < 600, "trace size " + Files.size(trace));
+
+    // Повторная запись в тот же путь не затирает трассу, а создаёт соседний файл
+    long size = Files.size(trace);
+    try (TraceRecorder again = new TraceRecorder(trace)) {
+      assertNotEquals(trace, again.file());
+      assertEquals(trace.getParent(), again.file().getParent());
+      assertTrue(again.file().getFileName().toString().startsWith("session-"));
+    }
+    assertEquals(size, Files.size(trace));
+
+    try (H2LinkRepository h2 = new H2LinkRepository(tempDir.resolve("replay-db"))) {
+      TraceReplayer.Report report = new TraceReplayer(h2, cfg).replay(trace, false);
+      assertEquals(13, report.operations());
+      assertEquals(0, report.mismatches(), String.join("\n", report.diffs()));
+      TraceReplayer.Latency resolves =
+          report.latencies().stream()
+              .filter(l -> l.op() == TraceEvent.Op.RESOLVE)
+              .findFirst()
+              .orElseThrow();
+      assertEquals(5, resolves.count());
+      assertTrue(resolves.p50Nanos() <= resolves.p99Nanos());
+      assertTrue(resolves.p99Nanos() <= resolves.maxNanos());
+    }
+  }
+
+  @Test
+  void rateLimitsFollowRecordedTimeWhenReplayingFast() throws Exception {
+    Config cfg = config("createRatePerSecond=1\ncreateBurst=1\n");
+    Path trace = tempDir.resolve("limited.trace");
+    TraceReplayer.ReplayClock clock = new TraceReplayer.ReplayClock();
+    clock.set(Instant.parse("2026-01-01T00:00:00Z"));
+    ShortenerService service =
+        new ShortenerService(
+            new FileLinkRepository(tempDir.resolve("recorded.json")),
+            cfg,
+            clock,
+            code -> true,
+            clock::elapsedNanos);
+    String owner = UUID.randomUUID().toString();
+    try (TraceRecorder recorder = new TraceRecorder(trace)) {
+      service.setTraceRecorder(recorder);
+      for (int i = 0; i < 3; i++) {
+        clock.set(clock.instant().plusSeconds(2));
+        service.createForOwner(owner, "https://mail.ru/" + i, null, null);
+      }
+      assertThrows(
+          OperationRejectedException.class,
+          () -> service.createForOwner(owner, "https://mail.ru/x", null, null));
+    }
+
+    // Проигрывание занимает миллисекунды, но отказ остаётся только у последнего создания
+    TraceReplayer.Report report =
+        new TraceReplayer(new FileLinkRepository(tempDir.resolve("replayed.json")), cfg)
+            .replay(trace, false);
+    assertEquals(4, report.operations());
+    assertEquals(0, report.mismatches(), String.join("\n", report.diffs()));
+  }
+
+  @Test
+  void reportsOutcomeDifferencesAndKeepsOriginalPace() throws Exception {
+    Config cfg = config();
+    Path trace = recordSession(cfg);
+
+    // Псевдоним уже занят в целевом хранилище: его создание расходится с записью
+    FileLinkRepository taken = new FileLinkRepository(tempDir.resolve("taken.json"));
+    new ShortenerService(
+            taken, cfg, Clock.fixed(Instant.parse("2026-01-01T00:00:00Z"), ZoneId.of("UTC")))
+        .createForOwner(UUID.randomUUID().toString(), "https://vk.com", null, "bobs");
+    TraceReplayer.Report report = new TraceReplayer(taken, cfg).replay(trace, false);
+    assertEquals(1, report.mismatches(), String.join("\n", report.diffs()));
+    assertTrue(report.diffs().get(0).startsWith("#2 CREATE"), report.diffs().get(0));
+    assertTrue(report.diffs().get(0).contains("Псевдоним уже занят"), report.diffs().get(0));
+
+    // В реальном времени паузы между операциями выдерживаются как при записи
+    Path paced = tempDir.resolve("paced.trace");
+    try (TraceRecorder recorder = new TraceRecorder(paced)) {
+      String owner = UUID.randomUUID().toString();
+      recorder.record(
+          new TraceEvent(TraceEvent.Op.LIST, 1_000, owner, null, null, null, 10, true, "0"));
+      recorder.record(
+          new TraceEvent(TraceEvent.Op.LIST, 1_150, owner, null, null, null, 10, true, "0"));
+    }
+    TraceReplayer.Report timed =
+        new TraceReplayer(new FileLinkRepository(tempDir.resolve("empty.json")), cfg)
+            .replay(paced, true);
+    assertEquals(0, timed.mismatches());
+    assertTrue(timed.elapsed().compareTo(Duration.ofMillis(150)) >= 0, timed.elapsed().toString());
+  }
+}
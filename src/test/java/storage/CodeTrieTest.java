@@ -0,0 +1,42 @@
+package storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class CodeTrieTest {
+
+  @Test
+  void prefixQueryReturnsSortedMatchesUpToLimit() {
+    CodeTrie trie = new CodeTrie();
+    for (String code : List.of("promo-2026", "promo-2025", "prod", "Ab12Cd", "pr")) {
+      assertTrue(trie.add(code));
+    }
+    assertFalse(trie.add("prod"));
+
+    assertEquals(List.of("pr", "prod", "promo-2025", "promo-2026"), trie.withPrefix("pr", 10));
+    assertEquals(List.of("pr", "prod"), trie.withPrefix("pr", 2));
+    assertEquals(List.of(), trie.withPrefix("zz", 10));
+    assertEquals(5, trie.size());
+  }
+
+  @Test
+  void removePrunesOnlyTheRemovedCode() {
+    CodeTrie trie = new CodeTrie();
+    trie.add("abc");
+    trie.add("abcd");
+
+    assertTrue(trie.remove("abcd"));
+    assertFalse(trie.remove("abcd"));
+    assertFalse(trie.remove("ab"));
+
+    assertTrue(trie.contains("abc"));
+    assertFalse(trie.contains("abcd"));
+    assertEquals(List.of("abc"), trie.withPrefix("a", 10));
+
+    assertTrue(trie.remove("abc"));
+    assertEquals(List.of(), trie.withPrefix("", 10));
+    assertEquals(0, trie.size());
+  }
+}
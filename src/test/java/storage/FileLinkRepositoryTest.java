@@ -2,8 +2,13 @@ package storage;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
 import model.Link;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -62,4 +67,385 @@ public class FileLinkRepositoryTest {
     FileLinkRepository repoReload = new FileLinkRepository(file);
     assertTrue(repoReload.findByCode("DEL111").isEmpty());
   }
+
+  @Test
+  void repeatedUrlsShareOneInstanceAndAreIndexedByOwner() {
+    Path file = tempDir.resolve("links.json");
+    FileLinkRepository repo = new FileLinkRepository(file);
+    Instant created = Instant.parse("2026-01-01T00:00:00Z");
+    for (int i = 0; i < 4; i++) {
+      // Каждый раз новый экземпляр строки с тем же содержимым
+      String url = new String("https://mail.ru/popular");
+      repo.save(
+          new Link(
+              "POP00" + i,
+              i < 3 ? "user-1" : "user-2",
+              url,
+              "http://localhost/POP00" + i,
+              5,
+              0,
+              created,
+              created.plusSeconds(3600)));
+    }
+
+    assertEquals(1, repo.distinctUrlCount());
+    assertSame(
+        repo.findByCode("POP000").orElseThrow().originalUrl(),
+        repo.findByCode("POP003").orElseThrow().originalUrl());
+    assertEquals(3, repo.findByOwnerAndUrl("user-1", "https://mail.ru/popular").size());
+    assertEquals(
+        List.of("POP003"),
+        repo.findByOwnerAndUrl("user-2", "https://mail.ru/popular").stream()
+            .map(Link::code)
+            .toList());
+
+    repo.incrementClicks("POP000");
+    repo.deleteByCode("POP001");
+    repo.deleteByCode("POP002");
+    repo.deleteByCode("POP003");
+    assertEquals(1, repo.distinctUrlCount());
+    assertTrue(repo.findByOwnerAndUrl("user-2", "https://mail.ru/popular").isEmpty());
+
+    FileLinkRepository reloaded = new FileLinkRepository(file);
+    assertEquals(
+        1, reloaded.findByOwnerAndUrl("user-1", "https://mail.ru/popular").get(0).clicksDone());
+    reloaded.deleteByCode("POP000");
+    assertEquals(0, reloaded.distinctUrlCount());
+  }
+
+  @Test
+  void gzipFileIsSmallerAndDetectedOnLoad() throws Exception {
+    Path plainFile = tempDir.resolve("plain.json");
+    Path gzipFile = tempDir.resolve("links.json.gz");
+
+    FileLinkRepository plain = new FileLinkRepository(plainFile);
+    FileLinkRepository gzip = new FileLinkRepository(gzipFile, StorageCompression.GZIP, 9);
+
+    for (int i = 0; i < 50; i++) {
+      Link link =
+          new Link(
+              "GZ" + i,
+              "user-1",
+              "https://example.com/articles/very/long/path?id=" + i,
+              "http://localhost/GZ" + i,
+              5,
+              0,
+              Instant.parse("2026-01-01T00:00:00Z").plusSeconds(i),
+              Instant.parse("2026-01-02T00:00:00Z"));
+      plain.save(link);
+      gzip.save(link);
+    }
+
+    try (InputStream in = Files.newInputStream(gzipFile)) {
+      assertEquals(0x1f, in.read());
+      assertEquals(0x8b, in.read());
+    }
+    assertTrue(Files.size(gzipFile) < Files.size(plainFile));
+
+    FileLinkRepository reload = new FileLinkRepository(gzipFile);
+    assertEquals(50, reload.findAll().size());
+    assertEquals(
+        "https://example.com/articles/very/long/path?id=7",
+        reload.findByCode("GZ7").orElseThrow().originalUrl());
+  }
+
+  @Test
+  void deflateFileReadsBackAndPlainFileIsMigrated() throws Exception {
+    Path file = tempDir.resolve("links.json");
+
+    FileLinkRepository plain = new FileLinkRepository(file);
+    plain.save(
+        new Link(
+            "DFL001",
+            "user-1",
+            "https://mail.ru",
+            "http://localhost/DFL001",
+            5,
+            0,
+            Instant.parse("2026-01-01T00:00:00Z"),
+            Instant.parse("2026-01-02T00:00:00Z")));
+
+    FileLinkRepository deflate = new FileLinkRepository(file, StorageCompression.DEFLATE, 1);
+    assertTrue(deflate.findByCode("DFL001").isPresent());
+    deflate.deleteByCode("missing");
+
+    // На диске поток zlib, а не JSON: CMF 0x78 (deflate, окно 32 КБ) и контрольная сумма
+    // заголовка, кратная 31
+    byte[] bytes = Files.readAllBytes(file);
+    assertEquals(0x78, bytes[0] & 0xff);
+    assertEquals(0, ((bytes[0] & 0xff) * 256 + (bytes[1] & 0xff)) % 31);
+    assertNotEquals('[', bytes[0]);
+
+    FileLinkRepository reload = new FileLinkRepository(file);
+    assertEquals("https://mail.ru", reload.findByCode("DFL001").orElseThrow().originalUrl());
+  }
+
+  @Test
+  void rejectsInvalidCompressionLevel() {
+    Path file = tempDir.resolve("links.json");
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new FileLinkRepository(file, StorageCompression.GZIP, 42));
+  }
+
+  @Test
+  void incrementClicksAndDeleteExpiredArePersisted() {
+    Path file = tempDir.resolve("links.json");
+
+    FileLinkRepository repo = new FileLinkRepository(file);
+    repo.save(
+        new Link(
+            "CLK001",
+            "user-1",
+            "https://mail.ru",
+            "http://localhost/CLK001",
+            1,
+            0,
+            Instant.parse("2026-01-01T00:00:00Z"),
+            Instant.parse("2026-01-02T00:00:00Z")));
+    repo.save(
+        new Link(
+            "EXP001",
+            "user-1",
+            "https://ya.ru",
+            "http://localhost/EXP001",
+            5,
+            0,
+            Instant.parse("2026-01-01T00:00:00Z"),
+            Instant.parse("2026-01-01T00:00:10Z")));
+
+    assertTrue(repo.incrementClicks("CLK001"));
+    assertFalse(repo.incrementClicks("CLK001"));
+    assertEquals(1, repo.deleteExpired(Instant.parse("2026-01-01T12:00:00Z")).size());
+
+    FileLinkRepository reload = new FileLinkRepository(file);
+    assertEquals(1, reload.findByCode("CLK001").orElseThrow().clicksDone());
+    assertTrue(reload.findByCode("EXP001").isEmpty());
+  }
+
+  @Test
+  void warmStartServesLookupsAndKeepsWritesMadeWhileLoading() {
+    Path file = tempDir.resolve("links.json");
+
+    FileLinkRepository seed = new FileLinkRepository(file);
+    for (int i = 0; i < 1100; i++) {
+      seed.save(
+          new Link(
+              "W" + i,
+              "user-1",
+              "https://mail.ru/" + i,
+              "http://localhost/W" + i,
+              5,
+              0,
+              Instant.parse("2026-01-01T00:00:00Z").plusSeconds(i),
+              Instant.parse("2026-01-02T00:00:00Z")));
+    }
+
+    FileLinkRepository repo =
+        new FileLinkRepository(file, StorageCompression.NONE, Deflater.DEFAULT_COMPRESSION, true);
+
+    assertEquals("https://mail.ru/5", repo.findByCode("W5").orElseThrow().originalUrl());
+    repo.deleteByCode("W1");
+    repo.save(
+        new Link(
+            "W2",
+            "user-2",
+            "https://ya.ru",
+            "http://localhost/W2",
+            5,
+            0,
+            Instant.parse("2026-01-01T00:00:00Z"),
+            Instant.parse("2026-01-02T00:00:00Z")));
+    assertTrue(repo.incrementClicks("W3"));
+    assertTrue(repo.findByCode("MISSING").isEmpty());
+
+    repo.awaitLoaded();
+    assertTrue(repo.isReady());
+    assertEquals(1.0, repo.loadProgress());
+    assertEquals(1100, repo.loadedCount());
+
+    FileLinkRepository reload = new FileLinkRepository(file);
+    assertEquals(1099, reload.findAll().size());
+    assertTrue(reload.findByCode("W1").isEmpty());
+    assertEquals("user-2", reload.findByCode("W2").orElseThrow().ownerUuid());
+    assertEquals(1, reload.findByCode("W3").orElseThrow().clicksDone());
+  }
+
+  @Test
+  void writesMadeDuringInterruptedWarmStartAreRecovered() {
+    Path file = tempDir.resolve("links.json");
+    Instant created = Instant.parse("2026-01-01T00:00:00Z");
+    Instant expires = Instant.parse("2026-01-02T00:00:00Z");
+    FileLinkRepository seed = new FileLinkRepository(file);
+    seed.save(new Link("OLD", "user-1", "https://mail.ru", "", 5, 0, created, expires));
+    seed.save(new Link("KEEP", "user-1", "https://ya.ru", "", 5, 0, created, expires));
+
+    // Процесс остановился, успев записать изменения только в журнал фоновой загрузки
+    try (SharedJournal pending =
+        new SharedJournal(tempDir.resolve("links.json.pending"), new LinkJsonFormat().mapper())) {
+      pending.readAll();
+      pending.append(
+          List.of(
+              SharedJournal.Entry.delete("OLD"),
+              SharedJournal.Entry.put(
+                  new Link("NEW", "user-2", "https://vk.com", "", 5, 1, created, expires))));
+    }
+
+    FileLinkRepository warm =
+        new FileLinkRepository(file, StorageCompression.NONE, Deflater.DEFAULT_COMPRESSION, true);
+    assertTrue(warm.findByCode("OLD").isEmpty());
+    assertEquals(1, warm.findByCode("NEW").orElseThrow().clicksDone());
+    warm.awaitLoaded();
+    assertEquals(2, warm.count());
+    assertFalse(Files.exists(tempDir.resolve("links.json.pending")));
+
+    FileLinkRepository reload = new FileLinkRepository(file);
+    assertTrue(reload.findByCode("OLD").isEmpty());
+    assertTrue(reload.findByCode("KEEP").isPresent());
+    assertEquals("user-2", reload.findByCode("NEW").orElseThrow().ownerUuid());
+  }
+
+  @Test
+  void sharedFileSeesChangesOfOtherInstancesWithoutLostUpdates() throws Exception {
+    Path file = tempDir.resolve("links.json");
+    Instant created = Instant.parse("2026-01-01T00:00:00Z");
+
+    try (FileLinkRepository a =
+            new FileLinkRepository(file, StorageCompression.NONE, 6, false, true);
+        FileLinkRepository b =
+            new FileLinkRepository(file, StorageCompression.NONE, 6, false, true)) {
+      a.save(
+          new Link(
+              "SHR001",
+              "user-1",
+              "https://mail.ru",
+              "http://localhost/SHR001",
+              1000,
+              0,
+              created,
+              created.plusSeconds(3600)));
+      assertTrue(b.findByCode("SHR001").isPresent());
+
+      Thread[] threads = new Thread[4];
+      for (int t = 0; t < threads.length; t++) {
+        FileLinkRepository repo = t % 2 == 0 ? a : b;
+        threads[t] =
+            new Thread(
+                () -> {
+                  for (int i = 0; i < 50; i++) {
+                    assertTrue(repo.incrementClicks("SHR001"));
+                  }
+                });
+        threads[t].start();
+      }
+      for (Thread t : threads) {
+        t.join();
+      }
+      assertEquals(200, a.findByCode("SHR001").orElseThrow().clicksDone());
+      assertEquals(200, b.findByCode("SHR001").orElseThrow().clicksDone());
+
+      b.deleteByCode("SHR001");
+      assertTrue(a.findByCode("SHR001").isEmpty());
+    }
+  }
+
+  @Test
+  void sharedJournalIsCompactedIntoMainFile() throws Exception {
+    Path file = tempDir.resolve("links.json");
+    Path journal = tempDir.resolve("links.json.journal");
+    Instant created = Instant.parse("2026-01-01T00:00:00Z");
+
+    try (FileLinkRepository writer =
+            new FileLinkRepository(file, StorageCompression.GZIP, 6, false, true);
+        FileLinkRepository reader =
+            new FileLinkRepository(file, StorageCompression.GZIP, 6, false, true)) {
+      assertEquals(0, reader.count());
+      for (int i = 0; i < 6000; i++) {
+        String code = "J" + i;
+        writer.save(
+            new Link(
+                code,
+                "user-" + (i % 10),
+                "https://mail.ru/" + i,
+                "http://localhost/" + code,
+                5,
+                0,
+                created,
+                created.plusSeconds(3600)));
+      }
+
+      assertTrue(Files.size(journal) < 1 << 20);
+      assertEquals(6000, reader.count());
+      assertEquals("https://mail.ru/5999", reader.findByCode("J5999").orElseThrow().originalUrl());
+    }
+
+    try (FileLinkRepository reopened =
+        new FileLinkRepository(file, StorageCompression.GZIP, 6, false, true)) {
+      assertEquals(6000, reopened.count());
+      assertTrue(SharedJournal.isOpen(journal));
+    }
+    assertFalse(SharedJournal.isOpen(journal));
+    assertFalse(Files.exists(tempDir.resolve("links.json.tmp")));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new FileLinkRepository(file, StorageCompression.NONE, 6, true, true));
+  }
+
+  @Test
+  void batchMutationsAreAppliedAtomicallyAndPersisted() throws Exception {
+    Path file = tempDir.resolve("links.json");
+    FileLinkRepository repo = new FileLinkRepository(file);
+    Instant created = Instant.parse("2026-01-01T00:00:00Z");
+
+    List<Link> links = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      links.add(
+          new Link(
+              "B" + i,
+              "user-1",
+              "https://mail.ru/" + i,
+              "http://localhost/B" + i,
+              5,
+              0,
+              created,
+              created.plusSeconds(3600)));
+    }
+    repo.saveAll(links);
+    repo.deleteAll(List.of("B0", "B1", "missing"));
+
+    Link updated =
+        repo.update(
+                "B2",
+                l ->
+                    new Link(
+                        l.code(),
+                        l.ownerUuid(),
+                        l.originalUrl(),
+                        l.shortUrl(),
+                        42,
+                        l.clicksDone(),
+                        l.createdAt(),
+                        l.expiresAt()))
+            .orElseThrow();
+    assertEquals(42, updated.maxClicks());
+    assertTrue(repo.update("missing", l -> l).isEmpty());
+
+    // Исключение внутри fn не меняет данные
+    assertThrows(
+        SecurityException.class,
+        () ->
+            repo.update(
+                "B3",
+                l -> {
+                  throw new SecurityException("нет доступа");
+                }));
+    assertThrows(IllegalArgumentException.class, () -> repo.update("B3", l -> links.get(4)));
+
+    FileLinkRepository reloaded = new FileLinkRepository(file);
+    assertEquals(498, reloaded.count());
+    assertTrue(reloaded.findByCode("B1").isEmpty());
+    assertEquals(42, reloaded.findByCode("B2").orElseThrow().maxClicks());
+    assertEquals(5, reloaded.findByCode("B3").orElseThrow().maxClicks());
+  }
 }
@@ -0,0 +1,394 @@
+package storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import model.Link;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class H2LinkRepositoryTest {
+
+  @TempDir Path tempDir;
+
+  private static Link link(String code, String owner, int maxClicks, String createdAt) {
+    Instant created = Instant.parse(createdAt);
+    return new Link(
+        code,
+        owner,
+        "https://mail.ru/" + code,
+        "http://localhost/" + code,
+        maxClicks,
+        0,
+        created,
+        created.plusSeconds(3600));
+  }
+
+  @Test
+  void savesAndLoadsAfterReopen() {
+    Path db = tempDir.resolve("links");
+
+    try (H2LinkRepository repo = new H2LinkRepository(db)) {
+      repo.save(link("ABC123", "user-1", 5, "2026-01-01T00:00:00.123456789Z"));
+    }
+
+    try (H2LinkRepository repo = new H2LinkRepository(db)) {
+      Link loaded = repo.findByCode("ABC123").orElseThrow();
+      assertEquals("https://mail.ru/ABC123", loaded.originalUrl());
+      assertEquals(5, loaded.maxClicks());
+      assertEquals(Instant.parse("2026-01-01T00:00:00.123456789Z"), loaded.createdAt());
+    }
+  }
+
+  @Test
+  void saveUpsertsAndOwnerListIsNewestFirst() {
+    try (H2LinkRepository repo = new H2LinkRepository(tempDir.resolve("links"))) {
+      repo.save(link("OLD001", "user-1", 5, "2026-01-01T00:00:00Z"));
+      repo.save(link("NEW001", "user-1", 5, "2026-01-02T00:00:00Z"));
+      repo.save(link("OTHER1", "user-2", 5, "2026-01-03T00:00:00Z"));
+      repo.save(link("OLD001", "user-1", 9, "2026-01-01T00:00:00Z"));
+
+      List<Link> mine = repo.findByOwner("user-1");
+      assertEquals(List.of("NEW001", "OLD001"), mine.stream().map(Link::code).toList());
+      assertEquals(9, mine.get(1).maxClicks());
+      assertEquals(3, repo.findAll().size());
+    }
+  }
+
+  @Test
+  void saveIfAbsentKeepsExistingLinkAndItsUrl() {
+    try (H2LinkRepository repo = new H2LinkRepository(tempDir.resolve("links"))) {
+      Link first = link("ALIAS1", "user-1", 5, "2026-01-01T00:00:00Z");
+      assertTrue(repo.saveIfAbsent(first));
+      Link second =
+          new Link(
+              "ALIAS1",
+              "user-2",
+              "https://ya.ru/other",
+              "http://localhost/ALIAS1",
+              9,
+              0,
+              first.createdAt(),
+              first.expiresAt());
+      assertFalse(repo.saveIfAbsent(second));
+
+      assertEquals(first, repo.findByCode("ALIAS1").orElseThrow());
+      // URL отвергнутой ссылки не остаётся в словаре
+      assertTrue(repo.findByOwnerAndUrl("user-2", "https://ya.ru/other").isEmpty());
+      assertEquals(1, repo.count());
+    }
+  }
+
+  @Test
+  void incrementClicksStopsAtLimit() {
+    try (H2LinkRepository repo = new H2LinkRepository(tempDir.resolve("links"))) {
+      repo.save(link("LIM002", "user-1", 2, "2026-01-01T00:00:00Z"));
+
+      assertTrue(repo.incrementClicks("LIM002"));
+      assertTrue(repo.incrementClicks("LIM002"));
+      assertFalse(repo.incrementClicks("LIM002"));
+      assertFalse(repo.incrementClicks("NOPE00"));
+      assertEquals(2, repo.findByCode("LIM002").orElseThrow().clicksDone());
+    }
+  }
+
+  @Test
+  void deleteExpiredRemovesAndReturnsOnlyExpired() {
+    try (H2LinkRepository repo = new H2LinkRepository(tempDir.resolve("links"))) {
+      repo.save(link("EXP001", "user-1", 5, "2026-01-01T00:00:00Z"));
+      repo.save(link("LIVE01", "user-1", 5, "2026-01-01T02:00:00Z"));
+
+      List<Link> removed = repo.deleteExpired(Instant.parse("2026-01-01T01:30:00Z"));
+
+      assertEquals(List.of("EXP001"), removed.stream().map(Link::code).toList());
+      assertTrue(repo.findByCode("EXP001").isEmpty());
+      assertTrue(repo.findByCode("LIVE01").isPresent());
+    }
+  }
+
+  @Test
+  void findByCodePrefixTreatsWildcardsLiterally() {
+    try (H2LinkRepository repo = new H2LinkRepository(tempDir.resolve("links"))) {
+      repo.save(link("promo_1", "user-1", 5, "2026-01-01T00:00:00Z"));
+      repo.save(link("promoX1", "user-1", 5, "2026-01-01T00:00:00Z"));
+      repo.save(link("promo_2", "user-1", 5, "2026-01-01T00:00:00Z"));
+
+      assertEquals(
+          List.of("promo_1", "promo_2"),
+          repo.findByCodePrefix("promo_", 10).stream().map(Link::code).toList());
+      assertEquals(1, repo.findByCodePrefix("promo", 1).size());
+    }
+  }
+
+  @Test
+  void urlsAreStoredOnceAndFoundByOwner() throws Exception {
+    Path db = tempDir.resolve("links");
+    try (H2LinkRepository repo = new H2LinkRepository(db)) {
+      for (String code : List.of("SAME01", "SAME02", "SAME03")) {
+        Link l = link(code, code.equals("SAME03") ? "user-2" : "user-1", 5, "2026-01-01T00:00:00Z");
+        repo.save(
+            new Link(
+                l.code(),
+                l.ownerUuid(),
+                "https://mail.ru/popular",
+                l.shortUrl(),
+                l.maxClicks(),
+                l.clicksDone(),
+                l.createdAt(),
+                l.expiresAt()));
+      }
+      assertEquals(2, repo.findByOwnerAndUrl("user-1", "https://mail.ru/popular").size());
+      assertEquals(1, repo.findByOwnerAndUrl("user-2", "https://mail.ru/popular").size());
+      assertTrue(repo.findByOwnerAndUrl("user-1", "https://mail.ru/other").isEmpty());
+      assertEquals(1, countUrls(db));
+
+      repo.deleteByCode("SAME01");
+      repo.deleteByCode("SAME02");
+      assertEquals(1, countUrls(db));
+      repo.deleteByCode("SAME03");
+      assertEquals(0, countUrls(db));
+    }
+  }
+
+  @Test
+  void overwrittenAndExpiredLinksReleaseTheirUrls() throws Exception {
+    Path db = tempDir.resolve("links");
+    try (H2LinkRepository repo = new H2LinkRepository(db)) {
+      Link first = link("MOVE01", "user-1", 5, "2026-01-01T00:00:00Z");
+      repo.save(first);
+      repo.save(
+          new Link(
+              first.code(),
+              first.ownerUuid(),
+              "https://ya.ru/moved",
+              first.shortUrl(),
+              first.maxClicks(),
+              first.clicksDone(),
+              first.createdAt(),
+              first.expiresAt()));
+      assertEquals(1, countUrls(db));
+      repo.update(
+          "MOVE01",
+          l ->
+              new Link(
+                  l.code(),
+                  l.ownerUuid(),
+                  "https://vk.com/again",
+                  l.shortUrl(),
+                  l.maxClicks(),
+                  l.clicksDone(),
+                  l.createdAt(),
+                  l.expiresAt()));
+      assertEquals(1, countUrls(db));
+      assertEquals("https://vk.com/again", repo.findByCode("MOVE01").orElseThrow().originalUrl());
+
+      repo.save(link("LIVE01", "user-1", 5, "2026-01-01T02:00:00Z"));
+      assertEquals(1, repo.deleteExpired(Instant.parse("2026-01-01T01:30:00Z")).size());
+      assertEquals(1, countUrls(db));
+    }
+  }
+
+  @Test
+  void migratesDatabaseWithInlineUrls() throws Exception {
+    Path db = tempDir.resolve("links");
+    try (Connection c = DriverManager.getConnection("jdbc:h2:file:" + db.toAbsolutePath());
+        Statement st = c.createStatement()) {
+      st.execute(
+          """
+          CREATE TABLE links (
+            code VARCHAR(64) PRIMARY KEY,
+            owner_uuid VARCHAR(64) NOT NULL,
+            original_url VARCHAR(8192) NOT NULL,
+            short_url VARCHAR(8192) NOT NULL,
+            max_clicks INT NOT NULL,
+            clicks_done INT NOT NULL,
+            created_at TIMESTAMP(9) WITH TIME ZONE NOT NULL,
+            expires_at TIMESTAMP(9) WITH TIME ZONE NOT NULL
+          )
+          """);
+      for (String code : List.of("OLD001", "OLD002")) {
+        st.execute(
+            "INSERT INTO links VALUES ('"
+                + code
+                + "', 'user-1', 'https://mail.ru', 'http://localhost/"
+                + code
+                + "', 5, 1, TIMESTAMP WITH TIME ZONE '2026-01-01 00:00:00+00',"
+                + " TIMESTAMP WITH TIME ZONE '2026-01-02 00:00:00+00')");
+      }
+    }
+
+    try (H2LinkRepository repo = new H2LinkRepository(db)) {
+      assertEquals("https://mail.ru", repo.findByCode("OLD001").orElseThrow().originalUrl());
+      assertEquals(2, repo.findByOwnerAndUrl("user-1", "https://mail.ru").size());
+      assertEquals(1, countUrls(db));
+    }
+  }
+
+  @Test
+  void resumesInlineUrlMigrationInterruptedByCrash() throws Exception {
+    Path db = tempDir.resolve("links");
+    // Состояние после сбоя прежнего переноса: URL уже в словаре без хеша, ссылки к нему не
+    // привязаны, а original_url ещё на месте
+    try (Connection c = DriverManager.getConnection("jdbc:h2:file:" + db.toAbsolutePath());
+        Statement st = c.createStatement()) {
+      st.execute(
+          """
+          CREATE TABLE urls (
+            id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+            url_hash INT NOT NULL,
+            url VARCHAR(8192) NOT NULL
+          )
+          """);
+      st.execute(
+          """
+          CREATE TABLE links (
+            code VARCHAR(64) PRIMARY KEY,
+            owner_uuid VARCHAR(64) NOT NULL,
+            original_url VARCHAR(8192) NOT NULL,
+            url_id BIGINT,
+            short_url VARCHAR(8192) NOT NULL,
+            max_clicks INT NOT NULL,
+            clicks_done INT NOT NULL,
+            created_at TIMESTAMP(9) WITH TIME ZONE NOT NULL,
+            expires_at TIMESTAMP(9) WITH TIME ZONE NOT NULL
+          )
+          """);
+      st.execute("INSERT INTO urls (url_hash, url) VALUES (0, 'https://mail.ru')");
+      List<String> urls = List.of("https://mail.ru", "https://ya.ru");
+      for (int i = 0; i < urls.size(); i++) {
+        st.execute(
+            "INSERT INTO links VALUES ('OLD00"
+                + i
+                + "', 'user-1', '"
+                + urls.get(i)
+                + "', NULL, 'http://localhost/OLD00"
+                + i
+                + "', 5, 1, TIMESTAMP WITH TIME ZONE '2026-01-01 00:00:00+00',"
+                + " TIMESTAMP WITH TIME ZONE '2026-01-02 00:00:00+00')");
+      }
+    }
+
+    try (H2LinkRepository repo = new H2LinkRepository(db)) {
+      assertEquals(1, repo.findByOwnerAndUrl("user-1", "https://mail.ru").size());
+      assertEquals(1, repo.findByOwnerAndUrl("user-1", "https://ya.ru").size());
+      assertEquals(2, countUrls(db));
+    }
+  }
+
+  @Test
+  void snapshotDoesNotWaitForRunningTransaction() throws Exception {
+    try (H2LinkRepository repo = new H2LinkRepository(tempDir.resolve("links"))) {
+      repo.saveAll(
+          List.of(
+              link("SNP001", "user-1", 5, "2026-01-01T00:00:00Z"),
+              link("SNP002", "user-1", 5, "2026-01-01T00:00:01Z")));
+
+      // Обновление держит блокировку и открытую транзакцию, пока его не отпустят
+      CountDownLatch entered = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      CompletableFuture<Optional<Link>> update =
+          CompletableFuture.supplyAsync(
+              () ->
+                  repo.update(
+                      "SNP001",
+                      l -> {
+                        entered.countDown();
+                        try {
+                          release.await();
+                        } catch (InterruptedException e) {
+                          throw new IllegalStateException(e);
+                        }
+                        return link("SNP001", "user-1", 9, "2026-01-01T00:00:00Z");
+                      }));
+      assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+      LinkSnapshot snapshot =
+          CompletableFuture.supplyAsync(repo::snapshot).get(5, TimeUnit.SECONDS);
+      assertEquals(2, snapshot.size());
+      assertEquals(5, snapshot.get("SNP001").maxClicks());
+
+      release.countDown();
+      update.get(5, TimeUnit.SECONDS);
+      assertEquals(9, repo.snapshot().get("SNP001").maxClicks());
+      assertEquals(5, snapshot.get("SNP001").maxClicks());
+    }
+  }
+
+  @Test
+  void saveAllIfAbsentReturnsLinksWithTakenCodes() {
+    try (H2LinkRepository repo = new H2LinkRepository(tempDir.resolve("links"))) {
+      Link original = link("ABS001", "user-1", 5, "2026-01-01T00:00:00Z");
+      repo.save(original);
+
+      Link clash = link("ABS001", "user-2", 9, "2026-01-01T00:00:01Z");
+      Link fresh = link("ABS002", "user-2", 9, "2026-01-01T00:00:02Z");
+      Link twice = link("ABS002", "user-3", 9, "2026-01-01T00:00:03Z");
+      assertEquals(List.of(clash, twice), repo.saveAllIfAbsent(List.of(clash, fresh, twice)));
+      assertEquals(original, repo.findByCode("ABS001").orElseThrow());
+      assertEquals(fresh, repo.findByCode("ABS002").orElseThrow());
+    }
+  }
+
+  @Test
+  void batchMutationsRollBackOnFailure() throws Exception {
+    Path db = tempDir.resolve("links");
+    try (H2LinkRepository repo = new H2LinkRepository(db)) {
+      repo.saveAll(
+          List.of(
+              link("BAT001", "user-1", 5, "2026-01-01T00:00:00Z"),
+              link("BAT002", "user-1", 5, "2026-01-01T00:00:01Z"),
+              link("BAT003", "user-2", 5, "2026-01-01T00:00:02Z")));
+      assertEquals(3, repo.count());
+
+      repo.deleteAll(List.of("BAT001", "BAT003", "missing"));
+      assertEquals(List.of("BAT002"), repo.findAll().stream().map(Link::code).toList());
+      assertEquals(1, countUrls(db));
+
+      assertEquals(
+          2,
+          repo.update(
+                  "BAT002",
+                  l ->
+                      new Link(
+                          l.code(),
+                          l.ownerUuid(),
+                          l.originalUrl(),
+                          l.shortUrl(),
+                          l.maxClicks(),
+                          2,
+                          l.createdAt(),
+                          l.expiresAt()))
+              .orElseThrow()
+              .clicksDone());
+      assertThrows(
+          IllegalStateException.class,
+          () ->
+              repo.update(
+                  "BAT002",
+                  l -> {
+                    throw new IllegalStateException("отказ");
+                  }));
+      assertEquals(2, repo.findByCode("BAT002").orElseThrow().clicksDone());
+      assertTrue(repo.update("missing", l -> l).isEmpty());
+    }
+  }
+
+  private static int countUrls(Path db) throws Exception {
+    try (Connection c = DriverManager.getConnection("jdbc:h2:file:" + db.toAbsolutePath());
+        Statement st = c.createStatement();
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM urls")) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+}
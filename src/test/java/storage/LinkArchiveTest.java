@@ -0,0 +1,72 @@
+package storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import model.Link;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LinkArchiveTest {
+
+  @TempDir Path tempDir;
+
+  private static LinkArchive.Entry entry(String code, String owner, int clicks) {
+    Link link =
+        new Link(
+            code,
+            owner,
+            "https://mail.ru/" + code,
+            "http://localhost/" + code,
+            5,
+            clicks,
+            Instant.parse("2026-01-01T00:00:00Z"),
+            Instant.parse("2026-02-01T00:00:00Z"));
+    return new LinkArchive.Entry(link, "exhausted", Instant.parse("2026-01-10T00:00:00Z"));
+  }
+
+  @Test
+  void appendsBatchesAndQueriesAcrossThem() throws Exception {
+    Path file = tempDir.resolve("archive.bin");
+    LinkArchive archive = new LinkArchive(file);
+
+    List<LinkArchive.Entry> first = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      first.add(entry("A" + i, i % 2 == 0 ? "user-1" : "user-2", 5));
+    }
+    archive.append(first);
+    archive.append(List.of(entry("B1", "user-1", 5)));
+    // Повторная запись той же ссылки (сбой между архивом и удалением) не дублирует её
+    archive.append(List.of(entry("A0", "user-1", 4)));
+
+    LinkArchive reopened = new LinkArchive(file);
+    assertEquals(1002, reopened.count());
+    assertEquals(4, reopened.findByCode("A0").orElseThrow().link().clicksDone());
+    assertEquals(501, reopened.findByOwner("user-1").size());
+    assertEquals(
+        "https://mail.ru/B1", reopened.findByCode("B1").orElseThrow().link().originalUrl());
+    assertTrue(reopened.findByCode("missing").isEmpty());
+    assertEquals(3, reopened.find(e -> e.link().ownerUuid().equals("user-2"), 3).size());
+
+    // Сжатые пакеты заметно меньше исходного JSON
+    assertTrue(Files.size(file) < 1000 * 100, "archive size " + Files.size(file));
+  }
+
+  @Test
+  void dropsTornTailLeftByCrash() throws Exception {
+    Path file = tempDir.resolve("archive.bin");
+    new LinkArchive(file).append(List.of(entry("OK1", "user-1", 5)));
+    long valid = Files.size(file);
+    Files.write(file, new byte[] {0, 0, 1, 0, 31, -117, 8}, StandardOpenOption.APPEND);
+
+    LinkArchive archive = new LinkArchive(file);
+    assertEquals(valid, Files.size(file));
+    archive.append(List.of(entry("OK2", "user-1", 5)));
+    assertEquals(2, archive.count());
+  }
+}
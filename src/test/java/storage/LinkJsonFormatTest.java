@@ -0,0 +1,124 @@
+package storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import model.Link;
+import org.junit.jupiter.api.Test;
+
+public class LinkJsonFormatTest {
+
+  private static List<Link> sampleLinks() {
+    List<Link> links = new ArrayList<>();
+    links.add(
+        new Link(
+            "ABC123",
+            "3f2504e0-4f89-11d3-9a0c-0305e82c3301",
+            "https://mail.ru/?q=\"кавычки\"&x=\\путь\\\n\t\u0001",
+            "http://localhost/ABC123",
+            10,
+            3,
+            Instant.parse("2026-01-01T00:00:00Z"),
+            Instant.parse("2026-01-02T00:00:00.123456789Z")));
+    links.add(
+        new Link(
+            "emoji",
+            "user-2",
+            "https://пример.рф/😀",
+            null,
+            Integer.MAX_VALUE,
+            0,
+            Instant.parse("2025-12-31T23:59:59.100Z"),
+            null));
+    links.add(
+        new Link(
+            "old",
+            "user-3",
+            "https://ya.ru",
+            "http://localhost/old",
+            1,
+            1,
+            Instant.parse("1969-07-20T20:17:40Z"),
+            Instant.parse("+12026-01-01T00:00:00Z")));
+    return links;
+  }
+
+  // Настройки, с которыми файлы записывались до ручного кодека
+  private static ObjectMapper databind() {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule());
+    mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    return mapper;
+  }
+
+  @Test
+  void writesExactlyTheBytesOfTheDatabindFormat() throws Exception {
+    List<Link> links = sampleLinks();
+    List<Link> sorted = new ArrayList<>(links);
+    sorted.sort(Comparator.comparing(Link::createdAt).reversed());
+    byte[] expected = databind().writerWithDefaultPrettyPrinter().writeValueAsBytes(sorted);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(3, new LinkJsonFormat().write(out, links));
+    assertEquals(
+        new String(expected, StandardCharsets.UTF_8), out.toString(StandardCharsets.UTF_8));
+    assertArrayEquals(expected, out.toByteArray());
+
+    List<Link> read = new ArrayList<>();
+    new LinkJsonFormat().read(new ByteArrayInputStream(expected), 2, read::addAll);
+    assertEquals(sorted, read);
+  }
+
+  @Test
+  void readsDatesInEveryFormDatabindAccepted() throws Exception {
+    String json =
+        """
+        [ {"code":"a","ownerUuid":"u","originalUrl":"https://a","shortUrl":"s",
+           "maxClicks":5,"clicksDone":1,"extra":{"x":[1,2]},
+           "createdAt":"2026-03-04T05:06:07+03:00","expiresAt":1767225600.5},
+          {"code":"b","maxClicks":"7","createdAt":1767225600,"expiresAt":"2026-01-01T00:00:00.1Z"} ]
+        """;
+    List<Link> read = new ArrayList<>();
+    new LinkJsonFormat()
+        .read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 10, read::addAll);
+
+    assertEquals(Instant.parse("2026-03-04T02:06:07Z"), read.get(0).createdAt());
+    assertEquals(Instant.ofEpochSecond(1767225600, 500_000_000), read.get(0).expiresAt());
+    assertEquals(7, read.get(1).maxClicks());
+    assertNull(read.get(1).ownerUuid());
+    assertEquals(Instant.ofEpochSecond(1767225600), read.get(1).createdAt());
+    assertEquals(Instant.parse("2026-01-01T00:00:00.100Z"), read.get(1).expiresAt());
+
+    for (String s :
+        List.of(
+            "2026-01-01T00:00:00Z",
+            "2024-02-29T23:59:59.999999999Z",
+            "1970-01-01T00:00:00.5Z",
+            "0001-01-01T00:00:00Z")) {
+      assertEquals(Instant.parse(s), LinkCodec.parseInstant(s), s);
+    }
+    assertThrows(RuntimeException.class, () -> LinkCodec.parseInstant("2026-02-30T00:00:00Z"));
+
+    for (Instant i :
+        List.of(
+            Instant.EPOCH,
+            Instant.ofEpochSecond(-1, 1),
+            Instant.parse("0000-01-01T00:00:00Z"),
+            Instant.parse("9999-12-31T23:59:59.999999999Z"),
+            Instant.parse("-0001-06-01T12:00:00Z"),
+            Instant.parse("2026-05-06T07:08:09.120Z"),
+            Instant.parse("2026-05-06T07:08:09.000120Z"),
+            Instant.parse("2026-05-06T07:08:09.000000120Z"))) {
+      assertEquals(i.toString(), LinkCodec.formatInstant(i));
+    }
+  }
+}
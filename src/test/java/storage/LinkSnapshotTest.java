@@ -0,0 +1,76 @@
+package storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import model.Link;
+import org.junit.jupiter.api.Test;
+
+public class LinkSnapshotTest {
+
+  @Test
+  void editsMatchHashMapAndLeaveOlderSnapshotsIntact() {
+    Random rnd = new Random(42);
+    LinkSnapshot.Editor editor = LinkSnapshot.EMPTY.edit();
+    Map<String, Link> expected = new HashMap<>();
+    LinkSnapshot frozen = null;
+    Map<String, Link> frozenExpected = null;
+
+    for (int i = 0; i < 50_000; i++) {
+      // "Aa" и "BB" дают одинаковый hashCode, поэтому часть кодов попадает в списки коллизий
+      String code = (rnd.nextBoolean() ? "Aa" : "BB") + rnd.nextInt(3000);
+      if (rnd.nextInt(3) == 0) {
+        assertEquals(expected.remove(code), editor.remove(code));
+      } else {
+        Link l = link(code, i);
+        assertEquals(expected.put(code, l), editor.put(l));
+      }
+      if (i % 5000 == 2499) {
+        frozen = editor.snapshot();
+        frozenExpected = new HashMap<>(expected);
+      }
+    }
+
+    LinkSnapshot current = editor.snapshot();
+    assertEquals(expected.size(), current.size());
+    assertEquals(
+        expected, current.stream().collect(Collectors.toMap(Link::code, l -> l, (a, b) -> a)));
+    for (String code : expected.keySet()) {
+      assertSame(expected.get(code), current.get(code));
+    }
+    // Снимок, взятый раньше, не видит изменений, сделанных после него
+    assertEquals(
+        frozenExpected, frozen.stream().collect(Collectors.toMap(Link::code, l -> l, (a, b) -> a)));
+    assertTrue(current.version() > frozen.version());
+    assertSame(current, editor.snapshot());
+  }
+
+  @Test
+  void parallelStreamVisitsEveryLinkOnce() {
+    LinkSnapshot.Editor editor = LinkSnapshot.EMPTY.edit();
+    for (int i = 0; i < 100_000; i++) {
+      editor.put(link("c" + i, i));
+    }
+    LinkSnapshot snapshot = editor.snapshot();
+    editor.remove("c0");
+
+    List<String> codes = snapshot.parallelStream().map(Link::code).toList();
+    assertEquals(100_000, codes.size());
+    Set<String> distinct = new HashSet<>(codes);
+    assertEquals(100_000, distinct.size());
+    assertTrue(distinct.contains("c0"));
+    assertNull(editor.snapshot().get("c0"));
+  }
+
+  private static Link link(String code, int n) {
+    Instant t = Instant.parse("2026-01-01T00:00:00Z").plusSeconds(n);
+    return new Link(code, "owner", "https://example.com/" + n, "http://s/" + code, 10, 0, t, t);
+  }
+}
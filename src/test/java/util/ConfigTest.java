@@ -34,5 +34,27 @@ public class ConfigTest {
     assertEquals("data/links.json", c.storageFile());
     assertEquals("data/user.uuid", c.userUuidFile());
     assertEquals(7, c.cleanupInterval().toSeconds());
+    assertEquals("none", c.storageCompression());
+    assertEquals(6, c.storageCompressionLevel());
+    assertEquals("file", c.storageBackend());
+    assertEquals("data/links", c.databaseFile());
+    assertFalse(c.warmStart());
+  }
+
+  @Test
+  void loadsStorageCompression() throws Exception {
+    Path cfg = tempDir.resolve("app.properties");
+
+    Files.writeString(
+        cfg,
+        """
+                storageCompression=gzip
+                storageCompressionLevel=9
+                """);
+
+    Config c = Config.load(cfg);
+
+    assertEquals("gzip", c.storageCompression());
+    assertEquals(9, c.storageCompressionLevel());
   }
 }
@@ -33,4 +33,23 @@ public class UrlValidatorTest {
   void validate_rejectsGarbage() {
     assertThrows(IllegalArgumentException.class, () -> UrlValidator.validate("%%%"));
   }
+
+  @Test
+  void hostOf_matchesUriHost() {
+    for (String url :
+        new String[] {
+          "https://Mail.RU/path?q=1",
+          "http://user:pw@example.com:8080/x",
+          "https://example.com",
+          "https://example.com?x=http://other",
+          "http://[::1]:8080/",
+          "https://пример.рф/путь"
+        }) {
+      String expected = java.net.URI.create(url).getHost();
+      assertEquals(
+          expected == null ? "пример.рф" : expected.toLowerCase(), UrlValidator.hostOf(url), url);
+    }
+    assertNull(UrlValidator.hostOf("https:///path"));
+    assertNull(UrlValidator.hostOf("mail.ru"));
+  }
 }